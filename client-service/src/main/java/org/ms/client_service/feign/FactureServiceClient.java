@@ -5,10 +5,13 @@ import org.ms.client_service.security.FeignClientConfig;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @FeignClient(name = "FACTURE-SERVICE", configuration = FeignClientConfig.class)
 public interface FactureServiceClient {
@@ -26,4 +29,10 @@ public interface FactureServiceClient {
 
     @GetMapping("/factures/lignes/client/{clientId}/produits")
     List<Map<String, Object>> getProduitsSollicitesByClient(@PathVariable("clientId") Long clientId, @RequestParam(value = "limit", defaultValue = "5") int limit);
+
+    @GetMapping("/factures/clients/top")
+    List<Map<String, Object>> getTopClients(@RequestParam("limit") int limit, @RequestParam(value = "annee", required = false) Integer annee);
+
+    @PostMapping("/factures/clients/stats")
+    List<Map<String, Object>> getStatsByClients(@RequestBody Set<Long> clientIds, @RequestParam(value = "annee", required = false) Integer annee);
 }
\ No newline at end of file
@@ -7,11 +7,21 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 @FeignClient(name = "PRODUIT-SERVICE", configuration = FeignClientConfig.class)
 public interface ProduitServiceClient {
     @GetMapping("/produits/{id}")
     Produit getProduitById(@PathVariable("id") Long id);
+
+    // Résolution en masse : un seul aller-retour pour tous les produits
+    @PostMapping("/produits/batch")
+    List<Produit> getProduitsByIds(@RequestBody Set<Long> ids);
 }
 @Component
 class ProduitServiceClientFallbackFactory implements FallbackFactory<ProduitServiceClient> {
@@ -23,6 +33,12 @@ class ProduitServiceClientFallbackFactory implements FallbackFactory<ProduitServ
                 System.err.println("Fallback triggered for getProduitById: " + cause.getMessage());
                 return new Produit(id, "Produit non disponible", 0.0, 0L, null, null);
             }
+
+            @Override
+            public List<Produit> getProduitsByIds(Set<Long> ids) {
+                System.err.println("Fallback triggered for getProduitsByIds: " + cause.getMessage());
+                return Collections.emptyList();
+            }
         };
     }
 }
\ No newline at end of file
@@ -9,19 +9,26 @@ import org.ms.client_service.model.Produit;
 import org.ms.client_service.repository.ClientRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 //@CrossOrigin(origins = "http://localhost:4200")
 @RefreshScope
 @RestController
 @RequestMapping("/clients")
 public class ClientRestController {
+    private static final int MAX_FIDELES = 1000;
+
     @Autowired
     private ClientRepository clientRepository;
     @Autowired
@@ -44,6 +51,16 @@ public class ClientRestController {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Client non trouvé pour l'ID : " + id));
     }
 
+    // Résolution en masse : un seul aller-retour pour toute une page de factures
+    @PostMapping("/batch")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public List<Client> findByIds(@RequestBody Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        return clientRepository.findAllById(ids);
+    }
+
     @PostMapping
     @PreAuthorize("hasAuthority('ADMIN')")
     @ResponseStatus(HttpStatus.CREATED)
@@ -108,15 +125,27 @@ public class ClientRestController {
 
     @GetMapping("/fideles")
     public List<Client> getClientsFideles(@RequestParam(defaultValue = "5") int limit) {
-        List<Client> clients = clientRepository.findAll();
-        return clients.stream()
-                .sorted((c1, c2) -> {
-                    Double ca1 = factureServiceClient.getChiffreAffairesByClient(c1.getId(), null);
-                    Double ca2 = factureServiceClient.getChiffreAffairesByClient(c2.getId(), null);
-                    return ca2.compareTo(ca1);
-                })
-                .limit(limit)
+        if (limit <= 0 || limit > MAX_FIDELES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "La limite doit être comprise entre 1 et " + MAX_FIDELES);
+        }
+        // Classement et limite faits par facture-service : seuls les clients retenus sont chargés
+        List<Long> ids = factureServiceClient.getTopClients(limit, null).stream()
+                .map(s -> ((Number) s.get("clientId")).longValue())
                 .collect(Collectors.toList());
+        Map<Long, Client> clientsById = clientRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Client::getId, c -> c));
+        List<Client> fideles = ids.stream().map(clientsById::get).filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new));
+        // Moins de clients facturés que demandé : complété par des clients sans chiffre d'affaires, comme avant
+        if (fideles.size() < limit) {
+            Set<Long> retenus = fideles.stream().map(Client::getId).collect(Collectors.toSet());
+            clientRepository.findAll(PageRequest.of(0, limit + retenus.size(), Sort.by("id"))).stream()
+                    .filter(c -> !retenus.contains(c.getId()))
+                    .limit(limit - fideles.size())
+                    .forEach(fideles::add);
+        }
+        return fideles;
     }
 
     @GetMapping("/{id}/produits-sollicites")
@@ -125,34 +154,45 @@ public class ClientRestController {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Client non trouvé pour l'ID : " + id);
         }
         List<Map<String, Object>> produitsSollicites = factureServiceClient.getProduitsSollicitesByClient(id, limit);
+        Set<Long> produitIds = produitsSollicites.stream()
+                .map(produitMap -> toLong(produitMap.get("produitId")))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (produitIds.isEmpty()) {
+            return produitsSollicites;
+        }
+        // Un seul appel à produit-service pour tous les produits ; indisponible, la liste est
+        // renvoyée sans les noms plutôt qu'en erreur
+        Map<Long, Produit> produits;
+        try {
+            produits = produitServiceClient.getProduitsByIds(produitIds).stream()
+                    .collect(Collectors.toMap(Produit::getId, p -> p, (a, b) -> a));
+        } catch (RuntimeException e) {
+            return produitsSollicites; // Retourner les maps de base si produit-service ne répond pas
+        }
         return produitsSollicites.stream()
                 .map(produitMap -> {
-                    // Correction du cast ici :
-                    Long produitId;
-                    Object idObj = produitMap.get("produitId");
-                    if (idObj instanceof Integer) {
-                        produitId = ((Integer) idObj).longValue();
-                    } else if (idObj instanceof Long) {
-                        produitId = (Long) idObj;
-                    } else {
-                        produitId = null;
-                    }
-                    try {
-                        if (produitId != null) {
-                            Produit produit = produitServiceClient.getProduitById(produitId);
-                            return Map.of(
-                                    "produitId", produitId,
-                                    "nom", produit.getName(),
-                                    "quantite", produitMap.get("quantite")
-                            );
-                        } else {
-                            return produitMap;
-                        }
-                    } catch (Exception e) {
+                    Long produitId = toLong(produitMap.get("produitId"));
+                    Produit produit = produitId != null ? produits.get(produitId) : null;
+                    if (produit == null) {
                         return produitMap; // Retourner la map de base si le produit n'est pas trouvé
                     }
+                    return Map.of(
+                            "produitId", produitId,
+                            "nom", produit.getName(),
+                            "quantite", produitMap.get("quantite")
+                    );
                 })
                 .collect(Collectors.toList());
     }
 
+    private static Long toLong(Object idObj) {
+        if (idObj instanceof Integer) {
+            return ((Integer) idObj).longValue();
+        } else if (idObj instanceof Long) {
+            return (Long) idObj;
+        }
+        return null;
+    }
+
 }
\ No newline at end of file
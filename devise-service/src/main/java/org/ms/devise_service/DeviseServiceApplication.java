@@ -2,14 +2,18 @@ package org.ms.devise_service;
 
 import org.ms.devise_service.entities.Devise;
 import org.ms.devise_service.repository.DeviseRepository;
+import org.ms.devise_service.service.DeviseSnapshotService;
+import org.ms.devise_service.service.TauxHistoriqueService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableDiscoveryClient
+@EnableScheduling
 public class DeviseServiceApplication {
 
     public static void main(String[] args) {
@@ -17,7 +21,8 @@ public class DeviseServiceApplication {
     }
 
     @Bean
-    CommandLineRunner init(DeviseRepository deviseRepository) {
+    CommandLineRunner init(DeviseRepository deviseRepository, TauxHistoriqueService tauxHistoriqueService,
+                           DeviseSnapshotService deviseSnapshotService) {
         return args -> {
             if (deviseRepository.count() == 0) {
                 deviseRepository.save(new Devise(null, "MAD", "Dirham marocain", 1.0, true));
@@ -25,6 +30,8 @@ public class DeviseServiceApplication {
                 deviseRepository.save(new Devise(null, "EUR", "Euro", 10.2, false));
                 deviseRepository.save(new Devise(null, "TND", "Dinar tunisien", 3.3, false));
             }
+            tauxHistoriqueService.seedMissing();
+            deviseSnapshotService.refresh();
         };
     }
 }
@@ -0,0 +1,17 @@
+package org.ms.devise_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Élément de POST /devises/convert/batch ; resultat est null et erreur renseignée si une devise est inconnue
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Conversion {
+    private double montant;
+    private String from;
+    private String to;
+    private Double resultat;
+    private String erreur;
+}
@@ -0,0 +1,17 @@
+package org.ms.devise_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+// Élément de POST /devises/taux/asof ; tauxChange est null si aucun taux n'est connu à cette date
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TauxAsOf {
+    private String code;
+    private Date date;
+    private Double tauxChange;
+}
@@ -2,8 +2,10 @@ package org.ms.devise_service.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.ms.devise_service.service.DeviseSnapshotListener;
 
 @Entity
+@EntityListeners(DeviseSnapshotListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,29 @@
+package org.ms.devise_service.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.Date;
+
+/**
+ * Taux d'une devise applicable à partir de dateEffet, jusqu'au taux suivant.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_taux_code_date", columnList = "code, dateEffet"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TauxHistorique {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String code;
+
+    @Column(nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dateEffet;
+
+    private double tauxChange;
+}
@@ -0,0 +1,22 @@
+package org.ms.devise_service.repository;
+
+import org.ms.devise_service.entities.TauxHistorique;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import java.util.List;
+import java.util.Optional;
+
+@RepositoryRestResource(exported = false)
+public interface TauxHistoriqueRepository extends JpaRepository<TauxHistorique, Long> {
+    List<TauxHistorique> findAllByOrderByCodeAscDateEffetAsc();
+
+    Optional<TauxHistorique> findFirstByCodeOrderByDateEffetDesc(String code);
+
+    boolean existsByCode(String code);
+
+    // L'historique ne fait que croître : nombre et dernier id suffisent à détecter un ajout
+    @Query("SELECT MAX(t.id) FROM TauxHistorique t")
+    Long findMaxId();
+}
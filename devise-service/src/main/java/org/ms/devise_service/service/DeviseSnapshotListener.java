@@ -0,0 +1,49 @@
+package org.ms.devise_service.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.ms.devise_service.entities.Devise;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Après toute écriture sur Devise, y compris via Spring Data REST, historise le taux
+ * courant puis recharge la photographie des taux ; dans une transaction, après le commit.
+ */
+@Component
+public class DeviseSnapshotListener {
+    private final ObjectProvider<DeviseSnapshotService> snapshotService;
+    private final ObjectProvider<TauxHistoriqueService> tauxHistoriqueService;
+
+    public DeviseSnapshotListener(ObjectProvider<DeviseSnapshotService> snapshotService,
+                                  ObjectProvider<TauxHistoriqueService> tauxHistoriqueService) {
+        this.snapshotService = snapshotService;
+        this.tauxHistoriqueService = tauxHistoriqueService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Devise devise) {
+        String code = devise.getCode();
+        double tauxChange = devise.getTauxChange();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(code, tauxChange);
+                }
+            });
+        } else {
+            apply(code, tauxChange);
+        }
+    }
+
+    private void apply(String code, double tauxChange) {
+        tauxHistoriqueService.getObject().recordCurrent(code, tauxChange);
+        snapshotService.getObject().refresh();
+    }
+}
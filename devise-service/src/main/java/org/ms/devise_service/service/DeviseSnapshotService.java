@@ -0,0 +1,81 @@
+package org.ms.devise_service.service;
+
+import jakarta.annotation.PostConstruct;
+import org.ms.devise_service.repository.DeviseRepository;
+import org.ms.devise_service.repository.TauxHistoriqueRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Détient la photographie courante des taux. Les lectures ne prennent aucun verrou ;
+ * chaque écriture sur Devise reconstruit une nouvelle photographie, publiée d'un bloc
+ * (copie sur écriture, voir DeviseSnapshotListener).
+ * Le listener ne voit que les écritures de cette instance : la photographie est aussi
+ * relue périodiquement, pour reprendre celles des autres répliques, et l'historique
+ * l'est dès que sa version en base (nombre d'entrées, dernier id) a changé.
+ */
+@Service
+public class DeviseSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(DeviseSnapshotService.class);
+
+    private final DeviseRepository deviseRepository;
+    private final TauxHistoriqueRepository tauxHistoriqueRepository;
+    private volatile RateSnapshot snapshot = RateSnapshot.empty();
+    private volatile RateHistory history = RateHistory.empty();
+    private HistoryVersion historyVersion;
+
+    private record HistoryVersion(long nombre, Long dernierId) {
+    }
+
+    public DeviseSnapshotService(DeviseRepository deviseRepository, TauxHistoriqueRepository tauxHistoriqueRepository) {
+        this.deviseRepository = deviseRepository;
+        this.tauxHistoriqueRepository = tauxHistoriqueRepository;
+    }
+
+    @PostConstruct
+    void init() {
+        refresh();
+    }
+
+    public RateSnapshot current() {
+        return snapshot;
+    }
+
+    public RateHistory history() {
+        return history;
+    }
+
+    // Sérialisé pour qu'une reconstruction plus ancienne n'écrase jamais une plus récente
+    public synchronized void refresh() {
+        snapshot = RateSnapshot.of(deviseRepository.findAll());
+        rechargerHistorique(versionHistorique());
+        logger.info("Taux de change rechargés : {} devise(s)", snapshot.size());
+    }
+
+    @Scheduled(fixedDelayString = "${devise.snapshot.reload-ms:30000}",
+            initialDelayString = "${devise.snapshot.reload-ms:30000}")
+    public synchronized void recharger() {
+        RateSnapshot relu = RateSnapshot.of(deviseRepository.findAll());
+        if (!relu.equals(snapshot)) {
+            snapshot = relu;
+            logger.info("Taux de change modifiés par une autre instance : {} devise(s)", relu.size());
+        }
+        HistoryVersion version = versionHistorique();
+        if (!version.equals(historyVersion)) {
+            rechargerHistorique(version);
+            logger.info("Historique des taux modifié par une autre instance : {} entrée(s)", version.nombre());
+        }
+    }
+
+    // Version lue avant les entrées : un ajout concurrent sera revu au prochain passage
+    private HistoryVersion versionHistorique() {
+        return new HistoryVersion(tauxHistoriqueRepository.count(), tauxHistoriqueRepository.findMaxId());
+    }
+
+    private void rechargerHistorique(HistoryVersion version) {
+        history = RateHistory.of(tauxHistoriqueRepository.findAllByOrderByCodeAscDateEffetAsc());
+        historyVersion = version;
+    }
+}
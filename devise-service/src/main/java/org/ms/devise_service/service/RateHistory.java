@@ -0,0 +1,65 @@
+package org.ms.devise_service.service;
+
+import org.ms.devise_service.entities.TauxHistorique;
+
+import java.util.*;
+
+/**
+ * Historique immuable des taux : pour chaque devise, les dates d'effet triées et
+ * les taux correspondants dans deux tableaux primitifs parallèles. Le taux en vigueur
+ * à une date s'obtient par recherche dichotomique, sans allocation.
+ */
+public final class RateHistory {
+    private record Series(long[] dates, double[] taux) {
+    }
+
+    private final Map<String, Series> series;
+
+    private RateHistory(Map<String, Series> series) {
+        this.series = series;
+    }
+
+    // Entrées triées par code puis date d'effet
+    public static RateHistory of(List<TauxHistorique> entries) {
+        Map<String, Series> series = new HashMap<>();
+        int start = 0;
+        while (start < entries.size()) {
+            String code = entries.get(start).getCode().toUpperCase();
+            int end = start;
+            while (end < entries.size() && entries.get(end).getCode().equalsIgnoreCase(code)) {
+                end++;
+            }
+            long[] dates = new long[end - start];
+            double[] taux = new double[end - start];
+            for (int i = start; i < end; i++) {
+                dates[i - start] = entries.get(i).getDateEffet().getTime();
+                taux[i - start] = entries.get(i).getTauxChange();
+            }
+            series.put(code, new Series(dates, taux));
+            start = end;
+        }
+        return new RateHistory(Collections.unmodifiableMap(series));
+    }
+
+    public static RateHistory empty() {
+        return of(List.of());
+    }
+
+    /** Taux en vigueur à la date donnée, ou NaN si la devise n'a aucun taux à cette date. */
+    public double asOf(String code, long date) {
+        Series s = series.get(code.toUpperCase());
+        if (s == null) {
+            return Double.NaN;
+        }
+        int i = Arrays.binarySearch(s.dates(), date);
+        if (i < 0) {
+            i = -i - 2; // dernière date d'effet strictement antérieure
+        } else {
+            // Plusieurs taux à la même date : le dernier enregistré l'emporte
+            while (i + 1 < s.dates().length && s.dates()[i + 1] == date) {
+                i++;
+            }
+        }
+        return i >= 0 ? s.taux()[i] : Double.NaN;
+    }
+}
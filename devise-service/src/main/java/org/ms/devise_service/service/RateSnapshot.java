@@ -0,0 +1,79 @@
+package org.ms.devise_service.service;
+
+import org.ms.devise_service.entities.Devise;
+
+import java.util.*;
+
+/**
+ * Photographie immuable des devises : les taux croisés de toutes les paires sont
+ * précalculés dans une matrice n×n, de sorte qu'une conversion se résume à deux
+ * lectures de table de hachage et une multiplication.
+ */
+public final class RateSnapshot {
+    private final Map<String, Integer> index;
+    private final Map<String, Devise> devises;
+    // cross[from][to] = taux(to) / taux(from)
+    private final double[][] cross;
+
+    private RateSnapshot(Map<String, Integer> index, Map<String, Devise> devises, double[][] cross) {
+        this.index = index;
+        this.devises = devises;
+        this.cross = cross;
+    }
+
+    public static RateSnapshot of(List<Devise> source) {
+        int n = source.size();
+        Map<String, Integer> index = new HashMap<>(n * 2);
+        Map<String, Devise> devises = new HashMap<>(n * 2);
+        double[] taux = new double[n];
+        for (int i = 0; i < n; i++) {
+            Devise devise = source.get(i);
+            String code = devise.getCode().toUpperCase();
+            index.put(code, i);
+            // Copie : la photographie ne partage aucun objet avec le contexte de persistance
+            devises.put(code, new Devise(devise.getId(), code, devise.getName(), devise.getTauxChange(),
+                    devise.isDeviseReference()));
+            taux[i] = devise.getTauxChange();
+        }
+        double[][] cross = new double[n][n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                cross[from][to] = taux[to] / taux[from];
+            }
+        }
+        return new RateSnapshot(Collections.unmodifiableMap(index), Collections.unmodifiableMap(devises), cross);
+    }
+
+    public static RateSnapshot empty() {
+        return of(List.of());
+    }
+
+    /** Montant converti, ou null si l'une des devises est inconnue. */
+    public Double convert(double montant, String from, String to) {
+        Integer i = index.get(from.toUpperCase());
+        Integer j = index.get(to.toUpperCase());
+        if (i == null || j == null) {
+            return null;
+        }
+        return montant * cross[i][j];
+    }
+
+    public Devise find(String code) {
+        return devises.get(code.toUpperCase());
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    // Même contenu : mêmes devises, avec les mêmes noms et taux
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RateSnapshot other && devises.equals(other.devises);
+    }
+
+    @Override
+    public int hashCode() {
+        return devises.hashCode();
+    }
+}
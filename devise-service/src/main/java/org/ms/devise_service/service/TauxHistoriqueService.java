@@ -0,0 +1,55 @@
+package org.ms.devise_service.service;
+
+import org.ms.devise_service.entities.Devise;
+import org.ms.devise_service.entities.TauxHistorique;
+import org.ms.devise_service.repository.DeviseRepository;
+import org.ms.devise_service.repository.TauxHistoriqueRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+/**
+ * Enregistre l'historique des taux : chaque changement de Devise.tauxChange y ajoute
+ * une entrée datée, et des taux antidatés peuvent y être saisis pour corriger le passé.
+ */
+@Service
+public class TauxHistoriqueService {
+    private final TauxHistoriqueRepository tauxHistoriqueRepository;
+    private final DeviseRepository deviseRepository;
+
+    public TauxHistoriqueService(TauxHistoriqueRepository tauxHistoriqueRepository, DeviseRepository deviseRepository) {
+        this.tauxHistoriqueRepository = tauxHistoriqueRepository;
+        this.deviseRepository = deviseRepository;
+    }
+
+    // Appelé après le commit de l'écriture sur Devise, d'où la nouvelle transaction
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void recordCurrent(String code, double tauxChange) {
+        boolean changed = tauxHistoriqueRepository.findFirstByCodeOrderByDateEffetDesc(code)
+                .map(last -> last.getTauxChange() != tauxChange)
+                .orElse(true);
+        if (changed) {
+            // Premier taux connu : applicable à toutes les dates antérieures
+            Date dateEffet = tauxHistoriqueRepository.existsByCode(code) ? new Date() : new Date(0);
+            tauxHistoriqueRepository.save(new TauxHistorique(null, code, dateEffet, tauxChange));
+        }
+    }
+
+    @Transactional
+    public TauxHistorique record(String code, Date dateEffet, double tauxChange) {
+        return tauxHistoriqueRepository.save(new TauxHistorique(null, code, dateEffet, tauxChange));
+    }
+
+    // Devises sans historique (créées avant son introduction) : leur taux courant devient le premier point
+    @Transactional
+    public void seedMissing() {
+        for (Devise devise : deviseRepository.findAll()) {
+            if (!tauxHistoriqueRepository.existsByCode(devise.getCode())) {
+                tauxHistoriqueRepository.save(new TauxHistorique(null, devise.getCode(), new Date(0),
+                        devise.getTauxChange()));
+            }
+        }
+    }
+}
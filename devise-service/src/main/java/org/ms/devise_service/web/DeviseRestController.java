@@ -1,12 +1,22 @@
 package org.ms.devise_service.web;
 
+import org.ms.devise_service.dto.Conversion;
+import org.ms.devise_service.dto.TauxAsOf;
 import org.ms.devise_service.entities.Devise;
+import org.ms.devise_service.entities.TauxHistorique;
 import org.ms.devise_service.repository.DeviseRepository;
+import org.ms.devise_service.service.DeviseSnapshotService;
+import org.ms.devise_service.service.RateHistory;
+import org.ms.devise_service.service.RateSnapshot;
+import org.ms.devise_service.service.TauxHistoriqueService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 //@CrossOrigin(origins = "http://localhost:4200")
@@ -15,9 +25,14 @@ import java.util.List;
 public class DeviseRestController {
 
     private final DeviseRepository deviseRepository;
+    private final DeviseSnapshotService deviseSnapshotService;
+    private final TauxHistoriqueService tauxHistoriqueService;
 
-    public DeviseRestController(DeviseRepository deviseRepository) {
+    public DeviseRestController(DeviseRepository deviseRepository, DeviseSnapshotService deviseSnapshotService,
+                                TauxHistoriqueService tauxHistoriqueService) {
         this.deviseRepository = deviseRepository;
+        this.deviseSnapshotService = deviseSnapshotService;
+        this.tauxHistoriqueService = tauxHistoriqueService;
     }
 
     @GetMapping
@@ -37,7 +52,7 @@ public class DeviseRestController {
     @GetMapping("/{code}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public ResponseEntity<Devise> getDeviseByCode(@PathVariable String code) {
-        Devise devise = deviseRepository.findByCode(code.toUpperCase());
+        Devise devise = deviseSnapshotService.current().find(code);
         if (devise == null) {
             return ResponseEntity.notFound().build();
         }
@@ -63,14 +78,70 @@ public class DeviseRestController {
             @PathVariable String from,
             @PathVariable String to) {
 
-        Devise deviseFrom = deviseRepository.findByCode(from.toUpperCase());
-        Devise deviseTo = deviseRepository.findByCode(to.toUpperCase());
+        // Servi depuis la photographie en mémoire, sans accès à la base
+        Double result = deviseSnapshotService.current().convert(montant, from, to);
+        if (result == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    // Plusieurs conversions en un appel, toutes sur la même photographie des taux
+    @PostMapping("/convert/batch")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public List<Conversion> convertBatch(@RequestBody List<Conversion> conversions) {
+        RateSnapshot snapshot = deviseSnapshotService.current();
+        List<Conversion> results = new ArrayList<>(conversions.size());
+        for (Conversion conversion : conversions) {
+            Double resultat = conversion.getFrom() == null || conversion.getTo() == null ? null
+                    : snapshot.convert(conversion.getMontant(), conversion.getFrom(), conversion.getTo());
+            results.add(new Conversion(conversion.getMontant(), conversion.getFrom(), conversion.getTo(), resultat,
+                    resultat == null ? "Devise inconnue" : null));
+        }
+        return results;
+    }
+
+    // --- Historique des taux ---
+
+    // Taux en vigueur à une date (par défaut maintenant)
+    @GetMapping("/{code}/taux")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public ResponseEntity<Double> getTauxAsOf(@PathVariable String code,
+                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date date) {
+        double taux = deviseSnapshotService.history().asOf(code, (date != null ? date : new Date()).getTime());
+        if (Double.isNaN(taux)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(taux);
+    }
 
-        if (deviseFrom == null || deviseTo == null) {
+    // Saisie d'un taux daté, éventuellement antidaté pour corriger l'historique
+    @PostMapping("/{code}/taux")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<TauxHistorique> addTaux(@PathVariable String code, @RequestBody TauxHistorique taux) {
+        if (deviseSnapshotService.current().find(code) == null || taux.getDateEffet() == null
+                || taux.getTauxChange() <= 0) {
             return ResponseEntity.badRequest().build();
         }
+        TauxHistorique saved = tauxHistoriqueService.record(code.toUpperCase(), taux.getDateEffet(), taux.getTauxChange());
+        deviseSnapshotService.refresh();
+        return new ResponseEntity<>(saved, HttpStatus.CREATED);
+    }
 
-        double result = montant * (deviseTo.getTauxChange() / deviseFrom.getTauxChange());
-        return ResponseEntity.ok(result);
+    // Taux de nombreux couples (devise, date) en un appel, sur le même historique
+    @PostMapping("/taux/asof")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public List<TauxAsOf> getTauxAsOfBatch(@RequestBody List<TauxAsOf> demandes) {
+        RateHistory history = deviseSnapshotService.history();
+        List<TauxAsOf> results = new ArrayList<>(demandes.size());
+        for (TauxAsOf demande : demandes) {
+            Double taux = null;
+            if (demande.getCode() != null) {
+                double t = history.asOf(demande.getCode(), (demande.getDate() != null ? demande.getDate() : new Date()).getTime());
+                taux = Double.isNaN(t) ? null : t;
+            }
+            results.add(new TauxAsOf(demande.getCode(), demande.getDate(), taux));
+        }
+        return results;
     }
 }
@@ -0,0 +1,84 @@
+package org.ms.devise_service.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.ms.devise_service.entities.TauxHistorique;
+import org.ms.devise_service.repository.DeviseRepository;
+import org.ms.devise_service.repository.TauxHistoriqueRepository;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class RateHistoryTests {
+
+	private static final long JOUR = 24 * 3600 * 1000L;
+
+	// Entrées triées par code puis date d'effet, comme findAllByOrderByCodeAscDateEffetAsc
+	private static final List<TauxHistorique> ENTREES = List.of(
+			taux(1L, "EUR", 10 * JOUR, 10.0),
+			taux(2L, "EUR", 20 * JOUR, 11.0),
+			taux(3L, "EUR", 20 * JOUR, 11.5),
+			taux(4L, "EUR", 30 * JOUR, 12.0),
+			taux(5L, "USD", 0, 9.5));
+
+	@Test
+	void exactDateUsesThatRate() {
+		RateHistory history = RateHistory.of(ENTREES);
+		assertEquals(10.0, history.asOf("EUR", 10 * JOUR));
+		assertEquals(12.0, history.asOf("EUR", 30 * JOUR));
+		assertEquals(9.5, history.asOf("USD", 0));
+	}
+
+	@Test
+	void dateBetweenTwoPointsUsesTheEarlierOne() {
+		RateHistory history = RateHistory.of(ENTREES);
+		assertEquals(10.0, history.asOf("EUR", 15 * JOUR));
+		assertEquals(11.5, history.asOf("EUR", 25 * JOUR));
+		assertEquals(12.0, history.asOf("eur", 365 * JOUR));
+	}
+
+	@Test
+	void dateBeforeFirstPointHasNoRate() {
+		RateHistory history = RateHistory.of(ENTREES);
+		assertTrue(Double.isNaN(history.asOf("EUR", 10 * JOUR - 1)));
+		assertTrue(Double.isNaN(history.asOf("GBP", 10 * JOUR)));
+		assertTrue(Double.isNaN(RateHistory.empty().asOf("EUR", 10 * JOUR)));
+	}
+
+	@Test
+	void duplicateTimestampsKeepTheLastRecorded() {
+		RateHistory history = RateHistory.of(ENTREES);
+		assertEquals(11.5, history.asOf("EUR", 20 * JOUR));
+		assertEquals(11.5, history.asOf("EUR", 20 * JOUR + 1));
+		assertEquals(10.0, history.asOf("EUR", 20 * JOUR - 1));
+	}
+
+	@Test
+	void periodicReloadPicksUpOtherReplicasRates() {
+		DeviseRepository deviseRepository = Mockito.mock(DeviseRepository.class);
+		TauxHistoriqueRepository tauxHistoriqueRepository = Mockito.mock(TauxHistoriqueRepository.class);
+		when(tauxHistoriqueRepository.findAllByOrderByCodeAscDateEffetAsc()).thenReturn(ENTREES.subList(0, 2));
+		when(tauxHistoriqueRepository.count()).thenReturn(2L);
+		when(tauxHistoriqueRepository.findMaxId()).thenReturn(2L);
+		DeviseSnapshotService service = new DeviseSnapshotService(deviseRepository, tauxHistoriqueRepository);
+		service.refresh();
+		RateHistory initial = service.history();
+
+		service.recharger();
+		assertSame(initial, service.history());
+
+		when(tauxHistoriqueRepository.findAllByOrderByCodeAscDateEffetAsc()).thenReturn(ENTREES);
+		when(tauxHistoriqueRepository.count()).thenReturn(5L);
+		when(tauxHistoriqueRepository.findMaxId()).thenReturn(5L);
+		service.recharger();
+		assertEquals(12.0, service.history().asOf("EUR", 30 * JOUR));
+		assertEquals(9.5, service.history().asOf("USD", 0));
+	}
+
+	private static TauxHistorique taux(Long id, String code, long dateEffet, double tauxChange) {
+		return new TauxHistorique(id, code, new Date(dateEffet), tauxChange);
+	}
+}
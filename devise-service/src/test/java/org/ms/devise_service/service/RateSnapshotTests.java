@@ -0,0 +1,94 @@
+package org.ms.devise_service.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.ms.devise_service.dto.Conversion;
+import org.ms.devise_service.entities.Devise;
+import org.ms.devise_service.repository.DeviseRepository;
+import org.ms.devise_service.repository.TauxHistoriqueRepository;
+import org.ms.devise_service.web.DeviseRestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class RateSnapshotTests {
+
+	private static final List<Devise> DEVISES = List.of(
+			new Devise(1L, "MAD", "Dirham marocain", 1.0, true),
+			new Devise(2L, "USD", "Dollar US", 9.5, false),
+			new Devise(3L, "EUR", "Euro", 10.2, false));
+
+	@Test
+	void crossRatesCoverEveryPair() {
+		RateSnapshot snapshot = RateSnapshot.of(DEVISES);
+		for (Devise from : DEVISES) {
+			for (Devise to : DEVISES) {
+				assertEquals(100 * to.getTauxChange() / from.getTauxChange(),
+						snapshot.convert(100, from.getCode(), to.getCode()), 1e-9);
+			}
+		}
+		assertEquals(100.0, snapshot.convert(100, "EUR", "EUR"), 1e-9);
+		assertEquals(950.0, snapshot.convert(100, "mad", "usd"), 1e-9);
+	}
+
+	@Test
+	void unknownCurrencyHasNoRate() {
+		RateSnapshot snapshot = RateSnapshot.of(DEVISES);
+		assertNull(snapshot.convert(100, "MAD", "GBP"));
+		assertNull(snapshot.convert(100, "GBP", "MAD"));
+		assertNull(snapshot.find("GBP"));
+		assertNull(RateSnapshot.empty().convert(100, "MAD", "MAD"));
+		assertEquals("Euro", snapshot.find("eur").getName());
+	}
+
+	@Test
+	void snapshotDoesNotShareSourceObjects() {
+		List<Devise> source = new ArrayList<>();
+		source.add(new Devise(1L, "mad", "Dirham marocain", 1.0, true));
+		RateSnapshot snapshot = RateSnapshot.of(source);
+		source.get(0).setTauxChange(2.0);
+		assertEquals(1.0, snapshot.find("MAD").getTauxChange());
+		assertEquals("MAD", snapshot.find("MAD").getCode());
+	}
+
+	@Test
+	void batchConversionReportsUnknownCurrencies() {
+		DeviseSnapshotService service = Mockito.mock(DeviseSnapshotService.class);
+		when(service.current()).thenReturn(RateSnapshot.of(DEVISES));
+		DeviseRestController controller = new DeviseRestController(null, service, null);
+
+		List<Conversion> results = controller.convertBatch(List.of(
+				new Conversion(10, "MAD", "EUR", null, null),
+				new Conversion(10, "EUR", "XXX", null, null),
+				new Conversion(10, null, "MAD", null, null)));
+
+		assertEquals(3, results.size());
+		assertEquals(102.0, results.get(0).getResultat(), 1e-9);
+		assertNull(results.get(0).getErreur());
+		assertNull(results.get(1).getResultat());
+		assertEquals("Devise inconnue", results.get(1).getErreur());
+		assertNull(results.get(2).getResultat());
+		assertEquals("Devise inconnue", results.get(2).getErreur());
+	}
+
+	@Test
+	void periodicReloadPicksUpOtherReplicasWrites() {
+		DeviseRepository deviseRepository = Mockito.mock(DeviseRepository.class);
+		TauxHistoriqueRepository tauxHistoriqueRepository = Mockito.mock(TauxHistoriqueRepository.class);
+		when(deviseRepository.findAll()).thenReturn(DEVISES);
+		DeviseSnapshotService service = new DeviseSnapshotService(deviseRepository, tauxHistoriqueRepository);
+		service.refresh();
+		RateSnapshot initial = service.current();
+
+		service.recharger();
+		assertSame(initial, service.current());
+
+		when(deviseRepository.findAll()).thenReturn(List.of(DEVISES.get(0), new Devise(2L, "USD", "Dollar US", 9.8, false)));
+		service.recharger();
+		assertEquals(980.0, service.current().convert(100, "MAD", "USD"), 1e-9);
+		assertNull(service.current().convert(100, "EUR", "MAD"));
+	}
+}
@@ -0,0 +1,144 @@
+package org.ms.facture_service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Cache local borné (taille + TTL) devant un service de référence distant.
+ * Les entrées sont rafraîchies en arrière-plan avant expiration (refresh-ahead)
+ * et, si le service est indisponible, la dernière valeur connue est servie
+ * à la place d'un libellé "indisponible". Caffeine rafraîchit clé par clé : les
+ * rafraîchissements déclenchés par un même getAll sont regroupés en un seul appel groupé.
+ */
+public class NearCache<V> {
+    private static final Logger logger = LoggerFactory.getLogger(NearCache.class);
+
+    private final String name;
+    private final LoadingCache<Long, V> cache;
+    private final Cache<Long, V> lastKnown;
+    private final Counter staleHits;
+    private final Function<Set<Long>, Map<Long, V>> bulkLoader;
+    // Le rafraîchissement asynchrone garde le JWT de la requête qui l'a déclenché
+    private final Executor refreshExecutor = new DelegatingSecurityContextExecutor(ForkJoinPool.commonPool());
+    // Rafraîchissements demandés pendant le getAll en cours sur ce thread
+    private final ThreadLocal<Map<Long, CompletableFuture<V>>> pendingRefreshes = new ThreadLocal<>();
+
+    public NearCache(String name, Function<Set<Long>, Map<Long, V>> bulkLoader, long maximumSize,
+                     Duration ttl, Duration refreshAfter, Duration staleTtl, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.bulkLoader = bulkLoader;
+        this.lastKnown = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(staleTtl)
+                .build();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .refreshAfterWrite(refreshAfter)
+                .executor(refreshExecutor)
+                .recordStats()
+                .build(new CacheLoader<Long, V>() {
+                    @Override
+                    public V load(Long key) {
+                        return loadAll(Set.of(key)).get(key);
+                    }
+
+                    @Override
+                    public Map<Long, V> loadAll(Set<? extends Long> keys) {
+                        Map<Long, V> loaded = bulkLoader.apply(new HashSet<>(keys));
+                        lastKnown.putAll(loaded);
+                        return loaded;
+                    }
+
+                    @Override
+                    public CompletableFuture<V> asyncReload(Long key, V oldValue, Executor executor) {
+                        CompletableFuture<V> future = new CompletableFuture<>();
+                        Map<Long, CompletableFuture<V>> pending = pendingRefreshes.get();
+                        if (pending != null) {
+                            pending.put(key, future);
+                        } else {
+                            reloadAll(Map.of(key, future));
+                        }
+                        return future;
+                    }
+                });
+        this.staleHits = Counter.builder("nearcache.stale.hits")
+                .description("Valeurs périmées servies pendant une indisponibilité du service distant")
+                .tag("cache", name)
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    public V get(Long id) {
+        return getAll(Set.of(id)).get(id);
+    }
+
+    public Map<Long, V> getAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, CompletableFuture<V>> pending = new HashMap<>();
+        pendingRefreshes.set(pending);
+        try {
+            return read(ids);
+        } finally {
+            pendingRefreshes.remove();
+            if (!pending.isEmpty()) {
+                reloadAll(pending);
+            }
+        }
+    }
+
+    private Map<Long, V> read(Collection<Long> ids) {
+        try {
+            return cache.getAll(ids);
+        } catch (RuntimeException e) {
+            logger.warn("Cache {} : service distant indisponible, valeurs connues servies ({})", name, e.getMessage());
+            Map<Long, V> result = new HashMap<>(cache.getAllPresent(ids));
+            for (Long id : ids) {
+                if (!result.containsKey(id)) {
+                    V stale = lastKnown.getIfPresent(id);
+                    if (stale != null) {
+                        result.put(id, stale);
+                        staleHits.increment();
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    // Un seul appel groupé ; une clé absente de la réponse est retirée du cache, un échec garde l'ancienne valeur
+    private void reloadAll(Map<Long, CompletableFuture<V>> refreshes) {
+        refreshExecutor.execute(() -> {
+            try {
+                Map<Long, V> loaded = bulkLoader.apply(new HashSet<>(refreshes.keySet()));
+                lastKnown.putAll(loaded);
+                refreshes.forEach((id, future) -> future.complete(loaded.get(id)));
+            } catch (RuntimeException e) {
+                logger.warn("Cache {} : rafraîchissement de {} entrée(s) en échec ({})", name, refreshes.size(),
+                        e.getMessage());
+                refreshes.values().forEach(future -> future.completeExceptionally(e));
+            }
+        });
+    }
+
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+    }
+}
@@ -0,0 +1,156 @@
+package org.ms.facture_service.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Exécute en parallèle des appels distants indépendants, avec un délai par appel
+ * et un délai global par portée. Chaque tâche reçoit le SecurityContext (le JWT
+ * relayé par FeignClientConfig) et le MDC de la requête : une page coûte environ
+ * un aller-retour au lieu de la somme de tous. Un appel en échec ou hors délai
+ * renvoie sa valeur de repli, et les tâches encore en cours sont annulées
+ * à la fermeture de la portée.
+ */
+public class FanOut {
+    private static final Logger logger = LoggerFactory.getLogger(FanOut.class);
+
+    private final ExecutorService executor;
+    private final Duration callTimeout;
+    private final Duration overallTimeout;
+
+    public FanOut(ExecutorService executor, Duration callTimeout, Duration overallTimeout) {
+        this.executor = executor;
+        this.callTimeout = callTimeout;
+        this.overallTimeout = overallTimeout;
+    }
+
+    public Scope open() {
+        return new Scope(System.nanoTime() + overallTimeout.toNanos());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public final class Scope implements AutoCloseable {
+        private final long deadline;
+        private final List<Call<?>> calls = new ArrayList<>();
+
+        private Scope(long deadline) {
+            this.deadline = deadline;
+        }
+
+        public <T> Call<T> fork(Supplier<T> supplier, T fallback) {
+            long callDeadline = Math.min(deadline, System.nanoTime() + callTimeout.toNanos());
+            Call<T> call = new Call<>(executor.submit(propagate(supplier)), fallback, callDeadline);
+            calls.add(call);
+            return call;
+        }
+
+        // Un appel par clé distincte
+        public <K, T> Map<K, Call<T>> forkAll(Collection<K> keys, Function<K, T> function, T fallback) {
+            Map<K, Call<T>> result = new HashMap<>();
+            for (K key : new LinkedHashSet<>(keys)) {
+                result.put(key, fork(() -> function.apply(key), fallback));
+            }
+            return result;
+        }
+
+        public void join() {
+            for (Call<?> call : calls) {
+                call.await();
+            }
+        }
+
+        @Override
+        public void close() {
+            for (Call<?> call : calls) {
+                call.future.cancel(true);
+            }
+        }
+    }
+
+    /** Résultat d'un appel ; n'est lu que par le thread de la requête. */
+    public static final class Call<T> {
+        private final Future<T> future;
+        private final T fallback;
+        private final long deadline;
+        private boolean done;
+        private T value;
+        private Throwable failure;
+
+        private Call(Future<T> future, T fallback, long deadline) {
+            this.future = future;
+            this.fallback = fallback;
+            this.deadline = deadline;
+        }
+
+        public T get() {
+            await();
+            return value;
+        }
+
+        public boolean failed() {
+            await();
+            return failure != null;
+        }
+
+        public Throwable failure() {
+            await();
+            return failure;
+        }
+
+        private void await() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                value = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                fail(e);
+                logger.warn("Appel distant abandonné : délai dépassé");
+            } catch (ExecutionException e) {
+                fail(e.getCause());
+            } catch (CancellationException e) {
+                fail(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                fail(e);
+            }
+        }
+
+        private void fail(Throwable cause) {
+            failure = cause;
+            value = fallback;
+        }
+    }
+
+    private static <T> Callable<T> propagate(Supplier<T> supplier) {
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> {
+            SecurityContextHolder.setContext(securityContext);
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                return supplier.get();
+            } finally {
+                SecurityContextHolder.clearContext();
+                MDC.clear();
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package org.ms.facture_service.config;
+
+import org.ms.facture_service.entities.Facture;
+import org.ms.facture_service.entities.FactureLigne;
+import org.ms.facture_service.model.Client;
+import org.ms.facture_service.repository.FactureRepository;
+import org.ms.facture_service.service.FactureRollupService;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.rest.core.config.RepositoryRestConfiguration;
+
+import java.util.Date;
+
+// Données de démarrage et exposition des IDs par Spring Data REST ; hors profil test,
+// où les tranches JPA n'ont pas de RepositoryRestConfiguration
+@Configuration
+@Profile("!test")
+public class InitialisationConfig {
+
+    @Bean
+    CommandLineRunner start(FactureRepository factureRepository, RepositoryRestConfiguration restConfiguration,
+                            FactureRollupService factureRollupService) {
+        return args -> {
+            restConfiguration.exposeIdsFor(Facture.class, FactureLigne.class);
+            // ATTENTION : Ne pas appeler de méthode sécurisée par @PreAuthorize ici !
+            // Pour l'initialisation, créer un client et des produits factices localement si besoin.
+            // Exemple sans appel Feign sécurisé :
+            if (factureRepository.count() > 0) return;
+            Client client = new Client(1L, "Client Test", "test@mail.com", "Adresse");
+            Facture facture = new Facture(new Date(), "NON_PAYEE", client.getId());
+            facture.setClient(client);
+            facture = factureRepository.save(facture);
+
+            // Crée des produits factices si besoin, ou désactive cette partie si dépendance à produit-service
+            // var produits = ... (optionnel)
+            // if (produits != null) { ... }
+
+            facture = factureRepository.findById(facture.getId()).orElse(facture);
+            factureRepository.save(facture);
+            // Les factures d'initialisation ne passent pas par le contrôleur : on recalcule les agrégats
+            factureRollupService.rebuild();
+        };
+    }
+}
@@ -0,0 +1,43 @@
+package org.ms.facture_service.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.ms.facture_service.cache.NearCache;
+import org.ms.facture_service.feign.ClientServiceClient;
+import org.ms.facture_service.feign.ProduitServiceClient;
+import org.ms.facture_service.model.Client;
+import org.ms.facture_service.model.Produit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Configuration
+public class NearCacheConfig {
+    @Value("${nearcache.maximum-size:10000}")
+    private long maximumSize;
+    @Value("${nearcache.ttl:10m}")
+    private Duration ttl;
+    @Value("${nearcache.refresh-after:5m}")
+    private Duration refreshAfter;
+    @Value("${nearcache.stale-ttl:24h}")
+    private Duration staleTtl;
+
+    @Bean
+    public NearCache<Client> clientNearCache(ClientServiceClient clientServiceClient, MeterRegistry meterRegistry) {
+        return new NearCache<>("clients",
+                ids -> clientServiceClient.findClientsByIds(ids).stream()
+                        .collect(Collectors.toMap(Client::getId, Function.identity(), (a, b) -> a)),
+                maximumSize, ttl, refreshAfter, staleTtl, meterRegistry);
+    }
+
+    @Bean
+    public NearCache<Produit> produitNearCache(ProduitServiceClient produitServiceClient, MeterRegistry meterRegistry) {
+        return new NearCache<>("produits",
+                ids -> produitServiceClient.getProduitsByIds(ids).stream()
+                        .collect(Collectors.toMap(Produit::getId, Function.identity(), (a, b) -> a)),
+                maximumSize, ttl, refreshAfter, staleTtl, meterRegistry);
+    }
+}
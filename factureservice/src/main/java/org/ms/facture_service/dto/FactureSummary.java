@@ -0,0 +1,20 @@
+package org.ms.facture_service.dto;
+
+import java.util.Date;
+
+/**
+ * Projection des colonnes scalaires d'une facture, sans ses lignes.
+ */
+public interface FactureSummary {
+    Long getId();
+
+    Long getClientID();
+
+    Date getDateFacture();
+
+    String getStatus();
+
+    Double getTotal();
+
+    Double getResteAPayer();
+}
@@ -1,12 +1,14 @@
 package org.ms.facture_service.entities;
 
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 import org.ms.facture_service.model.Client;
 import jakarta.persistence.*;
 import java.util.Collection;
 import java.util.Date;
 
 @Entity
+@Table(indexes = @Index(name = "idx_facture_client_date_status", columnList = "client_id, dateFacture, status"))
 @Data @NoArgsConstructor @AllArgsConstructor @ToString
 public class Facture {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -23,7 +25,9 @@ public class Facture {
 
     private Double montantPaye;  
 
-    @OneToMany(mappedBy = "facture", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+    // LAZY : les lignes d'une page sont chargées par paquets, ou par jointure via les entity graphs du repository
+    @OneToMany(mappedBy = "facture", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 100)
     private Collection<FactureLigne> factureLignes;
 
     @Transient
@@ -17,7 +17,7 @@ public class FactureLigne {
     @Transient
     private Produit produit;
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "facture_id")
     private Facture facture;
 }
@@ -0,0 +1,26 @@
+package org.ms.facture_service.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Agrégat des factures par mois et par statut, maintenu dans la même
+ * transaction que les écritures sur Facture (voir FactureRollupService).
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"annee", "mois", "status"}))
+@Data @NoArgsConstructor @AllArgsConstructor @ToString
+public class FactureRollup {
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private int annee; // 0 si la facture n'a pas de date
+
+    private int mois;
+
+    private String status;
+
+    private long nombre;
+
+    private double total;
+}
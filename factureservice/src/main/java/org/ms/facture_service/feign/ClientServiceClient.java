@@ -7,13 +7,23 @@ import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.security.access.prepost.PreAuthorize;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
 @FeignClient(name="CLIENT-SERVICE", configuration = FeignClientConfig.class)
 public interface ClientServiceClient {
     @GetMapping("/clients/{id}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     Client findClientById(@PathVariable("id") Long id);
+
+    @PostMapping("/clients/batch")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    List<Client> findClientsByIds(@RequestBody Set<Long> ids);
 }
 
 @Component
@@ -26,6 +36,12 @@ class ClientServiceClientFallbackFactory implements FallbackFactory<ClientServic
                 System.err.println("Fallback triggered for findClientById: " + cause.getMessage());
                 return new Client(id, "Client indisponible", "N/A", "N/A");
             }
+
+            @Override
+            public List<Client> findClientsByIds(Set<Long> ids) {
+                System.err.println("Fallback triggered for findClientsByIds: " + cause.getMessage());
+                return Collections.emptyList();
+            }
         };
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package org.ms.facture_service.feign;
 
 import org.ms.facture_service.model.Produit;
+import org.ms.facture_service.model.ReservationLigne;
 import org.ms.facture_service.security.FeignClientConfig;
 import org.springframework.cloud.openfeign.FallbackFactory;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -16,6 +17,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 @FeignClient(name="PRODUIT-SERVICE", configuration = FeignClientConfig.class)
 public interface ProduitServiceClient {
@@ -27,9 +30,26 @@ public interface ProduitServiceClient {
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     Produit getProduitById(@PathVariable("id") Long id);
 
+    @PostMapping("/produits/batch")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    List<Produit> getProduitsByIds(@RequestBody Set<Long> ids);
+
+    @GetMapping("/produits/categories/{id}/produits/ids")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    List<Long> getProduitIdsByCategorie(@PathVariable("id") Long categorieId);
+
     @PutMapping("/produits/{id}/decreaseStock")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<Produit> decreaseStock(@PathVariable Long id, @RequestParam int quantity);
+
+    @PostMapping("/produits/reservations")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    List<ReservationLigne> reserverStock(@RequestParam("reservationId") String reservationId,
+                                         @RequestBody List<ReservationLigne> lignes);
+
+    @PostMapping("/produits/reservations/release")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    ResponseEntity<Void> libererStock(@RequestParam("reservationId") String reservationId);
 }
 
 @Component
@@ -48,6 +68,18 @@ class ProduitServiceClientFallbackFactory implements FallbackFactory<ProduitServ
                 System.err.println("Fallback triggered for getProduitById: " + cause.getMessage());
                 return new Produit(id, "Produit indisponible", 0.0, 0, null, null);
             }
+
+            @Override
+            public List<Produit> getProduitsByIds(Set<Long> ids) {
+                System.err.println("Fallback triggered for getProduitsByIds: " + cause.getMessage());
+                return Collections.emptyList();
+            }
+            @Override
+            public List<Long> getProduitIdsByCategorie(Long categorieId) {
+                System.err.println("Fallback triggered for getProduitIdsByCategorie: " + cause.getMessage());
+                return Collections.emptyList();
+            }
+
             @Override
             public ResponseEntity<Produit> decreaseStock(Long id, int quantity) {
                 System.err.println("Fallback triggered for decreaseStock with id " + id + ", quantity " + quantity + ": " + cause.getMessage());
@@ -55,6 +87,18 @@ class ProduitServiceClientFallbackFactory implements FallbackFactory<ProduitServ
                 return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
             }
 
+            @Override
+            public List<ReservationLigne> reserverStock(String reservationId, List<ReservationLigne> lignes) {
+                System.err.println("Fallback triggered for reserverStock: " + cause.getMessage());
+                return Collections.emptyList();
+            }
+
+            @Override
+            public ResponseEntity<Void> libererStock(String reservationId) {
+                System.err.println("Fallback triggered for libererStock: " + cause.getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+
         };
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package org.ms.facture_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationLigne {
+    private Long produitId;
+    private long quantity;
+    private Double price; // Prix unitaire renvoyé par produit-service
+}
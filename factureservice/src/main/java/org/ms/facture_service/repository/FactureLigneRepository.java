@@ -1,12 +1,17 @@
 package org.ms.facture_service.repository;
 
 import org.ms.facture_service.entities.FactureLigne;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RepositoryRestResource
 public interface FactureLigneRepository extends JpaRepository<FactureLigne, Long> {
@@ -15,4 +20,30 @@ public interface FactureLigneRepository extends JpaRepository<FactureLigne, Long
 
     @Query("SELECT fl.facture.clientID, SUM(fl.quantity) as quantite FROM FactureLigne fl WHERE fl.produitID = :produitId GROUP BY fl.facture.clientID ORDER BY quantite DESC")
     List<Object[]> findClientsByProduitId(@Param("produitId") Long produitId);
-    }
\ No newline at end of file
+
+    @Query("SELECT fl.produitID, SUM(fl.quantity) FROM FactureLigne fl GROUP BY fl.produitID")
+    List<Object[]> sumQuantitesGroupByProduit();
+
+    @Query("SELECT fl.produitID, SUM(fl.quantity) FROM FactureLigne fl " +
+           "WHERE fl.facture.dateFacture >= :debut AND fl.facture.dateFacture < :fin GROUP BY fl.produitID")
+    List<Object[]> sumQuantitesGroupByProduitBetween(@Param("debut") Date debut, @Param("fin") Date fin);
+
+    @Query("SELECT fl.produitID, SUM(fl.quantity) FROM FactureLigne fl " +
+           "WHERE (:debut IS NULL OR fl.facture.dateFacture >= :debut) AND (:fin IS NULL OR fl.facture.dateFacture < :fin) " +
+           "GROUP BY fl.produitID ORDER BY SUM(fl.quantity) DESC")
+    List<Object[]> topProduitsByQuantite(@Param("debut") Date debut, @Param("fin") Date fin, Pageable pageable);
+
+    // Curseur sur les quantités par produit : à consommer dans une transaction et à fermer
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("SELECT fl.produitID, SUM(fl.quantity) FROM FactureLigne fl " +
+           "WHERE (:debut IS NULL OR fl.facture.dateFacture >= :debut) AND (:fin IS NULL OR fl.facture.dateFacture < :fin) " +
+           "GROUP BY fl.produitID")
+    Stream<Object[]> streamQuantitesByProduit(@Param("debut") Date debut, @Param("fin") Date fin);
+
+    @Query("SELECT COALESCE(SUM(fl.quantity), 0) FROM FactureLigne fl WHERE fl.produitID = :produitId")
+    Long sumQuantiteByProduit(@Param("produitId") Long produitId);
+
+    @Query("SELECT COALESCE(SUM(fl.quantity), 0) FROM FactureLigne fl WHERE fl.produitID = :produitId " +
+           "AND fl.facture.dateFacture >= :debut AND fl.facture.dateFacture < :fin")
+    Long sumQuantiteByProduitBetween(@Param("produitId") Long produitId, @Param("debut") Date debut, @Param("fin") Date fin);
+}
\ No newline at end of file
@@ -1,11 +1,89 @@
 package org.ms.facture_service.repository;
 
+import jakarta.persistence.QueryHint;
+import org.ms.facture_service.dto.FactureSummary;
 import org.ms.facture_service.entities.Facture;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @RepositoryRestResource
 public interface FactureRepository extends JpaRepository<Facture, Long> {
+    @EntityGraph(attributePaths = "factureLignes")
     List<Facture> findByClientID(Long clientId);
+
+    @EntityGraph(attributePaths = "factureLignes")
+    Optional<Facture> findWithLignesById(Long id);
+
+    @EntityGraph(attributePaths = "factureLignes")
+    List<Facture> findByStatus(String status);
+
+    @EntityGraph(attributePaths = "factureLignes")
+    List<Facture> findByStatusNot(String status);
+
+    // Projections : seules les colonnes nécessaires sont lues, sans les lignes
+    @Query("SELECT f.id FROM Facture f WHERE f.clientID = :clientId")
+    List<Long> findIdsByClientID(@Param("clientId") Long clientId);
+
+    List<FactureSummary> findSummariesByIdIn(Collection<Long> ids);
+
+    // Factures non soldées, par pages de clé id croissante
+    List<FactureSummary> findByStatusNotAndIdGreaterThanOrderByIdAsc(String status, Long afterId, Pageable pageable);
+
+    // Agrégats calculés par la base (index client_id, date_facture, status)
+    @Query("SELECT COALESCE(SUM(f.total), 0) FROM Facture f WHERE f.clientID = :clientId")
+    Double sumTotalByClientID(@Param("clientId") Long clientId);
+
+    @Query("SELECT COALESCE(SUM(f.total), 0) FROM Facture f WHERE f.clientID = :clientId " +
+           "AND f.dateFacture >= :debut AND f.dateFacture < :fin")
+    Double sumTotalByClientIDBetween(@Param("clientId") Long clientId, @Param("debut") Date debut, @Param("fin") Date fin);
+
+    @Query("SELECT COALESCE(SUM(f.resteAPayer), 0) FROM Facture f WHERE f.clientID = :clientId AND f.status <> 'PAYEE'")
+    Double sumResteAPayerByClientID(@Param("clientId") Long clientId);
+
+    @Query("SELECT f.clientID, SUM(f.total) FROM Facture f " +
+           "WHERE (:debut IS NULL OR f.dateFacture >= :debut) AND (:fin IS NULL OR f.dateFacture < :fin) " +
+           "GROUP BY f.clientID ORDER BY SUM(f.total) DESC")
+    List<Object[]> topClientsByChiffreAffaires(@Param("debut") Date debut, @Param("fin") Date fin, Pageable pageable);
+
+    // clientId, chiffre d'affaires, reste à payer, nombre de factures, nombre de factures payées
+    @Query("SELECT f.clientID, SUM(f.total), SUM(CASE WHEN f.status <> 'PAYEE' THEN f.resteAPayer ELSE 0 END), " +
+           "COUNT(f), SUM(CASE WHEN f.status = 'PAYEE' THEN 1 ELSE 0 END) " +
+           "FROM Facture f WHERE f.clientID IN :clientIds GROUP BY f.clientID")
+    List<Object[]> aggregateByClientIDs(@Param("clientIds") Collection<Long> clientIds);
+
+    @Query("SELECT f.clientID, SUM(f.total), SUM(CASE WHEN f.status <> 'PAYEE' THEN f.resteAPayer ELSE 0 END), " +
+           "COUNT(f), SUM(CASE WHEN f.status = 'PAYEE' THEN 1 ELSE 0 END) " +
+           "FROM Facture f WHERE f.clientID IN :clientIds AND f.dateFacture >= :debut AND f.dateFacture < :fin " +
+           "GROUP BY f.clientID")
+    List<Object[]> aggregateByClientIDsBetween(@Param("clientIds") Collection<Long> clientIds,
+                                               @Param("debut") Date debut, @Param("fin") Date fin);
+
+    // Pagination par clé (id décroissant), sans OFFSET ni COUNT
+    List<Facture> findAllByOrderByIdDesc(Pageable pageable);
+
+    List<Facture> findByIdLessThanOrderByIdDesc(Long id, Pageable pageable);
+
+    @Query("SELECT EXTRACT(YEAR FROM f.dateFacture), EXTRACT(MONTH FROM f.dateFacture), f.status, COUNT(f), SUM(f.total) " +
+           "FROM Facture f GROUP BY EXTRACT(YEAR FROM f.dateFacture), EXTRACT(MONTH FROM f.dateFacture), f.status")
+    List<Object[]> aggregateByMonthAndStatus();
+
+    // Curseur pour l'export : à consommer dans une transaction et à fermer
+    @QueryHints({@QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+                 @QueryHint(name = "org.hibernate.readOnly", value = "true")})
+    @Query("SELECT f.id AS id, f.clientID AS clientID, f.dateFacture AS dateFacture, f.status AS status, " +
+           "f.total AS total, f.resteAPayer AS resteAPayer FROM Facture f " +
+           "WHERE (:debut IS NULL OR f.dateFacture >= :debut) AND (:fin IS NULL OR f.dateFacture <= :fin) " +
+           "AND (:status IS NULL OR f.status = :status) ORDER BY f.id")
+    Stream<FactureSummary> streamSummaries(@Param("debut") Date debut, @Param("fin") Date fin,
+                                           @Param("status") String status);
 }
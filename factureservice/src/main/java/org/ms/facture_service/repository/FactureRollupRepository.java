@@ -0,0 +1,18 @@
+package org.ms.facture_service.repository;
+
+import org.ms.facture_service.entities.FactureRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported = false)
+public interface FactureRollupRepository extends JpaRepository<FactureRollup, Long> {
+    // Incrément atomique ; 0 ligne modifiée si le groupe (annee, mois, status) n'existe pas encore
+    @Modifying
+    @Query("UPDATE FactureRollup r SET r.nombre = r.nombre + :nombre, r.total = r.total + :total "
+            + "WHERE r.annee = :annee AND r.mois = :mois AND r.status = :status")
+    int increment(@Param("annee") int annee, @Param("mois") int mois, @Param("status") String status,
+                  @Param("nombre") long nombre, @Param("total") double total);
+}
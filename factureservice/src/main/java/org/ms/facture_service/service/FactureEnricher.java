@@ -0,0 +1,104 @@
+package org.ms.facture_service.service;
+
+import org.ms.facture_service.cache.NearCache;
+import org.ms.facture_service.concurrent.FanOut;
+import org.ms.facture_service.entities.Facture;
+import org.ms.facture_service.entities.FactureLigne;
+import org.ms.facture_service.model.Client;
+import org.ms.facture_service.model.Produit;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Enrichit une page de factures avec les clients et produits distants.
+ * Tous les IDs de la page sont collectés et dédoublonnés, puis résolus
+ * avec au plus un appel par service (client-service, produit-service),
+ * en passant par le cache local de données de référence. Les deux services
+ * sont interrogés en parallèle.
+ */
+@Component
+public class FactureEnricher {
+    private final NearCache<Client> clientNearCache;
+    private final NearCache<Produit> produitNearCache;
+    private final FanOut fanOut;
+
+    public FactureEnricher(NearCache<Client> clientNearCache, NearCache<Produit> produitNearCache, FanOut fanOut) {
+        this.clientNearCache = clientNearCache;
+        this.produitNearCache = produitNearCache;
+        this.fanOut = fanOut;
+    }
+
+    public Facture enrich(Facture facture) {
+        enrich(List.of(facture));
+        return facture;
+    }
+
+    public List<Facture> enrich(List<Facture> factures) {
+        Set<Long> clientIds = new HashSet<>();
+        Set<Long> produitIds = new HashSet<>();
+        for (Facture facture : factures) {
+            if (facture.getClientID() != null) {
+                clientIds.add(facture.getClientID());
+            }
+            if (facture.getFactureLignes() != null) {
+                for (FactureLigne ligne : facture.getFactureLignes()) {
+                    if (ligne.getProduitID() != null) {
+                        produitIds.add(ligne.getProduitID());
+                    }
+                }
+            }
+        }
+
+        Map<Long, Client> clients;
+        Map<Long, Produit> produits;
+        try (FanOut.Scope scope = fanOut.open()) {
+            FanOut.Call<Map<Long, Client>> clientsCall = scope.fork(() -> resolveClients(clientIds), Map.of());
+            FanOut.Call<Map<Long, Produit>> produitsCall = scope.fork(() -> resolveProduits(produitIds), Map.of());
+            scope.join();
+            clients = clientsCall.get();
+            produits = produitsCall.get();
+        }
+
+        for (Facture facture : factures) {
+            if (facture.getClientID() != null) {
+                facture.setClient(clients.getOrDefault(facture.getClientID(), clientIndisponible(facture.getClientID())));
+            }
+            if (facture.getFactureLignes() != null) {
+                for (FactureLigne ligne : facture.getFactureLignes()) {
+                    ligne.setProduit(produits.getOrDefault(ligne.getProduitID(), produitIndisponible(ligne.getProduitID())));
+                }
+            }
+        }
+        return factures;
+    }
+
+    // --- Résolution en masse ---
+
+    // Seuls les IDs absents du cache partent vers le service distant, en un seul appel
+    public Map<Long, Client> resolveClients(Collection<Long> ids) {
+        return clientNearCache.getAll(ids);
+    }
+
+    public Map<Long, Produit> resolveProduits(Collection<Long> ids) {
+        return produitNearCache.getAll(ids);
+    }
+
+    public String clientName(Map<Long, Client> clients, Long clientId) {
+        Client client = clients.get(clientId);
+        return client != null ? client.getName() : "Client indisponible";
+    }
+
+    public String produitName(Map<Long, Produit> produits, Long produitId) {
+        Produit produit = produits.get(produitId);
+        return produit != null ? produit.getName() : "Produit indisponible";
+    }
+
+    public static Client clientIndisponible(Long id) {
+        return new Client(id, "Client indisponible", "N/A", "N/A");
+    }
+
+    public static Produit produitIndisponible(Long id) {
+        return new Produit(id, "Produit indisponible", 0.0, 0, null, null);
+    }
+}
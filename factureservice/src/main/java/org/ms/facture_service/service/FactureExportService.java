@@ -0,0 +1,123 @@
+package org.ms.facture_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ms.facture_service.dto.FactureSummary;
+import org.ms.facture_service.model.Client;
+import org.ms.facture_service.repository.FactureRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Export des factures en flux (NDJSON, tableau JSON ou CSV) : les lignes sont lues par un
+ * curseur JPA et écrites par paquets, la mémoire utilisée ne dépend donc pas
+ * du nombre de factures. Les noms des clients sont résolus une fois par paquet.
+ */
+@Service
+public class FactureExportService {
+    private static final int CHUNK_SIZE = 500;
+
+    public enum Format { NDJSON, JSON, CSV }
+
+    private final FactureRepository factureRepository;
+    private final FactureEnricher factureEnricher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public FactureExportService(FactureRepository factureRepository, FactureEnricher factureEnricher,
+                                ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.factureRepository = factureRepository;
+        this.factureEnricher = factureEnricher;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    public void export(OutputStream out, Format format, Date debut, Date fin, String status) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        transactionTemplate.executeWithoutResult(tx -> {
+            try (Stream<FactureSummary> rows = factureRepository.streamSummaries(debut, fin, status)) {
+                if (format == Format.CSV) {
+                    writer.write("id,customerId,customerName,amount,status,date\n");
+                } else if (format == Format.JSON) {
+                    writer.write('[');
+                }
+                List<FactureSummary> chunk = new ArrayList<>(CHUNK_SIZE);
+                Iterator<FactureSummary> iterator = rows.iterator();
+                boolean premier = true;
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() == CHUNK_SIZE) {
+                        writeChunk(writer, format, dateFormat, chunk, premier);
+                        chunk.clear();
+                        premier = false;
+                    }
+                }
+                writeChunk(writer, format, dateFormat, chunk, premier);
+                if (format == Format.JSON) {
+                    writer.write(']');
+                }
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeChunk(Writer writer, Format format, SimpleDateFormat dateFormat,
+                            List<FactureSummary> chunk, boolean premierPaquet) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Map<Long, Client> clients = factureEnricher.resolveClients(chunk.stream()
+                .map(FactureSummary::getClientID).filter(Objects::nonNull).collect(Collectors.toSet()));
+        for (int i = 0; i < chunk.size(); i++) {
+            FactureSummary facture = chunk.get(i);
+            String customerName = factureEnricher.clientName(clients, facture.getClientID());
+            if (format != Format.CSV) {
+                Map<String, Object> invoice = new LinkedHashMap<>();
+                invoice.put("id", facture.getId());
+                invoice.put("customerId", facture.getClientID());
+                invoice.put("customerName", customerName);
+                invoice.put("amount", facture.getTotal());
+                invoice.put("status", facture.getStatus());
+                invoice.put("date", facture.getDateFacture());
+                // Tableau JSON : séparateur avant chaque élément sauf le tout premier
+                if (format == Format.JSON && (i > 0 || !premierPaquet)) {
+                    writer.write(',');
+                }
+                writer.write(objectMapper.writeValueAsString(invoice));
+                if (format == Format.NDJSON) {
+                    writer.write('\n');
+                }
+            } else {
+                writer.write(facture.getId() + "," + valeur(facture.getClientID()) + "," + csv(customerName) + ","
+                        + valeur(facture.getTotal()) + "," + csv(facture.getStatus()) + ","
+                        + (facture.getDateFacture() != null ? dateFormat.format(facture.getDateFacture()) : "") + "\n");
+            }
+        }
+        writer.flush();
+    }
+
+    private static String valeur(Object value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
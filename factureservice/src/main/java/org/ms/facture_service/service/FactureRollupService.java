@@ -0,0 +1,117 @@
+package org.ms.facture_service.service;
+
+import org.ms.facture_service.entities.Facture;
+import org.ms.facture_service.entities.FactureRollup;
+import org.ms.facture_service.repository.FactureRepository;
+import org.ms.facture_service.repository.FactureRollupRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Maintient les totaux et nombres de factures par mois et par statut.
+ * Chaque écriture sur une facture retire son ancienne contribution et ajoute
+ * la nouvelle, de sorte que les tableaux de bord ne lisent que quelques lignes.
+ * Les mises à jour sont des incréments atomiques : deux écritures concurrentes sur
+ * le même groupe ne se perdent pas et la première ne fait pas échouer l'autre.
+ */
+@Service
+public class FactureRollupService {
+    private final FactureRollupRepository factureRollupRepository;
+    private final FactureRepository factureRepository;
+    private final TransactionTemplate creation;
+
+    public FactureRollupService(FactureRollupRepository factureRollupRepository, FactureRepository factureRepository,
+                                PlatformTransactionManager transactionManager) {
+        this.factureRollupRepository = factureRollupRepository;
+        this.factureRepository = factureRepository;
+        this.creation = new TransactionTemplate(transactionManager);
+        this.creation.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /** Contribution d'une facture aux agrégats, capturée avant modification. */
+    public record Contribution(int annee, int mois, String status, double total) {
+        public static Contribution of(Facture facture) {
+            int annee = 0;
+            int mois = 0;
+            Date date = facture.getDateFacture();
+            if (date != null) {
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(date);
+                annee = calendar.get(Calendar.YEAR);
+                mois = calendar.get(Calendar.MONTH) + 1;
+            }
+            String status = facture.getStatus() != null ? facture.getStatus() : "INCONNU";
+            double total = facture.getTotal() != null ? facture.getTotal() : 0.0;
+            return new Contribution(annee, mois, status, total);
+        }
+    }
+
+    @Transactional
+    public void add(Facture facture) {
+        apply(Contribution.of(facture), 1);
+    }
+
+    @Transactional
+    public void remove(Contribution contribution) {
+        apply(contribution, -1);
+    }
+
+    @Transactional
+    public void replace(Contribution before, Facture after) {
+        Contribution now = Contribution.of(after);
+        if (now.equals(before)) {
+            return;
+        }
+        apply(before, -1);
+        apply(now, 1);
+    }
+
+    @Transactional(readOnly = true)
+    public List<FactureRollup> findAll() {
+        return factureRollupRepository.findAll();
+    }
+
+    // Régénère les agrégats à partir de la table Facture
+    @Transactional
+    public void rebuild() {
+        factureRollupRepository.deleteAllInBatch();
+        for (Object[] row : factureRepository.aggregateByMonthAndStatus()) {
+            int annee = row[0] != null ? ((Number) row[0]).intValue() : 0;
+            int mois = row[1] != null ? ((Number) row[1]).intValue() : 0;
+            String status = row[2] != null ? (String) row[2] : "INCONNU";
+            long nombre = ((Number) row[3]).longValue();
+            double total = row[4] != null ? ((Number) row[4]).doubleValue() : 0.0;
+            factureRollupRepository.save(new FactureRollup(null, annee, mois, status, nombre, total));
+        }
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        if (increment(contribution, sign) > 0) {
+            return;
+        }
+        // Premier élément du groupe : la ligne est créée à zéro dans sa propre transaction,
+        // pour qu'une création concurrente (contrainte unique) n'annule pas celle de l'appelant
+        try {
+            creation.executeWithoutResult(status -> factureRollupRepository.saveAndFlush(new FactureRollup(null,
+                    contribution.annee(), contribution.mois(), contribution.status(), 0, 0.0)));
+        } catch (DataIntegrityViolationException e) {
+            // Créée entre-temps par une autre transaction
+        }
+        if (increment(contribution, sign) == 0) {
+            throw new IllegalStateException("Agrégat introuvable après création : " + contribution);
+        }
+    }
+
+    private int increment(Contribution contribution, int sign) {
+        return factureRollupRepository.increment(contribution.annee(), contribution.mois(), contribution.status(),
+                sign, sign * contribution.total());
+    }
+}
@@ -0,0 +1,83 @@
+package org.ms.facture_service.service;
+
+import org.ms.facture_service.repository.FactureLigneRepository;
+import org.ms.facture_service.repository.FactureRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Classements "top K" des statistiques de facturation. Le GROUP BY / ORDER BY / LIMIT
+ * est délégué à la base quand le filtre s'y exprime ; sinon les agrégats sont lus
+ * par curseur et un tas borné à K éléments garde les meilleurs. La mémoire reste en O(K).
+ */
+@Component
+public class TopKAggregator {
+    private final FactureRepository factureRepository;
+    private final FactureLigneRepository factureLigneRepository;
+
+    public TopKAggregator(FactureRepository factureRepository, FactureLigneRepository factureLigneRepository) {
+        this.factureRepository = factureRepository;
+        this.factureLigneRepository = factureLigneRepository;
+    }
+
+    public record Entry(Long id, Number valeur) {
+    }
+
+    private static final Comparator<Entry> PAR_VALEUR = Comparator.comparingDouble(e -> e.valeur().doubleValue());
+
+    // k <= 0 : classement vide, sans requête
+    @Transactional(readOnly = true)
+    public List<Entry> topClients(int k, Date debut, Date fin) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        return toEntries(factureRepository.topClientsByChiffreAffaires(debut, fin, PageRequest.of(0, k)));
+    }
+
+    // produitIds null : tous les produits ; sinon seuls ceux de l'ensemble (ex. une catégorie) sont classés
+    @Transactional(readOnly = true)
+    public List<Entry> topProduits(int k, Date debut, Date fin, Set<Long> produitIds) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        if (produitIds == null) {
+            return toEntries(factureLigneRepository.topProduitsByQuantite(debut, fin, PageRequest.of(0, k)));
+        }
+        try (Stream<Object[]> rows = factureLigneRepository.streamQuantitesByProduit(debut, fin)) {
+            Iterator<Entry> entries = rows
+                    .filter(row -> produitIds.contains((Long) row[0]))
+                    .map(row -> new Entry((Long) row[0], (Number) row[1]))
+                    .iterator();
+            return topK(entries, k, PAR_VALEUR);
+        }
+    }
+
+    /** Les k plus grands éléments, par ordre décroissant, avec un tas-min de taille k. */
+    public static <T> List<T> topK(Iterator<T> elements, int k, Comparator<T> comparator) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<T> heap = new PriorityQueue<>(k, comparator);
+        while (elements.hasNext()) {
+            T element = elements.next();
+            if (heap.size() < k) {
+                heap.add(element);
+            } else if (comparator.compare(element, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(element);
+            }
+        }
+        List<T> result = new ArrayList<>(heap);
+        result.sort(comparator.reversed());
+        return result;
+    }
+
+    private static List<Entry> toEntries(List<Object[]> rows) {
+        return rows.stream().map(row -> new Entry((Long) row[0], (Number) row[1])).collect(Collectors.toList());
+    }
+}
@@ -1,22 +1,38 @@
 package org.ms.facture_service.web;
 
+import org.ms.facture_service.dto.FactureSummary;
 import org.ms.facture_service.entities.Facture;
 import org.ms.facture_service.entities.FactureLigne;
+import org.ms.facture_service.entities.FactureRollup;
 import org.ms.facture_service.feign.ClientServiceClient;
 import org.ms.facture_service.feign.ProduitServiceClient;
 import org.ms.facture_service.model.Client;
 import org.ms.facture_service.model.Produit;
+import org.ms.facture_service.model.ReservationLigne;
 import org.ms.facture_service.repository.FactureLigneRepository;
 import org.ms.facture_service.repository.FactureRepository;
+import org.ms.facture_service.service.FactureEnricher;
+import org.ms.facture_service.service.FactureExportService;
+import org.ms.facture_service.service.FactureRollupService;
+import org.ms.facture_service.service.TopKAggregator;
+import feign.FeignException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.hateoas.PagedModel;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
 import java.time.LocalDate;
@@ -28,45 +44,44 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/factures")
 public class FactureRestController {
+    private static final Logger logger = LoggerFactory.getLogger(FactureRestController.class);
+    // Pages de factures ouvertes lues par le rapprochement de reglement-service
+    private static final int MAX_OUVERTES = 10000;
     private final FactureRepository factureRepository;
     private final FactureLigneRepository factureLigneRepository;
     private final ClientServiceClient clientServiceClient;
     private final ProduitServiceClient produitServiceClient;
+    private final FactureEnricher factureEnricher;
+    private final FactureRollupService factureRollupService;
+    private final FactureExportService factureExportService;
+    private final TopKAggregator topKAggregator;
 
     public FactureRestController(FactureRepository factureRepository,
                                  FactureLigneRepository factureLigneRepository,
                                  ClientServiceClient clientServiceClient,
-                                 ProduitServiceClient produitServiceClient) {
+                                 ProduitServiceClient produitServiceClient,
+                                 FactureEnricher factureEnricher,
+                                 FactureRollupService factureRollupService,
+                                 FactureExportService factureExportService,
+                                 TopKAggregator topKAggregator) {
         this.factureRepository = factureRepository;
         this.factureLigneRepository = factureLigneRepository;
         this.clientServiceClient = clientServiceClient;
         this.produitServiceClient = produitServiceClient;
+        this.factureEnricher = factureEnricher;
+        this.factureRollupService = factureRollupService;
+        this.factureExportService = factureExportService;
+        this.topKAggregator = topKAggregator;
     }
 
-    // --- Helper Method to Enrich Facture ---
+    // --- Helper Methods to Enrich Factures ---
     private Facture enrichFacture(Facture facture) {
-        // Fetch client details
-        if (facture.getClientID() != null) {
-            try {
-                Client client = clientServiceClient.findClientById(facture.getClientID());
-                facture.setClient(client);
-            } catch (Exception e) {
-                facture.setClient(new Client(facture.getClientID(), "Client indisponible", "N/A", "N/A"));
-            }
-        }
+        return factureEnricher.enrich(facture);
+    }
 
-        // Fetch product details for each facture ligne
-        if (facture.getFactureLignes() != null) {
-            for (FactureLigne ligne : facture.getFactureLignes()) {
-                try {
-                    Produit produit = produitServiceClient.getProduitById(ligne.getProduitID());
-                    ligne.setProduit(produit);
-                } catch (Exception e) {
-                    ligne.setProduit(new Produit(ligne.getProduitID(), "Produit indisponible", 0.0, 0, null, null));
-                }
-            }
-        }
-        return facture;
+    // Une page entière est enrichie avec un seul appel par service distant
+    private List<Facture> enrichFactures(List<Facture> factures) {
+        return factureEnricher.enrich(factures);
     }
 
     // --- CRUD ---
@@ -87,30 +102,20 @@ public class FactureRestController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La facture doit contenir au moins une ligne de produit");
         }
 
-        for (FactureLigne ligne : facture.getFactureLignes()) {
-            Produit produit = produitServiceClient.getProduitById(ligne.getProduitID());
-            if (produit == null) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Produit non trouvé pour ID: " + ligne.getProduitID());
-            }
-            long quantityLong = ligne.getQuantity();
-            if (quantityLong <= 0) {
+        List<FactureLigne> lignes = new ArrayList<>(facture.getFactureLignes());
+        List<ReservationLigne> demandes = new ArrayList<>();
+        for (FactureLigne ligne : lignes) {
+            if (ligne.getQuantity() <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La quantité doit être positive pour le produit ID: " + ligne.getProduitID());
             }
-            if (quantityLong > Integer.MAX_VALUE) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La quantité dépasse la limite maximale pour le produit ID: " + ligne.getProduitID());
-            }
-            int quantity = (int) quantityLong;
-            if (produit.getQuantity() < quantity) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Stock insuffisant pour " + produit.getName() + ": disponible " + produit.getQuantity() + ", requis " + quantity);
-            }
-            // Decrease stock
-            ResponseEntity<Produit> response = produitServiceClient.decreaseStock(ligne.getProduitID(), quantity);
-            if (!response.getStatusCode().is2xxSuccessful()) {
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Échec de la diminution du stock pour le produit ID: " + ligne.getProduitID());
-            }
-            ligne.setPrice(produit.getPrice());
-            ligne.setFacture(facture);
+            demandes.add(new ReservationLigne(ligne.getProduitID(), ligne.getQuantity(), null));
+        }
+
+        // Réservation atomique de toutes les lignes en un seul appel : en cas d'échec rien n'est décrémenté
+        List<ReservationLigne> reservees = reserverStock(demandes);
+        for (int i = 0; i < lignes.size(); i++) {
+            lignes.get(i).setPrice(reservees.get(i).getPrice());
+            lignes.get(i).setFacture(facture);
         }
 
         // Set creation date
@@ -121,40 +126,78 @@ public class FactureRestController {
         for (FactureLigne ligne : facture.getFactureLignes()) {
             factureLigneRepository.save(ligne);
         }
+        factureRollupService.add(savedFacture);
         return new ResponseEntity<>(enrichFacture(savedFacture), HttpStatus.CREATED);
     }
 
+    // L'ID de réservation rend l'appel rejouable : produit-service ne décrémente et ne rend le stock qu'une fois
+    private List<ReservationLigne> reserverStock(List<ReservationLigne> demandes) {
+        String reservationId = UUID.randomUUID().toString();
+        // Enregistrée avant l'appel : si la facture n'est finalement pas enregistrée, y compris après
+        // un délai dépassé sur une réservation pourtant effectuée, le stock réservé est rendu
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    try {
+                        produitServiceClient.libererStock(reservationId);
+                    } catch (Exception e) {
+                        logger.error("Libération de la réservation de stock {} impossible : {}", reservationId, e.getMessage());
+                    }
+                }
+            }
+        });
+        List<ReservationLigne> reservees;
+        try {
+            reservees = produitServiceClient.reserverStock(reservationId, demandes);
+        } catch (FeignException e) {
+            HttpStatus status = e.status() >= 400 && e.status() < 500 ? HttpStatus.BAD_REQUEST : HttpStatus.SERVICE_UNAVAILABLE;
+            throw new ResponseStatusException(status, "Réservation du stock impossible : " + e.getMessage());
+        }
+        if (reservees == null || reservees.size() != demandes.size()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Réservation du stock impossible : produit-service indisponible");
+        }
+        return reservees;
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public ResponseEntity<Facture> getFactureById(@PathVariable Long id) {
-        Optional<Facture> factureOpt = factureRepository.findById(id);
+        Optional<Facture> factureOpt = factureRepository.findWithLignesById(id);
         return factureOpt.map(facture -> ResponseEntity.ok(enrichFacture(facture)))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @PutMapping("/{id}")
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional
     public ResponseEntity<Facture> updateFacture(@PathVariable Long id, @RequestBody Facture facture) {
-        if (!factureRepository.existsById(id)) {
+        Optional<Facture> existing = factureRepository.findById(id);
+        if (existing.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        FactureRollupService.Contribution before = FactureRollupService.Contribution.of(existing.get());
         facture.setId(id);
         if (facture.getFactureLignes() != null) {
             for (FactureLigne ligne : facture.getFactureLignes()) {
                 ligne.setFacture(facture);
             }
         }
-        Facture updatedFacture = factureRepository.save(facture);
+        Facture updatedFacture = factureRepository.saveAndFlush(facture);
+        factureRollupService.replace(before, updatedFacture);
         return ResponseEntity.ok(enrichFacture(updatedFacture));
     }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional
     public ResponseEntity<Void> deleteFacture(@PathVariable Long id) {
-        if (!factureRepository.existsById(id)) {
+        Optional<Facture> existing = factureRepository.findById(id);
+        if (existing.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         factureRepository.deleteById(id);
+        factureRollupService.remove(FactureRollupService.Contribution.of(existing.get()));
         return ResponseEntity.noContent().build();
     }
 
@@ -163,9 +206,34 @@ public class FactureRestController {
     public List<Facture> getAllFactures(@RequestParam(defaultValue = "0") int page,
                                         @RequestParam(defaultValue = "10") int size) {
         Page<Facture> facturePage = factureRepository.findAll(PageRequest.of(page, size));
-        return facturePage.getContent().stream()
-                .map(this::enrichFacture)
-                .collect(Collectors.toList());
+        return enrichFactures(facturePage.getContent());
+    }
+
+    // Pagination par curseur : même latence pour la première et la dix-millième page
+    @GetMapping(params = "after")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public Map<String, Object> getAllFacturesAfter(@RequestParam String after,
+                                                   @RequestParam(defaultValue = "10") int size,
+                                                   @RequestParam(defaultValue = "false") boolean withCount) {
+        KeysetCursor.checkSize(size);
+        KeysetCursor.Position<Long> position = KeysetCursor.decode(after, Long::valueOf);
+        PageRequest limit = PageRequest.of(0, size + 1);
+        List<Facture> factures = position == null
+                ? factureRepository.findAllByOrderByIdDesc(limit)
+                : factureRepository.findByIdLessThanOrderByIdDesc(position.id(), limit);
+        String next = null;
+        if (factures.size() > size) {
+            factures = factures.subList(0, size);
+            Long lastId = factures.get(size - 1).getId();
+            next = KeysetCursor.encode(String.valueOf(lastId), lastId);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("factures", enrichFactures(factures));
+        response.put("next", next);
+        if (withCount) {
+            response.put("totalElements", factureRepository.count());
+        }
+        return response;
     }
 
     // --- Client-Service Endpoints ---
@@ -178,50 +246,138 @@ public class FactureRestController {
         if (statut != null) {
             factures = factures.stream().filter(f -> statut.equals(f.getStatus())).collect(Collectors.toList());
         }
-        return factures.stream().map(this::enrichFacture).collect(Collectors.toList());
+        return enrichFactures(factures);
+    }
+
+    // Vue allégée d'un lot de factures, sans lignes ni produits : une requête et un appel à client-service
+    @PostMapping("/summaries")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public List<Map<String, Object>> getFactureSummaries(@RequestBody Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        List<FactureSummary> summaries = factureRepository.findSummariesByIdIn(ids);
+        Map<Long, Client> clients = factureEnricher.resolveClients(summaries.stream()
+                .map(FactureSummary::getClientID).filter(Objects::nonNull).collect(Collectors.toSet()));
+        return summaries.stream().map(summary -> {
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", summary.getId());
+            map.put("total", summary.getTotal());
+            map.put("status", summary.getStatus());
+            map.put("clientId", summary.getClientID());
+            map.put("clientName", factureEnricher.clientName(clients, summary.getClientID()));
+            return map;
+        }).collect(Collectors.toList());
+    }
+
+    // Factures non soldées pour le rapprochement des règlements, pagination par id
+    @GetMapping("/ouvertes")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public List<Map<String, Object>> getFacturesOuvertes(@RequestParam(defaultValue = "0") Long afterId,
+                                                         @RequestParam(defaultValue = "5000") int size) {
+        KeysetCursor.checkSize(size, MAX_OUVERTES);
+        if (afterId < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "afterId doit être positif ou nul");
+        }
+        return factureRepository.findByStatusNotAndIdGreaterThanOrderByIdAsc("PAYEE", afterId,
+                        PageRequest.of(0, size)).stream()
+                .map(summary -> {
+                    Map<String, Object> map = new HashMap<>();
+                    map.put("id", summary.getId());
+                    map.put("total", summary.getTotal());
+                    map.put("status", summary.getStatus());
+                    map.put("clientId", summary.getClientID());
+                    map.put("resteAPayer", summary.getResteAPayer());
+                    return map;
+                }).collect(Collectors.toList());
     }
 
     @GetMapping("/client/{clientId}/ids")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Long> getFactureIdsByClient(@PathVariable Long clientId) {
-        return factureRepository.findByClientID(clientId).stream()
-                .map(Facture::getId)
-                .collect(Collectors.toList());
+        return factureRepository.findIdsByClientID(clientId);
     }
 
     @GetMapping("/client/{clientId}/total")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Double getChiffreAffairesByClient(@PathVariable Long clientId,
                                              @RequestParam(required = false) Integer annee) {
-        return factureRepository.findByClientID(clientId).stream().filter(
-                f -> annee == null || (f.getDateFacture() != null && (f.getDateFacture().getYear() + 1900) == annee))
-                .mapToDouble(Facture::getTotal).sum();
+        return sumTotalByClient(clientId, annee);
     }
 
     @GetMapping("/client/{clientId}/reste-a-payer")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Double getResteAPayerByClient(@PathVariable Long clientId) {
-        return factureRepository.findByClientID(clientId).stream().filter(f -> !"PAYEE".equals(f.getStatus()))
-                .mapToDouble(Facture::getResteAPayer).sum();
+        return factureRepository.sumResteAPayerByClientID(clientId);
+    }
+
+    private Double sumTotalByClient(Long clientId, Integer annee) {
+        if (annee == null) {
+            return factureRepository.sumTotalByClientID(clientId);
+        }
+        return factureRepository.sumTotalByClientIDBetween(clientId, debutAnnee(annee), debutAnnee(annee + 1));
+    }
+
+    // Meilleurs clients par chiffre d'affaires, classés et limités en base ; sans les noms, pour client-service
+    @GetMapping("/clients/top")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public List<Map<String, Object>> getTopClients(@RequestParam(defaultValue = "5") int limit,
+                                                   @RequestParam(required = false) Integer annee) {
+        KeysetCursor.checkSize(limit);
+        return topKAggregator.topClients(limit, debutPeriode(annee, null), finPeriode(annee, null)).stream()
+                .filter(entry -> entry.id() != null)
+                .map(entry -> {
+                    Map<String, Object> map = new HashMap<>();
+                    map.put("clientId", entry.id());
+                    map.put("chiffreAffaires", entry.valeur().doubleValue());
+                    return map;
+                }).collect(Collectors.toList());
+    }
+
+    // Chiffre d'affaires, reste à payer et nombre de factures d'une liste de clients en une requête
+    @PostMapping("/clients/stats")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public List<Map<String, Object>> getStatsByClients(@RequestBody Set<Long> clientIds,
+                                                       @RequestParam(required = false) Integer annee) {
+        if (clientIds == null || clientIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object[]> rows = annee == null
+                ? factureRepository.aggregateByClientIDs(clientIds)
+                : factureRepository.aggregateByClientIDsBetween(clientIds, debutAnnee(annee), debutAnnee(annee + 1));
+        Map<Long, Object[]> rowsByClient = new HashMap<>();
+        for (Object[] row : rows) {
+            rowsByClient.put((Long) row[0], row);
+        }
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (Long clientId : clientIds) {
+            Object[] row = rowsByClient.get(clientId);
+            Map<String, Object> map = new HashMap<>();
+            map.put("clientId", clientId);
+            map.put("chiffreAffaires", row != null && row[1] != null ? ((Number) row[1]).doubleValue() : 0.0);
+            map.put("resteAPayer", row != null && row[2] != null ? ((Number) row[2]).doubleValue() : 0.0);
+            map.put("nombreFactures", row != null ? ((Number) row[3]).longValue() : 0L);
+            map.put("nombreFacturesReglees", row != null && row[4] != null ? ((Number) row[4]).longValue() : 0L);
+            stats.add(map);
+        }
+        return stats;
     }
 
     @GetMapping("/lignes/client/{clientId}/produits")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Map<String, Object>> getProduitsSollicitesByClient(@PathVariable Long clientId,
                                                                    @RequestParam(defaultValue = "5") int limit) {
-        List<Object[]> results = factureLigneRepository.findProduitQuantitesByClientId(clientId);
+        List<Object[]> results = factureLigneRepository.findProduitQuantitesByClientId(clientId).stream()
+                .limit(limit).collect(Collectors.toList());
+        Map<Long, Produit> produits = factureEnricher.resolveProduits(
+                results.stream().map(row -> (Long) row[0]).collect(Collectors.toSet()));
         return results.stream().map(row -> {
             Map<String, Object> map = new HashMap<>();
             map.put("produitId", row[0]);
             map.put("quantite", ((Number) row[1]).longValue());
-            try {
-                Produit produit = produitServiceClient.getProduitById((Long) row[0]);
-                map.put("produitNom", produit.getName());
-            } catch (Exception e) {
-                map.put("produitNom", "Produit indisponible");
-            }
+            map.put("produitNom", factureEnricher.produitName(produits, (Long) row[0]));
             return map;
-        }).limit(limit).collect(Collectors.toList());
+        }).collect(Collectors.toList());
     }
 
     // --- Produit-Service Endpoint ---
@@ -230,12 +386,28 @@ public class FactureRestController {
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Long getQuantiteVendueByProduit(@PathVariable Long produitId,
                                            @RequestParam(required = false) Integer annee) {
-        List<FactureLigne> lignes = factureLigneRepository.findAll().stream()
-                .filter(l -> l.getProduitID().equals(produitId))
-                .filter(l -> annee == null || (l.getFacture().getDateFacture() != null
-                        && (l.getFacture().getDateFacture().getYear() + 1900) == annee))
-                .collect(Collectors.toList());
-        return lignes.stream().mapToLong(FactureLigne::getQuantity).sum();
+        if (annee == null) {
+            return factureLigneRepository.sumQuantiteByProduit(produitId);
+        }
+        return factureLigneRepository.sumQuantiteByProduitBetween(produitId, debutAnnee(annee), debutAnnee(annee + 1));
+    }
+
+    // Quantités vendues de tous les produits en une seule requête (produitId -> quantité)
+    @GetMapping("/lignes/produits/quantites")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public Map<Long, Long> getQuantitesVenduesParProduit(@RequestParam(required = false) Integer annee) {
+        List<Object[]> rows = annee == null
+                ? factureLigneRepository.sumQuantitesGroupByProduit()
+                : factureLigneRepository.sumQuantitesGroupByProduitBetween(debutAnnee(annee), debutAnnee(annee + 1));
+        Map<Long, Long> quantites = new HashMap<>();
+        for (Object[] row : rows) {
+            quantites.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+        return quantites;
+    }
+
+    private static Date debutAnnee(int annee) {
+        return java.sql.Date.valueOf(LocalDate.of(annee, 1, 1));
     }
 
     // --- Statistical Endpoints ---
@@ -244,106 +416,107 @@ public class FactureRestController {
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Double getChiffreAffaires(@PathVariable Long clientId,
                                      @RequestParam(required = false) Integer annee) {
-        return factureRepository.findByClientID(clientId).stream().filter(
-                f -> annee == null || (f.getDateFacture() != null && (f.getDateFacture().getYear() + 1900) == annee))
-                .mapToDouble(Facture::getTotal).sum();
+        return sumTotalByClient(clientId, annee);
     }
 
     @GetMapping("/stats/reste-a-payer/{clientId}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Double getResteAPayer(@PathVariable Long clientId) {
-        return factureRepository.findByClientID(clientId).stream().filter(f -> !"PAYEE".equals(f.getStatus()))
-                .mapToDouble(Facture::getResteAPayer).sum();
+        return factureRepository.sumResteAPayerByClientID(clientId);
     }
 
     @GetMapping("/stats/reglees/{clientId}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Facture> getFacturesReglees(@PathVariable Long clientId) {
-        return factureRepository.findByClientID(clientId).stream()
+        return enrichFactures(factureRepository.findByClientID(clientId).stream()
                 .filter(f -> "PAYEE".equals(f.getStatus()))
-                .map(this::enrichFacture)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
     @GetMapping("/stats/non-reglees/{clientId}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Facture> getFacturesNonReglees(@PathVariable Long clientId) {
-        return factureRepository.findByClientID(clientId).stream()
+        return enrichFactures(factureRepository.findByClientID(clientId).stream()
                 .filter(f -> !"PAYEE".equals(f.getStatus()))
-                .map(this::enrichFacture)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
     @GetMapping("/stats/non-reglees")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Facture> getAllFacturesNonReglees() {
-        return factureRepository.findAll().stream()
-                .filter(f -> !"PAYEE".equals(f.getStatus()))
-                .map(this::enrichFacture)
-                .collect(Collectors.toList());
+        return enrichFactures(factureRepository.findByStatusNot("PAYEE"));
     }
 
     @GetMapping("/stats/reglees")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Facture> getAllFacturesReglees() {
-        return factureRepository.findAll().stream()
-                .filter(f -> "PAYEE".equals(f.getStatus()))
-                .map(this::enrichFacture)
-                .collect(Collectors.toList());
+        return enrichFactures(factureRepository.findByStatus("PAYEE"));
     }
 
     @GetMapping("/stats/produits-top/{clientId}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Map<String, Object>> getProduitsTopParClient(@PathVariable Long clientId,
                                                              @RequestParam(defaultValue = "5") int limit) {
-        List<Object[]> results = factureLigneRepository.findProduitQuantitesByClientId(clientId);
+        List<Object[]> results = factureLigneRepository.findProduitQuantitesByClientId(clientId).stream()
+                .limit(limit).collect(Collectors.toList());
+        Map<Long, Produit> produits = factureEnricher.resolveProduits(
+                results.stream().map(row -> (Long) row[0]).collect(Collectors.toSet()));
         return results.stream().map(row -> {
             Map<String, Object> map = new HashMap<>();
             map.put("produitId", row[0]);
             map.put("quantite", ((Number) row[1]).longValue());
-            try {
-                Produit produit = produitServiceClient.getProduitById((Long) row[0]);
-                map.put("produitNom", produit.getName());
-            } catch (Exception e) {
-                map.put("produitNom", "Produit indisponible");
-            }
+            map.put("produitNom", factureEnricher.produitName(produits, (Long) row[0]));
             return map;
-        }).limit(limit).collect(Collectors.toList());
+        }).collect(Collectors.toList());
     }
 
     @GetMapping("/stats/clients-fideles")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Map<String, Object>> getClientsFideles(
             @RequestParam(defaultValue = "5") int limit,
-            @RequestParam(required = false) Integer annee) {
-        List<Facture> factures = factureRepository.findAll();
-        if (annee != null) {
-            factures = factures.stream()
-                    .filter(f -> f.getDateFacture() != null && (f.getDateFacture().getYear() + 1900) == annee)
-                    .collect(Collectors.toList());
+            @RequestParam(required = false) Integer annee,
+            @RequestParam(required = false) Integer mois) {
+        List<TopKAggregator.Entry> top = topKAggregator.topClients(limit, debutPeriode(annee, mois), finPeriode(annee, mois));
+        Map<Long, Client> clients = factureEnricher.resolveClients(
+                top.stream().map(TopKAggregator.Entry::id).collect(Collectors.toSet()));
+        return top.stream().map(entry -> {
+            Map<String, Object> map = new HashMap<>();
+            map.put("clientId", entry.id());
+            map.put("chiffreAffaires", entry.valeur().doubleValue());
+            map.put("clientNom", factureEnricher.clientName(clients, entry.id()));
+            return map;
+        }).collect(Collectors.toList());
+    }
+
+    // Période [debut, fin) d'une année, éventuellement restreinte à un mois ; null si aucun filtre
+    private static Date debutPeriode(Integer annee, Integer mois) {
+        if (annee == null) {
+            if (mois != null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Le filtre mois nécessite une année");
+            }
+            return null;
         }
-        Map<Long, Double> caParClient = factures.stream()
-                .collect(Collectors.groupingBy(Facture::getClientID, Collectors.summingDouble(Facture::getTotal)));
-        return caParClient.entrySet().stream()
-                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
-                .limit(limit)
-                .map(entry -> {
-                    Map<String, Object> map = new HashMap<>();
-                    map.put("clientId", entry.getKey());
-                    map.put("chiffreAffaires", entry.getValue());
-                    try {
-                        Client client = clientServiceClient.findClientById(entry.getKey());
-                        map.put("clientNom", client.getName());
-                    } catch (Exception e) {
-                        map.put("clientNom", "Client indisponible");
-                    }
-                    return map;
-                }).collect(Collectors.toList());
+        if (mois != null && (mois < 1 || mois > 12)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Le mois doit être compris entre 1 et 12");
+        }
+        if (annee < 1 || annee > 9999) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Année invalide : " + annee);
+        }
+        return java.sql.Date.valueOf(LocalDate.of(annee, mois != null ? mois : 1, 1));
+    }
+
+    private static Date finPeriode(Integer annee, Integer mois) {
+        if (annee == null) {
+            return null;
+        }
+        LocalDate debut = LocalDate.of(annee, mois != null ? mois : 1, 1);
+        return java.sql.Date.valueOf(mois != null ? debut.plusMonths(1) : debut.plusYears(1));
     }
+
     @GetMapping("/full-facture/{id}")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Facture getFullFacture(@PathVariable Long id) {
-        Facture facture = factureRepository.findById(id).orElseThrow(
+        Facture facture = factureRepository.findWithLignesById(id).orElseThrow(
                 () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Facture not found for ID: " + id));
         return enrichFacture(facture);
     }
@@ -352,11 +525,13 @@ public class FactureRestController {
 
     @PutMapping("/{id}/status")
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional
     public ResponseEntity<Void> updateFactureStatus(@PathVariable Long id, @RequestParam String status) {
         Facture facture = factureRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Facture not found for ID: " + id));
+        FactureRollupService.Contribution before = FactureRollupService.Contribution.of(facture);
         facture.setStatus(status);
-        factureRepository.save(facture);
+        factureRollupService.replace(before, factureRepository.saveAndFlush(facture));
         return ResponseEntity.ok().build();
     }
 
@@ -370,27 +545,52 @@ public class FactureRestController {
 
     @PutMapping("/{id}/montant-paye")
     @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional
     public ResponseEntity<Void> updateFactureMontantPaye(@PathVariable Long id, @RequestParam Double montantPaye) {
         Facture facture = factureRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Facture not found for ID: " + id));
+        FactureRollupService.Contribution before = FactureRollupService.Contribution.of(facture);
         facture.setMontantPaye(montantPaye);
-        factureRepository.save(facture);
+        factureRollupService.replace(before, factureRepository.saveAndFlush(facture));
+        return ResponseEntity.ok().build();
+    }
+
+    // Montant payé et statut appliqués ensemble : une seule écriture par recalcul côté reglement-service
+    @PutMapping("/{id}/paiement")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @Transactional
+    public ResponseEntity<Void> updateFacturePaiement(@PathVariable Long id, @RequestParam Double montantPaye,
+                                                      @RequestParam String status) {
+        Facture facture = factureRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Facture not found for ID: " + id));
+        FactureRollupService.Contribution before = FactureRollupService.Contribution.of(facture);
+        facture.setMontantPaye(montantPaye);
+        facture.setStatus(status);
+        factureRollupService.replace(before, factureRepository.saveAndFlush(facture));
         return ResponseEntity.ok().build();
     }
 
     // --- Dashboard Endpoints ---
+    // Lus depuis FactureRollup (une ligne par mois et par statut), jamais depuis la table Facture
+
+    @PostMapping("/rollups/rebuild")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Void> rebuildRollups() {
+        factureRollupService.rebuild();
+        return ResponseEntity.ok().build();
+    }
 
     @GetMapping("/sales/summary")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Map<String, Object> getSalesSummary() {
-        List<Facture> factures = factureRepository.findAll();
+        List<FactureRollup> rollups = factureRollupService.findAll();
         Map<String, Object> summary = new HashMap<>();
-        summary.put("totalGlobal", factures.stream().mapToDouble(Facture::getTotal).sum());
-        Map<Integer, Double> totalYearly = factures.stream()
-                .filter(f -> f.getDateFacture() != null)
+        summary.put("totalGlobal", rollups.stream().mapToDouble(FactureRollup::getTotal).sum());
+        Map<Integer, Double> totalYearly = rollups.stream()
+                .filter(r -> r.getAnnee() > 0)
                 .collect(Collectors.groupingBy(
-                        f -> f.getDateFacture().getYear() + 1900,
-                        Collectors.summingDouble(Facture::getTotal)));
+                        FactureRollup::getAnnee,
+                        Collectors.summingDouble(FactureRollup::getTotal)));
         summary.put("totalYearly", totalYearly);
         return summary;
     }
@@ -398,45 +598,71 @@ public class FactureRestController {
     @GetMapping("/invoices/summary")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Map<String, Object> getInvoiceSummary() {
-        List<Facture> factures = factureRepository.findAll();
+        List<FactureRollup> rollups = factureRollupService.findAll();
+        long total = countFactures(rollups, null);
+        long paid = countFactures(rollups, "PAYEE");
         Map<String, Object> summary = new HashMap<>();
-        summary.put("totalGenerated", factures.size());
-        summary.put("paidCount", factures.stream().filter(f -> "PAYEE".equals(f.getStatus())).count());
-        summary.put("pendingCount", factures.stream().filter(f -> !"PAYEE".equals(f.getStatus())).count());
+        summary.put("totalGenerated", total);
+        summary.put("paidCount", paid);
+        summary.put("pendingCount", total - paid);
         return summary;
     }
 
+    // Nombre de factures, toutes confondues (status null) ou pour un statut donné
+    private long countFactures(List<FactureRollup> rollups, String status) {
+        return rollups.stream()
+                .filter(r -> status == null || status.equals(r.getStatus()))
+                .mapToLong(FactureRollup::getNombre)
+                .sum();
+    }
+
+    // Même tableau JSON qu'avant, écrit en flux par l'export : ni la liste des factures
+    // ni la réponse ne sont tenues en mémoire
     @GetMapping("/invoices")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
-    public List<Map<String, Object>> getInvoices() {
-        return factureRepository.findAll().stream().map(facture -> {
-            Map<String, Object> invoice = new HashMap<>();
-            invoice.put("id", facture.getId());
-            invoice.put("customerId", facture.getClientID());
-            try {
-                Client client = clientServiceClient.findClientById(facture.getClientID());
-                invoice.put("customerName", client.getName());
-            } catch (Exception e) {
-                invoice.put("customerName", "Client indisponible");
-            }
-            invoice.put("amount", facture.getTotal());
-            invoice.put("status", facture.getStatus());
-            invoice.put("date", facture.getDateFacture());
-            return invoice;
-        }).collect(Collectors.toList());
+    public ResponseEntity<StreamingResponseBody> getInvoices() {
+        StreamingResponseBody body = out -> factureExportService.export(out, FactureExportService.Format.JSON,
+                null, null, null);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // Export en flux, mémoire constante quel que soit le nombre de factures
+    @GetMapping("/invoices/export")
+    @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportInvoices(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate debut,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin,
+            @RequestParam(required = false) String status) {
+        FactureExportService.Format exportFormat;
+        try {
+            exportFormat = FactureExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Format d'export inconnu : " + format);
+        }
+        Date dateDebut = debut != null ? java.sql.Date.valueOf(debut) : null;
+        Date dateFin = fin != null ? java.sql.Date.valueOf(fin) : null;
+        StreamingResponseBody body = out -> factureExportService.export(out, exportFormat, dateDebut, dateFin, status);
+        MediaType contentType = switch (exportFormat) {
+            case CSV -> new MediaType("text", "csv");
+            case JSON -> MediaType.APPLICATION_JSON;
+            case NDJSON -> MediaType.parseMediaType("application/x-ndjson");
+        };
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=factures." + exportFormat.name().toLowerCase())
+                .body(body);
     }
 
     @GetMapping("/sales/trends")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public List<Map<String, Object>> getSalesTrends() {
-        return factureRepository.findAll().stream()
-                .filter(f -> f.getDateFacture() != null)
+        return factureRollupService.findAll().stream()
+                .filter(r -> r.getAnnee() > 0)
                 .collect(Collectors.groupingBy(
-                        f -> {
-                            LocalDate date = ((java.sql.Date) f.getDateFacture()).toLocalDate();
-                            return date.getYear() + "-" + date.getMonthValue();
-                        },
-                        Collectors.summingDouble(Facture::getTotal)))
+                        r -> r.getAnnee() + "-" + r.getMois(),
+                        Collectors.summingDouble(FactureRollup::getTotal)))
                 .entrySet().stream()
                 .map(entry -> {
                     Map<String, Object> trend = new HashMap<>();
@@ -457,9 +683,9 @@ public class FactureRestController {
     @GetMapping("/invoices/payment-rate")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Map<String, Object> getPaymentRate() {
-        List<Facture> factures = factureRepository.findAll();
-        long totalInvoices = factures.size();
-        long paidInvoices = factures.stream().filter(f -> "PAYEE".equals(f.getStatus())).count();
+        List<FactureRollup> rollups = factureRollupService.findAll();
+        long totalInvoices = countFactures(rollups, null);
+        long paidInvoices = countFactures(rollups, "PAYEE");
         Map<String, Object> paymentRate = new HashMap<>();
         paymentRate.put("paidPercentage", totalInvoices > 0 ? (paidInvoices * 100.0 / totalInvoices) : 0.0);
         paymentRate.put("pendingPercentage", totalInvoices > 0 ? ((totalInvoices - paidInvoices) * 100.0 / totalInvoices) : 0.0);
@@ -469,33 +695,27 @@ public class FactureRestController {
  // --- Produit le plus vendu (Dashboard) ---
     @GetMapping("/stats/produit-top")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
-    public Map<String, Object> getProduitLePlusVendu(@RequestParam(defaultValue = "1") int limit) {
-        List<FactureLigne> lignes = factureLigneRepository.findAll();
-        // Regrouper par produitId et sommer les quantités
-        Map<Long, Long> quantitesParProduit = lignes.stream()
-            .collect(Collectors.groupingBy(
-                FactureLigne::getProduitID,
-                Collectors.summingLong(FactureLigne::getQuantity)
-            ));
-        // Trier par quantité décroissante et prendre les "limit" premiers
-        List<Map.Entry<Long, Long>> topProduits = quantitesParProduit.entrySet().stream()
-            .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
-            .limit(limit)
-            .collect(Collectors.toList());
-
-        // Construire la réponse enrichie avec le nom du produit
+    public Map<String, Object> getProduitLePlusVendu(@RequestParam(defaultValue = "1") int limit,
+                                                     @RequestParam(required = false) Integer annee,
+                                                     @RequestParam(required = false) Integer mois,
+                                                     @RequestParam(required = false) Long categorieId) {
+        Date debut = debutPeriode(annee, mois);
+        Date fin = finPeriode(annee, mois);
+        // La catégorie est connue de produit-service : on récupère l'ensemble des produits concernés
+        Set<Long> produitIds = categorieId == null || limit <= 0 ? null
+                : new HashSet<>(produitServiceClient.getProduitIdsByCategorie(categorieId));
+        List<TopKAggregator.Entry> topProduits = topKAggregator.topProduits(limit, debut, fin, produitIds);
+
+        // Construire la réponse enrichie avec le nom du produit (un seul appel à produit-service)
+        Map<Long, Produit> produitsById = factureEnricher.resolveProduits(
+                topProduits.stream().map(TopKAggregator.Entry::id).collect(Collectors.toSet()));
         Map<String, Object> result = new HashMap<>();
         List<Map<String, Object>> produits = new ArrayList<>();
-        for (Map.Entry<Long, Long> entry : topProduits) {
+        for (TopKAggregator.Entry entry : topProduits) {
             Map<String, Object> produitMap = new HashMap<>();
-            produitMap.put("produitId", entry.getKey());
-            produitMap.put("quantiteVendue", entry.getValue());
-            try {
-                Produit produit = produitServiceClient.getProduitById(entry.getKey());
-                produitMap.put("produitNom", produit.getName());
-            } catch (Exception e) {
-                produitMap.put("produitNom", "Produit indisponible");
-            }
+            produitMap.put("produitId", entry.id());
+            produitMap.put("quantiteVendue", entry.valeur().longValue());
+            produitMap.put("produitNom", factureEnricher.produitName(produitsById, entry.id()));
             produits.add(produitMap);
         }
         result.put("topProduits", produits);
@@ -504,10 +724,10 @@ public class FactureRestController {
     @GetMapping("/stats/factures-count")
     @PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
     public Map<String, Object> getFacturesStats() {
-        List<Facture> factures = factureRepository.findAll();
-        int total = factures.size();
-        int reglees = (int) factures.stream().filter(f -> "PAYEE".equals(f.getStatus())).count();
-        int nonReglees = total - reglees;
+        List<FactureRollup> rollups = factureRollupService.findAll();
+        long total = countFactures(rollups, null);
+        long reglees = countFactures(rollups, "PAYEE");
+        long nonReglees = total - reglees;
         Map<String, Object> stats = new HashMap<>();
         stats.put("total", total);
         stats.put("reglees", reglees);
@@ -518,19 +738,17 @@ public class FactureRestController {
     @PreAuthorize("hasAuthority('ADMIN') or hasAuthority('USER')")
     public List<Map<String, Object>> getClientsCommandantProduit(@PathVariable Long produitId) {
         List<Object[]> results = factureLigneRepository.findClientsByProduitId(produitId);
+        // Un seul appel au microservice client pour récupérer tous les noms
+        Map<Long, Client> clientsById = factureEnricher.resolveClients(
+                results.stream().map(row -> (Long) row[0]).collect(Collectors.toSet()));
         List<Map<String, Object>> clients = new ArrayList<>();
         for (Object[] row : results) {
             Map<String, Object> map = new HashMap<>();
             Long clientId = (Long) row[0];
             Long quantite = ((Number) row[1]).longValue();
             map.put("quantite", quantite);
-            try {
-                // Appel au microservice client pour récupérer le nom
-                Client client = clientServiceClient.findClientById(clientId);
-                map.put("clientName", client.getName());
-            } catch (Exception e) {
-                map.put("clientName", "Client inconnu");
-            }
+            Client client = clientsById.get(clientId);
+            map.put("clientName", client != null ? client.getName() : "Client inconnu");
             clients.add(map);
         }
         return clients;
@@ -0,0 +1,91 @@
+package org.ms.facture_service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ms.facture_service.entities.Facture;
+import org.ms.facture_service.entities.FactureLigne;
+import org.ms.facture_service.repository.FactureRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Nombre de requêtes SQL émises par les accès utilisés par les endpoints :
+ * une régression N+1 sur les lignes de facture fait échouer le build.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+class FactureQueryCountTests {
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private FactureRepository factureRepository;
+
+	private Statistics statistics;
+
+	private Long factureId;
+
+	@BeforeEach
+	void setUp() {
+		for (int i = 0; i < 5; i++) {
+			Facture facture = new Facture(new Date(), "NON_PAYEE", 1L);
+			List<FactureLigne> lignes = new ArrayList<>();
+			for (long p = 1; p <= 3; p++) {
+				lignes.add(new FactureLigne(null, p, 2, 10.0, null, facture));
+			}
+			facture.setFactureLignes(lignes);
+			factureId = entityManager.persist(facture).getId();
+		}
+		entityManager.flush();
+		entityManager.clear();
+		statistics = entityManager.getEntityManager().getEntityManagerFactory()
+				.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	void idsParClientEnUneRequete() {
+		assertEquals(5, factureRepository.findIdsByClientID(1L).size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void resumesParIdsSansLesLignes() {
+		List<Long> ids = factureRepository.findIdsByClientID(1L);
+		statistics.clear();
+		factureRepository.findSummariesByIdIn(ids).forEach(f -> f.getTotal());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void detailChargeLesLignesParJointure() {
+		Facture facture = factureRepository.findWithLignesById(factureId).orElseThrow();
+		assertEquals(3, facture.getFactureLignes().size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void facturesDuClientChargentLesLignesParJointure() {
+		factureRepository.findByClientID(1L).forEach(f -> f.getFactureLignes().size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void pageChargeLesLignesParPaquet() {
+		// Requête de la page + une seule requête pour les lignes de toute la page
+		factureRepository.findAll(PageRequest.of(0, 10)).forEach(f -> f.getFactureLignes().size());
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+}
@@ -0,0 +1,82 @@
+package org.ms.facture_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.ms.facture_service.entities.Facture;
+import org.ms.facture_service.entities.FactureRollup;
+import org.ms.facture_service.repository.FactureRollupRepository;
+import org.ms.facture_service.service.FactureRollupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Factures concurrentes sur des mois encore absents des agrégats : chaque groupe
+ * est créé une seule fois et aucune contribution n'est perdue ni rejetée.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(FactureRollupService.class)
+class FactureRollupConcurrencyTests {
+	private static final int THREADS = 8;
+	private static final int MOIS = 24;
+
+	@Autowired
+	private FactureRollupService factureRollupService;
+
+	@Autowired
+	private FactureRollupRepository factureRollupRepository;
+
+	@AfterEach
+	void tearDown() {
+		factureRollupRepository.deleteAll();
+	}
+
+	@Test
+	void premieresFacturesConcurrentesDuMois() throws Exception {
+		CountDownLatch depart = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> taches = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				taches.add(pool.submit(() -> {
+					depart.await();
+					for (int m = 0; m < MOIS; m++) {
+						Facture facture = new Facture(new GregorianCalendar(2020 + m / 12, m % 12, 1).getTime(),
+								"NON_PAYEE", 1L);
+						facture.setTotal(10.0);
+						factureRollupService.add(facture);
+					}
+					return null;
+				}));
+			}
+			depart.countDown();
+			for (Future<?> tache : taches) {
+				tache.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		List<FactureRollup> rollups = factureRollupRepository.findAll();
+		assertEquals(MOIS, rollups.size());
+		for (FactureRollup rollup : rollups) {
+			assertEquals(THREADS, rollup.getNombre());
+			assertEquals(THREADS * 10.0, rollup.getTotal(), 1e-9);
+		}
+	}
+}
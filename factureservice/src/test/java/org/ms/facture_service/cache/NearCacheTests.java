@@ -0,0 +1,39 @@
+package org.ms.facture_service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTests {
+
+	@Test
+	void refreshAheadGroupsKeysOfOneRead() throws Exception {
+		List<Set<Long>> calls = new CopyOnWriteArrayList<>();
+		NearCache<String> cache = new NearCache<>("test", ids -> {
+			calls.add(Set.copyOf(ids));
+			return ids.stream().collect(Collectors.toMap(Function.identity(), id -> "v" + calls.size()));
+		}, 100, Duration.ofMinutes(1), Duration.ofMillis(50), Duration.ofHours(1), new SimpleMeterRegistry());
+
+		assertEquals(Map.of(1L, "v1", 2L, "v1", 3L, "v1"), cache.getAll(List.of(1L, 2L, 3L)));
+		assertEquals(1, calls.size());
+
+		Thread.sleep(100);
+		// Valeurs encore valides servies, rafraîchies en arrière-plan par un seul appel
+		assertEquals("v1", cache.getAll(List.of(1L, 2L, 3L)).get(2L));
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!"v2".equals(cache.get(3L)) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(Set.of(1L, 2L, 3L), calls.get(1));
+		assertEquals("v2", cache.get(1L));
+	}
+}
@@ -0,0 +1,98 @@
+package org.ms.facture_service.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FanOutTests {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	private final FanOut fanOut = new FanOut(executor, Duration.ofMillis(200), Duration.ofMillis(500));
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+		SecurityContextHolder.clearContext();
+		MDC.clear();
+	}
+
+	@Test
+	void propagatesSecurityContextAndMdc() {
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken("admin", "jwt-token"));
+		MDC.put("traceId", "abc");
+		try (FanOut.Scope scope = fanOut.open()) {
+			FanOut.Call<Object> credentials = scope.fork(
+					() -> SecurityContextHolder.getContext().getAuthentication().getCredentials(), null);
+			FanOut.Call<String> traceId = scope.fork(() -> MDC.get("traceId"), null);
+			scope.join();
+			assertEquals("jwt-token", credentials.get());
+			assertEquals("abc", traceId.get());
+		}
+	}
+
+	@Test
+	void callsRunConcurrently() {
+		// Chaque appel attend que les quatre aient démarré : ils ne peuvent aboutir que s'ils se chevauchent
+		CountDownLatch started = new CountDownLatch(4);
+		FanOut patient = new FanOut(executor, Duration.ofSeconds(10), Duration.ofSeconds(10));
+		try (FanOut.Scope scope = patient.open()) {
+			Map<Integer, FanOut.Call<Integer>> calls = scope.forkAll(List.of(1, 2, 3, 4), i -> {
+				started.countDown();
+				try {
+					if (!started.await(5, TimeUnit.SECONDS)) {
+						throw new IllegalStateException("appels exécutés l'un après l'autre");
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				}
+				return i * 10;
+			}, -1);
+			scope.join();
+			for (Map.Entry<Integer, FanOut.Call<Integer>> call : calls.entrySet()) {
+				assertFalse(call.getValue().failed());
+				assertEquals(call.getKey() * 10, call.getValue().get());
+			}
+		}
+	}
+
+	@Test
+	void slowOrFailingCallReturnsFallback() {
+		try (FanOut.Scope scope = fanOut.open()) {
+			FanOut.Call<String> slow = scope.fork(() -> {
+				sleep(1000);
+				return "trop tard";
+			}, "repli");
+			FanOut.Call<String> failing = scope.fork(() -> {
+				throw new IllegalStateException("indisponible");
+			}, "repli");
+			scope.join();
+			assertEquals("repli", slow.get());
+			assertTrue(slow.failed());
+			assertEquals("repli", failing.get());
+			assertInstanceOf(IllegalStateException.class, failing.failure());
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
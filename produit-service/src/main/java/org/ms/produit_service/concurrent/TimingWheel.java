@@ -0,0 +1,133 @@
+package org.ms.produit_service.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Roue temporelle hachée : une échéance est rangée dans la case (tick % nombreCases)
+ * avec le nombre de tours restant avant qu'elle n'arrive. Un seul thread avance la roue
+ * d'une case par tick et ne parcourt que cette case : le coût d'un tick ne dépend pas
+ * du nombre total d'échéances, et planifier ou annuler est en O(1).
+ * Les échéances d'un même tick sont remises ensemble au consommateur, sur le thread de
+ * la roue ; la précision est d'un tick.
+ */
+public class TimingWheel<T> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    public final class Timeout {
+        private final T valeur;
+        private final long tick;
+        private long tours;
+        private volatile boolean annule;
+
+        private Timeout(T valeur, long tick) {
+            this.valeur = valeur;
+            this.tick = tick;
+        }
+
+        public T valeur() {
+            return valeur;
+        }
+
+        // L'échéance reste dans sa case et sera ignorée à son passage
+        public void annuler() {
+            annule = true;
+        }
+    }
+
+    private final String nom;
+    private final long tickMs;
+    private final List<Timeout>[] cases;
+    private final int masque;
+    private final long debut = System.currentTimeMillis();
+    // Planifications en attente : seules les cases sont réservées au thread de la roue
+    private final Queue<Timeout> nouvelles = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<T>> expiration;
+    private final ScheduledExecutorService ticker;
+    private long tickCourant;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String nom, Duration tick, int nombreCases, Consumer<List<T>> expiration) {
+        this.nom = nom;
+        this.tickMs = Math.max(1, tick.toMillis());
+        int taille = Integer.highestOneBit(Math.max(1, nombreCases - 1)) << 1;
+        this.cases = new List[taille];
+        for (int i = 0; i < taille; i++) {
+            cases[i] = new ArrayList<>();
+        }
+        this.masque = taille - 1;
+        this.expiration = expiration;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, nom + "-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::avancer, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Échéance absolue, en millisecondes depuis l'epoch
+    public Timeout planifier(T valeur, long echeance) {
+        long tick = Math.max(0, (echeance - debut + tickMs - 1) / tickMs);
+        Timeout timeout = new Timeout(valeur, tick);
+        nouvelles.add(timeout);
+        return timeout;
+    }
+
+    private void avancer() {
+        try {
+            long cible = (System.currentTimeMillis() - debut) / tickMs;
+            while (tickCourant <= cible) {
+                ranger();
+                List<T> echues = new ArrayList<>();
+                Iterator<Timeout> it = cases[(int) (tickCourant & masque)].iterator();
+                while (it.hasNext()) {
+                    Timeout timeout = it.next();
+                    if (timeout.annule) {
+                        it.remove();
+                    } else if (timeout.tours > 0) {
+                        timeout.tours--;
+                    } else {
+                        it.remove();
+                        echues.add(timeout.valeur);
+                    }
+                }
+                tickCourant++;
+                if (!echues.isEmpty()) {
+                    expiration.accept(echues);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Ne pas laisser une erreur arrêter la roue : les échéances restantes seraient perdues
+            logger.error("Erreur lors de l'avance de la roue {}", nom, e);
+        }
+    }
+
+    private void ranger() {
+        Timeout timeout;
+        while ((timeout = nouvelles.poll()) != null) {
+            if (timeout.annule) {
+                continue;
+            }
+            // Échéance déjà passée : traitée au tick courant
+            long tick = Math.max(timeout.tick, tickCourant);
+            timeout.tours = (tick - tickCourant) / cases.length;
+            cases[(int) (tick & masque)].add(timeout);
+        }
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,12 @@
+package org.ms.produit_service.config;
+
+import org.springframework.cloud.openfeign.EnableFeignClients;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+// Clients Feign hors profil test : une tranche @DataJpaTest n'a ni FeignClientFactory ni Eureka
+@Configuration
+@Profile("!test")
+@EnableFeignClients(basePackages = "org.ms.produit_service.feign")
+public class FeignConfig {
+}
@@ -0,0 +1,49 @@
+package org.ms.produit_service.config;
+
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.repository.CategorieRepository;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.rest.core.config.RepositoryRestConfiguration;
+
+// Données de démarrage et exposition des IDs par Spring Data REST ; hors profil test,
+// où les tranches JPA n'ont pas de RepositoryRestConfiguration
+@Configuration
+@Profile("!test")
+public class InitialisationConfig {
+
+    @Bean
+    CommandLineRunner start(ProduitRepository produitRepository, CategorieRepository categorieRepository, 
+                           RepositoryRestConfiguration repositoryRestConfiguration) {
+        repositoryRestConfiguration.exposeIdsFor(Produit.class, Categorie.class);
+        return args -> {
+            if (categorieRepository.count() == 0) {
+                categorieRepository.save(new Categorie(null, "PC", "Ordinateurs personnels", null));
+                categorieRepository.save(new Categorie(null, "Imprimante", "Imprimantes et scanners", null));
+                categorieRepository.save(new Categorie(null, "Smartphone", "Téléphones intelligents", null));
+                categorieRepository.save(new Categorie(null, "Accessoires", "Souris, claviers, casques", null));
+            }
+            if (produitRepository.count() == 0) {
+                Categorie pc = categorieRepository.findByName("PC").orElse(null);
+                Categorie imprimante = categorieRepository.findByName("Imprimante").orElse(null);
+                Categorie smartphone = categorieRepository.findByName("Smartphone").orElse(null);
+                Categorie accessoires = categorieRepository.findByName("Accessoires").orElse(null);
+
+                produitRepository.save(new Produit(null, "Dell Inspiron 15", 750, 50, 0, pc, null, null, null));
+                produitRepository.save(new Produit(null, "HP LaserJet Pro", 300, 30, 0, imprimante, null, null, null));
+                produitRepository.save(new Produit(null, "iPhone 14", 1200, 25, 0, smartphone, null, null, null));
+                produitRepository.save(new Produit(null, "Logitech MX Master 3", 100, 100, 0, accessoires, null, null, null));
+                produitRepository.save(new Produit(null, "Samsung Galaxy S23", 999, 40, 0, smartphone, null, null, null));
+                produitRepository.save(new Produit(null, "Canon Pixma TS8350", 150, 15, 0, imprimante, null, null, null));
+            }
+            produitRepository.findAll().forEach(p -> {
+                System.out.println(p.getName() + ":" + p.getPrice() + ":" + p.getQuantity() + ":" + 
+                    (p.getCategorie() != null ? p.getCategorie().getName() : "No Category"));
+            });
+        };
+    }
+}
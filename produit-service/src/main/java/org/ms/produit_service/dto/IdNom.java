@@ -0,0 +1,7 @@
+package org.ms.produit_service.dto;
+
+// Projection lue à la construction de l'index de recherche
+public interface IdNom {
+    Long getId();
+    String getName();
+}
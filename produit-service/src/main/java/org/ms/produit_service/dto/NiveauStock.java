@@ -0,0 +1,9 @@
+package org.ms.produit_service.dto;
+
+// Projection relue après une mise à jour de stock en masse, pour les compteurs et l'alerte
+public interface NiveauStock {
+    String getName();
+    long getQuantity();
+    Long getSeuilReappro();
+    Long getCategorieId();
+}
@@ -0,0 +1,14 @@
+package org.ms.produit_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservationLigne {
+    private Long produitId;
+    private long quantity;
+    private Double price; // Renseigné par produit-service lors de la réservation
+}
@@ -4,14 +4,19 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import org.ms.produit_service.service.CategorieCacheListener;
+import org.ms.produit_service.service.RechercheIndexListener;
 
 @Entity
+@EntityListeners({ CategorieCacheListener.class, RechercheIndexListener.class })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -25,4 +30,8 @@ public class Categorie {
     private String name;
 
     private String description;
+
+    // Seuil de réapprovisionnement des produits de la catégorie qui n'ont pas le leur
+    @PositiveOrZero(message = "Le seuil ne peut pas être négatif")
+    private Long seuilReappro;
 }
\ No newline at end of file
@@ -3,19 +3,35 @@ package org.ms.produit_service.entities;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.PositiveOrZero;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import org.ms.produit_service.service.ProduitStockListener;
+import org.ms.produit_service.service.RechercheIndexListener;
+import org.ms.produit_service.service.StockAlerteService;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_produit_name_id", columnList = "name, id"),
+        @Index(name = "idx_produit_quantity_id", columnList = "quantity, id"),
+        @Index(name = "idx_produit_seuil_reappro", columnList = "seuilReappro")
+})
+@EntityListeners({ ProduitStockListener.class, RechercheIndexListener.class })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -34,9 +50,29 @@ public class Produit {
     @PositiveOrZero(message = "La quantité ne peut pas être négative")
     private long quantity;
 
+    // Quantité retenue par les StockHold actifs ; modifiée uniquement par les UPDATE de ProduitRepository
+    @Column(insertable = false, updatable = false, nullable = false, columnDefinition = "bigint default 0")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long quantiteReservee;
+
     @ManyToOne
     private Categorie categorie;
 
+    // Seuil de réapprovisionnement ; à défaut celui de la catégorie, puis stock.seuil-critique
+    @PositiveOrZero(message = "Le seuil ne peut pas être négatif")
+    private Long seuilReappro;
+
     @Version
     private Long version;
+
+    // Niveau de stock au chargement, pour ajuster les compteurs d'alerte à l'écriture
+    @Transient
+    @JsonIgnore
+    private StockAlerteService.Niveau niveauInitial;
+
+    // Disponible à la vente (available-to-promise) : stock physique moins les réservations en cours
+    @JsonProperty(value = "disponible", access = JsonProperty.Access.READ_ONLY)
+    public long getDisponible() {
+        return quantity - quantiteReservee;
+    }
 }
\ No newline at end of file
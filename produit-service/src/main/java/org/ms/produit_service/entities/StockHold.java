@@ -0,0 +1,50 @@
+package org.ms.produit_service.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Stock mis de côté pour une commande en attente, jusqu'à confirmation, libération ou expiration
+@Entity
+@Table(indexes = @Index(name = "idx_stock_hold_statut", columnList = "statut"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockHold {
+    public static final String ACTIVE = "ACTIVE";
+    public static final String CONFIRMEE = "CONFIRMEE";
+    public static final String LIBEREE = "LIBEREE";
+    public static final String EXPIREE = "EXPIREE";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long id;
+
+    private String statut;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expireLe;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "stock_hold_ligne", joinColumns = @JoinColumn(name = "hold_id"))
+    private List<StockHoldLigne> lignes = new ArrayList<>();
+}
@@ -0,0 +1,15 @@
+package org.ms.produit_service.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.Embeddable;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockHoldLigne {
+    private Long produitId;
+    private long quantity;
+}
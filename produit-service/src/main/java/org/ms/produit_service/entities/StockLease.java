@@ -0,0 +1,34 @@
+package org.ms.produit_service.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+
+import java.util.Date;
+
+// Unités d'un produit réservées en base (Produit.quantiteReservee) pour le stock en mémoire
+// d'une instance (voir HotStockEngine) ; majLe est prolongé tant que l'instance vit
+@Entity
+@Table(indexes = @Index(name = "idx_stock_lease_maj", columnList = "majLe"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockLease {
+    @Id
+    private String id; // instance:produitId
+
+    private String instance;
+
+    private Long produitId;
+
+    private long quantite; // vendues depuis le dernier report ou encore en mémoire
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date majLe;
+}
@@ -0,0 +1,40 @@
+package org.ms.produit_service.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Réservation de stock d'une facture, identifiée par l'ID choisi par facture-service :
+// une réservation ou une libération rejouée n'a pas d'effet supplémentaire
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservation {
+    public static final String RESERVEE = "RESERVEE";
+    public static final String LIBEREE = "LIBEREE";
+
+    @Id
+    private String id;
+
+    private String statut;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date creeLe;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "stock_reservation_ligne", joinColumns = @JoinColumn(name = "reservation_id"))
+    private List<StockReservationLigne> lignes = new ArrayList<>();
+}
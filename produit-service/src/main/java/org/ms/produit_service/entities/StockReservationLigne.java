@@ -0,0 +1,16 @@
+package org.ms.produit_service.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.Embeddable;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservationLigne {
+    private Long produitId;
+    private long quantity;
+    private Double price; // Prix au moment de la réservation, renvoyé tel quel si elle est rejouée
+}
@@ -8,9 +8,13 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
+import java.util.Map;
 
 @FeignClient(name = "FACTURE-SERVICE", configuration = FeignClientConfig.class)
 public interface FactureServiceClient {
  @GetMapping("/factures/lignes/produit/{produitId}/quantite")
  Long getQuantiteVendueByProduit(@PathVariable("produitId") Long produitId, @RequestParam(required = false) Integer annee);
+
+ @GetMapping("/factures/lignes/produits/quantites")
+ Map<Long, Long> getQuantitesVenduesParProduit(@RequestParam(value = "annee", required = false) Integer annee);
 }
\ No newline at end of file
@@ -1,18 +1,89 @@
 package org.ms.produit_service.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
+import jakarta.persistence.LockModeType;
+
+import org.ms.produit_service.dto.IdNom;
+import org.ms.produit_service.dto.NiveauStock;
 import org.ms.produit_service.entities.Produit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.webmvc.RepositoryRestController;
 
 @RepositoryRestController
 public interface ProduitRepository extends JpaRepository<Produit, Long> {
     boolean existsByCategorieId(Long categorieId);
-    @Query("SELECT p FROM Produit p JOIN FETCH p.categorie")
-    List<Produit> findAllWithCategories();
+    @Query("SELECT p.id FROM Produit p WHERE p.categorie.id = :categorieId")
+    List<Long> findIdsByCategorieId(@Param("categorieId") Long categorieId);
+    // Page de produits avec leur catégorie en une requête, plus le comptage
+    @Query(value = "SELECT p FROM Produit p LEFT JOIN FETCH p.categorie",
+            countQuery = "SELECT COUNT(p) FROM Produit p")
+    Page<Produit> findAllWithCategories(Pageable pageable);
+    @Query("SELECT p FROM Produit p LEFT JOIN FETCH p.categorie WHERE p.id IN :ids")
+    List<Produit> findAllWithCategoriesByIdIn(@Param("ids") Collection<Long> ids);
+    // Pagination par clé (name, id), sans OFFSET
+    @Query("SELECT p FROM Produit p LEFT JOIN FETCH p.categorie "
+            + "WHERE (:name IS NULL OR p.name > :name OR (p.name = :name AND p.id > :id)) ORDER BY p.name, p.id")
+    List<Produit> findPageAfter(@Param("name") String name, @Param("id") Long id, Pageable pageable);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Produit p WHERE p.id IN :ids ORDER BY p.id")
+    List<Produit> findAllByIdInForUpdate(@Param("ids") Collection<Long> ids);
     List<Produit> findByNameContainingIgnoreCase(String name);
+    @Query("SELECT p.id AS id, p.name AS name FROM Produit p")
+    List<IdNom> findAllIdNoms();
+
+    // Décrément atomique et conditionnel : 0 ligne modifiée si le disponible (stock moins réservations)
+    // est insuffisant. La version est incrémentée pour que les écritures concurrentes par entité restent détectées.
+    @Modifying
+    @Query("UPDATE Produit p SET p.quantity = p.quantity - :quantite, p.version = p.version + 1 "
+            + "WHERE p.id = :id AND p.quantity - p.quantiteReservee >= :quantite")
+    int decrementerStock(@Param("id") Long id, @Param("quantite") long quantite);
+    @Modifying
+    @Query("UPDATE Produit p SET p.quantity = p.quantity + :quantite, p.version = p.version + 1 WHERE p.id = :id")
+    int incrementerStock(@Param("id") Long id, @Param("quantite") long quantite);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.quantity - p.quantiteReservee FROM Produit p WHERE p.id = :id")
+    Optional<Long> findDisponibleForUpdate(@Param("id") Long id);
+    // Réservations temporaires (StockHold) : le stock physique ne baisse qu'à la confirmation
+    @Modifying
+    @Query("UPDATE Produit p SET p.quantiteReservee = p.quantiteReservee + :quantite, p.version = p.version + 1 "
+            + "WHERE p.id = :id AND p.quantity - p.quantiteReservee >= :quantite")
+    int reserverQuantite(@Param("id") Long id, @Param("quantite") long quantite);
+    @Modifying
+    @Query("UPDATE Produit p SET p.quantiteReservee = p.quantiteReservee - :quantite, p.version = p.version + 1 "
+            + "WHERE p.id = :id AND p.quantiteReservee >= :quantite")
+    int libererQuantite(@Param("id") Long id, @Param("quantite") long quantite);
+    @Modifying
+    @Query("UPDATE Produit p SET p.quantity = p.quantity - :quantite, "
+            + "p.quantiteReservee = p.quantiteReservee - :quantite, p.version = p.version + 1 "
+            + "WHERE p.id = :id AND p.quantiteReservee >= :quantite")
+    int confirmerQuantite(@Param("id") Long id, @Param("quantite") long quantite);
+    @Query("SELECT p.name AS name, p.quantity AS quantity, p.seuilReappro AS seuilReappro, "
+            + "p.categorie.id AS categorieId FROM Produit p WHERE p.id = :id")
+    Optional<NiveauStock> findNiveauStockById(@Param("id") Long id);
+
+    // Alertes de stock : plages lues sur l'index (quantity, id). Le seuil d'un produit est
+    // le sien, puis celui de sa catégorie, puis :seuilDefaut ; :seuilMax est le plus grand d'entre eux.
+    long countByQuantity(long quantity);
+    @Query("SELECT p FROM Produit p LEFT JOIN FETCH p.categorie WHERE p.quantity = 0 ORDER BY p.id")
+    List<Produit> findRuptures(Pageable pageable);
+    @Query("SELECT p FROM Produit p LEFT JOIN FETCH p.categorie c WHERE p.quantity <= :seuilMax "
+            + "AND p.quantity <= COALESCE(p.seuilReappro, c.seuilReappro, :seuilDefaut) ORDER BY p.quantity, p.id")
+    List<Produit> findSousSeuil(@Param("seuilMax") long seuilMax, @Param("seuilDefaut") long seuilDefaut,
+            Pageable pageable);
+    @Query("SELECT COUNT(p) FROM Produit p LEFT JOIN p.categorie c WHERE p.quantity <= :seuilMax "
+            + "AND p.quantity <= COALESCE(p.seuilReappro, c.seuilReappro, :seuilDefaut)")
+    long countSousSeuil(@Param("seuilMax") long seuilMax, @Param("seuilDefaut") long seuilDefaut);
+    @Query("SELECT MAX(p.seuilReappro) FROM Produit p")
+    Long findMaxSeuilReappro();
 
 
 }
\ No newline at end of file
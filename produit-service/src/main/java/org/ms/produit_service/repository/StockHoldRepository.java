@@ -0,0 +1,22 @@
+package org.ms.produit_service.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.ms.produit_service.entities.StockHold;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported = false)
+public interface StockHoldRepository extends JpaRepository<StockHold, Long> {
+    List<StockHold> findByStatut(String statut);
+    @Query("SELECT h.id FROM StockHold h WHERE h.statut = 'ACTIVE' AND h.expireLe < :maintenant ORDER BY h.id")
+    List<Long> findIdsEchues(@Param("maintenant") Date maintenant);
+    // Transition depuis ACTIVE uniquement : entre confirmation, libération et expiration, une seule l'emporte
+    @Modifying
+    @Query("UPDATE StockHold h SET h.statut = :statut WHERE h.id = :id AND h.statut = 'ACTIVE'")
+    int cloturer(@Param("id") Long id, @Param("statut") String statut);
+}
@@ -0,0 +1,34 @@
+package org.ms.produit_service.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.ms.produit_service.entities.StockLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported = false)
+public interface StockLeaseRepository extends JpaRepository<StockLease, String> {
+    List<StockLease> findByMajLeBefore(Date limite);
+    @Modifying
+    @Query("UPDATE StockLease l SET l.quantite = l.quantite + :quantite, l.majLe = :maintenant WHERE l.id = :id")
+    int ajouter(@Param("id") String id, @Param("quantite") long quantite, @Param("maintenant") Date maintenant);
+    // Sans effet si le bail a été repris entre-temps (instance jugée arrêtée)
+    @Modifying
+    @Query("UPDATE StockLease l SET l.quantite = l.quantite - :quantite, l.majLe = :maintenant "
+            + "WHERE l.id = :id AND l.quantite >= :quantite")
+    int retirer(@Param("id") String id, @Param("quantite") long quantite, @Param("maintenant") Date maintenant);
+    @Modifying
+    @Query("UPDATE StockLease l SET l.majLe = :maintenant WHERE l.id = :id")
+    int prolonger(@Param("id") String id, @Param("maintenant") Date maintenant);
+    // Reprise d'un bail échu : une seule instance l'emporte, et jamais sur un bail prolongé entre-temps
+    @Modifying
+    @Query("DELETE FROM StockLease l WHERE l.id = :id AND l.majLe < :limite")
+    int reprendre(@Param("id") String id, @Param("limite") Date limite);
+    @Modifying
+    @Query("DELETE FROM StockLease l WHERE l.id = :id AND l.quantite = 0")
+    int supprimerSiVide(@Param("id") String id);
+}
@@ -0,0 +1,19 @@
+package org.ms.produit_service.repository;
+
+import java.util.Optional;
+
+import jakarta.persistence.LockModeType;
+
+import org.ms.produit_service.entities.StockReservation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported = false)
+public interface StockReservationRepository extends JpaRepository<StockReservation, String> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM StockReservation r WHERE r.id = :id")
+    Optional<StockReservation> findByIdForUpdate(@Param("id") String id);
+}
@@ -0,0 +1,75 @@
+package org.ms.produit_service.service;
+
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.repository.CategorieRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copie en mémoire de la table Categorie, petite et rarement modifiée, partagée par
+ * tout le processus. Chargée à la première lecture et invalidée après chaque écriture
+ * (voir CategorieCacheListener) ; les instances servies ne doivent pas être modifiées.
+ * Chaque invalidation ouvre une nouvelle génération : une lecture commencée avant elle
+ * peut avoir vu l'ancienne table et n'est pas publiée.
+ */
+@Service
+public class CategorieCache {
+    private final CategorieRepository categorieRepository;
+    private final AtomicReference<Etat> etat = new AtomicReference<>(new Etat(0, null));
+
+    // categories est null tant que la génération n'est pas chargée
+    private record Etat(long generation, Map<Long, Categorie> categories) {
+    }
+
+    public CategorieCache(CategorieRepository categorieRepository) {
+        this.categorieRepository = categorieRepository;
+    }
+
+    public Optional<Categorie> findById(Long id) {
+        return Optional.ofNullable(all().get(id));
+    }
+
+    public boolean existsById(Long id) {
+        return all().containsKey(id);
+    }
+
+    // Triées par ID
+    public List<Categorie> findAll() {
+        return List.copyOf(all().values());
+    }
+
+    public void invalidate() {
+        etat.updateAndGet(e -> new Etat(e.generation() + 1, null));
+    }
+
+    private Map<Long, Categorie> all() {
+        Map<Long, Categorie> current = etat.get().categories();
+        if (current == null) {
+            current = load();
+        }
+        return current;
+    }
+
+    // Sérialisé : une seule lecture de la table par invalidation. Le résultat n'est publié
+    // que si la génération n'a pas changé pendant la lecture ; l'appelant s'en sert quand même
+    private synchronized Map<Long, Categorie> load() {
+        Etat debut = etat.get();
+        if (debut.categories() != null) {
+            return debut.categories();
+        }
+        Map<Long, Categorie> loaded = new LinkedHashMap<>();
+        categorieRepository.findAll().stream().sorted(Comparator.comparing(Categorie::getId))
+                .forEach(c -> loaded.put(c.getId(), new Categorie(c.getId(), c.getName(), c.getDescription(),
+                        c.getSeuilReappro())));
+        Map<Long, Categorie> current = Collections.unmodifiableMap(loaded);
+        etat.compareAndSet(debut, new Etat(debut.generation(), current));
+        return current;
+    }
+}
@@ -0,0 +1,52 @@
+package org.ms.produit_service.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.ms.produit_service.entities.Categorie;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Invalide CategorieCache après toute écriture sur Categorie, y compris via
+ * Spring Data REST ; dans une transaction, après le commit. Le seuil de la catégorie
+ * a pu changer : les compteurs d'alerte de stock sont alors recalculés.
+ */
+@Component
+public class CategorieCacheListener {
+    private final ObjectProvider<CategorieCache> categorieCache;
+    private final ObjectProvider<StockAlerteService> stockAlerteService;
+
+    public CategorieCacheListener(ObjectProvider<CategorieCache> categorieCache,
+                                  ObjectProvider<StockAlerteService> stockAlerteService) {
+        this.categorieCache = categorieCache;
+        this.stockAlerteService = stockAlerteService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Categorie categorie) {
+        // Invalidation immédiate : une lecture pendant la transaction rechargerait l'ancien état,
+        // d'où la seconde invalidation après le commit
+        categorieCache.getObject().invalidate();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    categorieCache.getObject().invalidate();
+                    stockAlerteService.getObject().recompter();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    categorieCache.getObject().invalidate();
+                }
+            });
+        } else {
+            stockAlerteService.getObject().recompter();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.ms.produit_service.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.ms.produit_service.entities.StockLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stock en mémoire des produits très demandés (stock.hot.produits, ou activés à chaud).
+ * Le stock est réservé en base par lots de stock.hot.lot unités (Produit.quantiteReservee,
+ * tracé par un bail StockLease), puis réparti sur des compteurs atomiques indépendants :
+ * chaque thread décrémente d'abord son compteur et ne touche la base qu'une fois par lot.
+ * Une unité vendue a toujours été réservée en base au préalable, si bien qu'aucune survente
+ * n'est possible, même avec plusieurs instances du service ; le stock physique, lui, reste
+ * entier pour les réservations, les holds et les compteurs d'alerte.
+ * Les ventes sont reportées en base (sortie de stock et alertes de seuil, voir StockService)
+ * à chaque réapprovisionnement et toutes les stock.hot.report, ce qui prolonge le bail ; le
+ * reliquat est rendu à la désactivation et à l'arrêt. Après un arrêt brutal, le bail cesse
+ * d'être prolongé et ses unités sont rendues au disponible après stock.hot.expiration, par
+ * l'instance qui redémarre ou par une autre : les ventes des dernières secondes non reportées
+ * redeviennent alors disponibles.
+ * Une vente en mémoire (prise dans les compteurs puis comptée comme vendue) et la fermeture
+ * s'excluent : la fermeture solde le bail avec toutes les ventes ; une vente qui arrive après
+ * passe directement par la base.
+ */
+@Service
+public class HotStockEngine {
+    private static final Logger logger = LoggerFactory.getLogger(HotStockEngine.class);
+    // Un compteur toutes les 8 cases (64 octets) : deux compteurs ne partagent pas une ligne de cache
+    private static final int PADDING = 8;
+
+    private final StockService stockService;
+    private final int nombreCompteurs;
+    private final long lot;
+    private final Duration expiration;
+    private final String instance = UUID.randomUUID().toString();
+    private final Map<Long, Stock> stocks = new ConcurrentHashMap<>();
+
+    public HotStockEngine(StockService stockService,
+                          @Value("${stock.hot.produits:}") List<Long> produits,
+                          @Value("${stock.hot.stripes:0}") int nombreCompteurs,
+                          @Value("${stock.hot.lot:100}") long lot,
+                          @Value("${stock.hot.expiration:2m}") Duration expiration) {
+        this.stockService = stockService;
+        this.nombreCompteurs = nombreCompteurs > 0 ? nombreCompteurs : Runtime.getRuntime().availableProcessors();
+        this.lot = lot;
+        this.expiration = expiration;
+        produits.forEach(this::activer);
+    }
+
+    public boolean estActif(Long produitId) {
+        return stocks.containsKey(produitId);
+    }
+
+    public Set<Long> produitsActifs() {
+        return Set.copyOf(stocks.keySet());
+    }
+
+    public void activer(Long produitId) {
+        stocks.computeIfAbsent(produitId, Stock::new);
+    }
+
+    public void desactiver(Long produitId) {
+        Stock stock = stocks.remove(produitId);
+        if (stock != null) {
+            stock.fermer();
+        }
+    }
+
+    // false si le stock (mémoire puis base) est insuffisant ; un produit désactivé entre-temps
+    // est décrémenté directement en base
+    public boolean decrementer(Long produitId, long quantite) {
+        Stock stock = stocks.get(produitId);
+        if (stock == null) {
+            return stockService.decrementer(produitId, quantite);
+        }
+        return stock.prendre(quantite);
+    }
+
+    // Unités prélevées en base et pas encore vendues
+    public long enMemoire(Long produitId) {
+        Stock stock = stocks.get(produitId);
+        return stock != null ? stock.total() : 0;
+    }
+
+    @PreDestroy
+    public void arreter() {
+        stocks.keySet().forEach(this::desactiver);
+    }
+
+    // Reporte les ventes en base et prolonge les baux des produits actifs
+    @Scheduled(fixedDelayString = "${stock.hot.report:5s}", initialDelayString = "${stock.hot.report:5s}")
+    public void reporter() {
+        for (Stock stock : stocks.values()) {
+            try {
+                stock.reporter();
+            } catch (RuntimeException e) {
+                logger.error("Report du stock en mémoire impossible pour le produit {} : {}", stock.produitId,
+                        e.getMessage(), e);
+            }
+        }
+    }
+
+    // Baux d'instances arrêtées net, ou de produits de cette instance dont la fermeture a échoué
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${stock.hot.expiration:2m}", initialDelayString = "${stock.hot.expiration:2m}")
+    public void reprendreBauxEchus() {
+        Date limite = new Date(System.currentTimeMillis() - expiration.toMillis());
+        for (StockLease bail : stockService.bauxEchus(limite)) {
+            if (instance.equals(bail.getInstance()) && stocks.containsKey(bail.getProduitId())) {
+                continue;
+            }
+            try {
+                if (stockService.reprendre(bail, limite)) {
+                    logger.warn("Bail de stock en mémoire échu repris pour le produit {} : {} unité(s) rendue(s)",
+                            bail.getProduitId(), bail.getQuantite());
+                }
+            } catch (RuntimeException e) {
+                logger.error("Reprise du bail {} impossible : {}", bail.getId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    private final class Stock {
+        private final Long produitId;
+        private final AtomicLongArray compteurs = new AtomicLongArray(nombreCompteurs * PADDING);
+        // Vendues depuis le dernier report, encore comptées dans le bail
+        private final AtomicLong vendues = new AtomicLong();
+        // Ventes en lecture, fermeture en écriture : aucune unité prise n'échappe au solde final
+        private final ReadWriteLock fermeture = new ReentrantReadWriteLock();
+        private boolean ferme;
+
+        Stock(Long produitId) {
+            this.produitId = produitId;
+        }
+
+        boolean prendre(long quantite) {
+            fermeture.readLock().lock();
+            try {
+                if (ferme) {
+                    return stockService.decrementer(produitId, quantite);
+                }
+                int depart = (int) (Thread.currentThread().getId() % nombreCompteurs);
+                long pris = prendreDansCompteurs(depart, quantite);
+                try {
+                    while (pris < quantite) {
+                        if (!reapprovisionner(quantite - pris)) {
+                            rendre(depart, pris);
+                            return false;
+                        }
+                        pris += prendreDansCompteurs(depart, quantite - pris);
+                    }
+                } catch (RuntimeException e) {
+                    rendre(depart, pris);
+                    throw e;
+                }
+                vendues.addAndGet(quantite);
+                return true;
+            } finally {
+                fermeture.readLock().unlock();
+            }
+        }
+
+        // Parcourt les compteurs à partir du sien ; retourne la quantité effectivement prise
+        private long prendreDansCompteurs(int depart, long quantite) {
+            long reste = quantite;
+            for (int i = 0; i < nombreCompteurs && reste > 0; i++) {
+                int index = ((depart + i) % nombreCompteurs) * PADDING;
+                long valeur = compteurs.get(index);
+                while (valeur > 0 && reste > 0) {
+                    long prise = Math.min(valeur, reste);
+                    if (compteurs.compareAndSet(index, valeur, valeur - prise)) {
+                        reste -= prise;
+                        break;
+                    }
+                    valeur = compteurs.get(index);
+                }
+            }
+            return quantite - reste;
+        }
+
+        private void rendre(int depart, long quantite) {
+            if (quantite > 0) {
+                compteurs.addAndGet(depart * PADDING, quantite);
+            }
+        }
+
+        // Sérialisé par produit : un seul prélèvement en base à la fois
+        private synchronized boolean reapprovisionner(long manque) {
+            if (total() >= manque) {
+                return true; // un autre thread vient de réapprovisionner
+            }
+            reporter();
+            long preleve = stockService.louer(instance, produitId, Math.max(lot, manque));
+            if (preleve == 0) {
+                return false;
+            }
+            long part = preleve / nombreCompteurs;
+            for (int i = 0; i < nombreCompteurs; i++) {
+                compteurs.addAndGet(i * PADDING, i == 0 ? part + preleve % nombreCompteurs : part);
+            }
+            return true;
+        }
+
+        long total() {
+            long total = 0;
+            for (int i = 0; i < nombreCompteurs; i++) {
+                total += compteurs.get(i * PADDING);
+            }
+            return total;
+        }
+
+        // Ventes reportées en une sortie de stock ; sans vente, le bail est seulement prolongé
+        synchronized void reporter() {
+            long aReporter = vendues.getAndSet(0);
+            boolean bailTenu;
+            try {
+                if (aReporter > 0) {
+                    bailTenu = stockService.solder(instance, produitId, aReporter, 0);
+                } else {
+                    bailTenu = total() == 0 || stockService.prolonger(instance, produitId);
+                }
+            } catch (RuntimeException e) {
+                vendues.addAndGet(aReporter); // reporté au prochain passage
+                throw e;
+            }
+            if (!bailTenu) {
+                perdreBail();
+            }
+        }
+
+        // Attend les ventes en cours ; les suivantes passent par la base
+        void fermer() {
+            fermeture.writeLock().lock();
+            try {
+                ferme = true;
+                vider();
+            } finally {
+                fermeture.writeLock().unlock();
+            }
+        }
+
+        private synchronized void vider() {
+            long aReporter = vendues.getAndSet(0);
+            long reliquat = 0;
+            for (int i = 0; i < nombreCompteurs; i++) {
+                reliquat += compteurs.getAndSet(i * PADDING, 0);
+            }
+            if (aReporter + reliquat > 0) {
+                if (stockService.solder(instance, produitId, aReporter, reliquat)) {
+                    logger.info("Stock en mémoire rendu pour le produit {} : {} unité(s)", produitId, reliquat);
+                } else {
+                    logger.error("Bail du produit {} repris par une autre instance : {} vente(s) non reportée(s)",
+                            produitId, aReporter);
+                }
+            }
+        }
+
+        // Bail repris par une autre instance (prolongation manquée) : ses unités ne sont plus réservées
+        private void perdreBail() {
+            long reliquat = 0;
+            for (int i = 0; i < nombreCompteurs; i++) {
+                reliquat += compteurs.getAndSet(i * PADDING, 0);
+            }
+            logger.error("Bail du produit {} repris par une autre instance : {} unité(s) retirée(s) de la mémoire",
+                    produitId, reliquat);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.ms.produit_service.service;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index inversé de noms par n-grammes, sans accents ni casse ("Écran" = "ecran", "œ" = "oe").
+ * Chaque mot est indexé par ses trigrammes, précédés d'un marqueur de début de mot ('$'),
+ * et par sa première lettre : un mot de requête d'une ou deux lettres cherche un début de mot,
+ * un mot plus long une sous-chaîne.
+ * <p>
+ * Chaque nom reçoit un ordinal ; à la construction, les ordinaux suivent le rang statique
+ * (noms les plus courts d'abord) et les listes de n-grammes sont des tableaux d'ordinaux
+ * croissants. Une recherche intersecte les listes de la requête en parcourant la plus courte
+ * dans cet ordre, vérifie chaque candidat sur le nom normalisé et s'arrête après BUDGET candidats
+ * vérifiés ou PARCOURS ordinaux parcourus : le coût est borné quelle que soit la taille du
+ * catalogue, et la recherche indique si elle a dû s'arrêter avant la fin. Les noms ajoutés ensuite
+ * prennent les ordinaux suivants, jusqu'à la prochaine reconstruction.
+ * Lectures sans verrou ; les écritures, rares, sont sérialisées.
+ */
+public class NgramIndex {
+    private static final char DEBUT = '$';
+    private static final int BUDGET = 1024;
+    private static final int PARCOURS = 65_536;
+
+    public record Resultat(@JsonSerialize(using = ToStringSerializer.class) Long id, String name, int score) {
+    }
+
+    // complete : toutes les sous-chaînes correspondantes ont été examinées, pas seulement les premières
+    public record Recherche(List<Resultat> resultats, boolean complete) {
+    }
+
+    private record Entree(Long id, String nom, String normalise, String[] mots) {
+    }
+
+    private record Candidat(int ordinal, Entree entree, int score) {
+    }
+
+    // Meilleur score d'abord, puis rang statique
+    private static final Comparator<Candidat> CLASSEMENT = Comparator.comparingInt(Candidat::score).reversed()
+            .thenComparingInt(Candidat::ordinal);
+
+    // Tableau d'ordinaux croissants ; publié avant sa taille, lu après elle
+    private static final class Postings {
+        private volatile int[] ordinaux = new int[4];
+        private volatile int taille;
+
+        void add(int ordinal) {
+            int[] courant = ordinaux;
+            if (taille == courant.length) {
+                courant = Arrays.copyOf(courant, courant.length * 2);
+            }
+            courant[taille] = ordinal;
+            ordinaux = courant;
+            taille = taille + 1;
+        }
+    }
+
+    private static final class Etat {
+        private volatile Entree[] entrees = new Entree[1024];
+        private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+        private final Map<Long, Integer> ordinaux = new HashMap<>();
+        private int suivant;
+        private int supprimees;
+    }
+
+    private volatile Etat etat = new Etat();
+
+    public static String normaliser(String texte) {
+        String decompose = Normalizer.normalize(texte, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decompose.length());
+        boolean espace = true;
+        for (int i = 0; i < decompose.length(); i++) {
+            char c = decompose.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            String ligature = switch (c) {
+                case 'œ' -> "oe";
+                case 'æ' -> "ae";
+                case 'ß' -> "ss";
+                default -> null;
+            };
+            if (ligature != null) {
+                sb.append(ligature);
+                espace = false;
+            } else if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                espace = false;
+            } else if (!espace) {
+                sb.append(' ');
+                espace = true;
+            }
+        }
+        int fin = sb.length();
+        if (fin > 0 && sb.charAt(fin - 1) == ' ') {
+            sb.setLength(fin - 1);
+        }
+        return sb.toString();
+    }
+
+    public synchronized int size() {
+        return etat.ordinaux.size();
+    }
+
+    // Remplace tout le contenu ; les ordinaux suivent le rang statique
+    public synchronized void reconstruire(Map<Long, String> noms) {
+        List<Entree> entrees = new ArrayList<>(noms.size());
+        noms.forEach((id, nom) -> {
+            if (nom != null) {
+                entrees.add(entree(id, nom));
+            }
+        });
+        entrees.sort(Comparator.comparingInt((Entree e) -> e.normalise().length())
+                .thenComparing(Entree::normalise).thenComparing(Entree::id));
+        Etat nouvel = new Etat();
+        nouvel.entrees = new Entree[Math.max(1024, entrees.size() * 5 / 4)];
+        entrees.forEach(e -> ajouter(nouvel, e));
+        etat = nouvel;
+    }
+
+    public synchronized void put(Long id, String nom) {
+        if (nom == null) {
+            remove(id);
+            return;
+        }
+        Integer ancien = etat.ordinaux.get(id);
+        if (ancien != null && etat.entrees[ancien].nom().equals(nom)) {
+            return;
+        }
+        remove(id);
+        ajouter(etat, entree(id, nom));
+    }
+
+    // Les anciens ordinaux restent dans les listes jusqu'à la reconstruction, qui suit
+    // dès qu'ils sont plus nombreux que les noms vivants
+    public synchronized void remove(Long id) {
+        Integer ordinal = etat.ordinaux.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        etat.entrees[ordinal] = null;
+        etat.supprimees++;
+        if (etat.supprimees > 1024 && etat.supprimees > etat.ordinaux.size()) {
+            Map<Long, String> vivants = new LinkedHashMap<>();
+            for (int o : etat.ordinaux.values()) {
+                vivants.put(etat.entrees[o].id(), etat.entrees[o].nom());
+            }
+            reconstruire(vivants);
+        }
+    }
+
+    // Les limit meilleurs résultats : nom exact, puis début du nom, puis débuts de mots, puis sous-chaîne
+    public List<Resultat> search(String requete, int limit) {
+        return rechercher(requete, limit).resultats();
+    }
+
+    // Comme search ; incomplète si le budget est atteint, si la requête n'a ni lettre ni chiffre ou si
+    // un de ses mots, d'une ou deux lettres, n'a été cherché qu'en début de mot
+    public Recherche rechercher(String requete, int limit) {
+        String q = normaliser(requete);
+        if (q.isEmpty()) {
+            return new Recherche(List.of(), false);
+        }
+        if (limit <= 0) {
+            return new Recherche(List.of(), true);
+        }
+        Etat courant = etat;
+        String[] motsRequete = q.split(" ");
+        boolean complete = true;
+        for (String mot : motsRequete) {
+            complete &= mot.length() >= 3;
+        }
+        List<int[]> listes = new ArrayList<>();
+        List<Integer> tailleListes = new ArrayList<>();
+        for (String mot : motsRequete) {
+            for (String gramme : grammesRequete(mot)) {
+                Postings liste = courant.postings.get(gramme);
+                if (liste == null) {
+                    return new Recherche(List.of(), complete);
+                }
+                // Taille lue avant le tableau : les ordinaux en deçà y sont tous écrits
+                tailleListes.add(liste.taille);
+                listes.add(liste.ordinaux);
+            }
+        }
+        // Intersection de toutes les listes, en parcourant la plus courte
+        int n = listes.size();
+        Integer[] ordre = new Integer[n];
+        for (int l = 0; l < n; l++) {
+            ordre[l] = l;
+        }
+        Arrays.sort(ordre, Comparator.comparingInt(tailleListes::get));
+        int[] tailles = new int[n];
+        int[][] tableaux = new int[n][];
+        for (int l = 0; l < n; l++) {
+            tailles[l] = tailleListes.get(ordre[l]);
+            tableaux[l] = listes.get(ordre[l]);
+        }
+        int[] curseurs = new int[n];
+
+        Entree[] entrees = courant.entrees;
+        PriorityQueue<Candidat> meilleurs = new PriorityQueue<>(CLASSEMENT.reversed());
+        int examines = 0;
+        candidats:
+        for (int i = 0; i < tailles[0]; i++) {
+            if (examines == BUDGET || i == PARCOURS) {
+                complete = false;
+                break;
+            }
+            int ordinal = tableaux[0][i];
+            for (int l = 1; l < n; l++) {
+                curseurs[l] = avancer(tableaux[l], curseurs[l], tailles[l], ordinal);
+                if (curseurs[l] == tailles[l]) {
+                    break candidats;
+                }
+                if (tableaux[l][curseurs[l]] != ordinal) {
+                    continue candidats;
+                }
+            }
+            Entree entree = ordinal < entrees.length ? entrees[ordinal] : null;
+            if (entree == null) {
+                continue;
+            }
+            examines++;
+            int score = score(entree, q, motsRequete);
+            if (score == 0) {
+                continue;
+            }
+            Candidat candidat = new Candidat(ordinal, entree, score);
+            if (meilleurs.size() < limit) {
+                meilleurs.add(candidat);
+            } else if (CLASSEMENT.compare(candidat, meilleurs.peek()) < 0) {
+                meilleurs.poll();
+                meilleurs.add(candidat);
+            }
+        }
+        List<Candidat> tries = new ArrayList<>(meilleurs);
+        tries.sort(CLASSEMENT);
+        List<Resultat> resultats = new ArrayList<>(tries.size());
+        for (Candidat candidat : tries) {
+            resultats.add(new Resultat(candidat.entree().id(), candidat.entree().nom(), candidat.score()));
+        }
+        return new Recherche(resultats, complete);
+    }
+
+    // Premier indice à partir de debut dont l'ordinal est >= cible, par bonds doublés puis dichotomie
+    private static int avancer(int[] ordinaux, int debut, int taille, int cible) {
+        int pas = 1;
+        int bas = debut;
+        int haut = debut;
+        while (haut < taille && ordinaux[haut] < cible) {
+            bas = haut + 1;
+            haut = debut + pas;
+            pas <<= 1;
+        }
+        haut = Math.min(haut, taille);
+        while (bas < haut) {
+            int milieu = (bas + haut) >>> 1;
+            if (ordinaux[milieu] < cible) {
+                bas = milieu + 1;
+            } else {
+                haut = milieu;
+            }
+        }
+        return bas;
+    }
+
+    private static Entree entree(Long id, String nom) {
+        String normalise = normaliser(nom);
+        return new Entree(id, nom, normalise, normalise.isEmpty() ? new String[0] : normalise.split(" "));
+    }
+
+    // L'entrée est publiée avant d'apparaître dans les listes de n-grammes
+    private static void ajouter(Etat etat, Entree entree) {
+        int ordinal = etat.suivant++;
+        Entree[] entrees = etat.entrees;
+        if (ordinal == entrees.length) {
+            entrees = Arrays.copyOf(entrees, entrees.length * 2);
+        }
+        entrees[ordinal] = entree;
+        etat.entrees = entrees;
+        etat.ordinaux.put(entree.id(), ordinal);
+        for (String gramme : grammes(entree.normalise())) {
+            etat.postings.computeIfAbsent(gramme, g -> new Postings()).add(ordinal);
+        }
+    }
+
+    // 0 si un mot de la requête ne correspond pas
+    private static int score(Entree entree, String q, String[] motsRequete) {
+        boolean debutsDeMots = true;
+        for (String mot : motsRequete) {
+            boolean debut = false;
+            for (String motNom : entree.mots()) {
+                if (motNom.startsWith(mot)) {
+                    debut = true;
+                    break;
+                }
+            }
+            if (!debut && (mot.length() < 3 || !entree.normalise().contains(mot))) {
+                return 0;
+            }
+            debutsDeMots &= debut;
+        }
+        if (entree.normalise().equals(q)) {
+            return 4;
+        }
+        if (entree.normalise().startsWith(q)) {
+            return 3;
+        }
+        return debutsDeMots ? 2 : 1;
+    }
+
+    private static Set<String> grammes(String normalise) {
+        Set<String> grammes = new HashSet<>();
+        if (normalise.isEmpty()) {
+            return grammes;
+        }
+        for (String mot : normalise.split(" ")) {
+            String marque = DEBUT + mot;
+            grammes.add(marque.substring(0, 2));
+            for (int i = 0; i + 3 <= marque.length(); i++) {
+                grammes.add(marque.substring(i, i + 3));
+            }
+        }
+        return grammes;
+    }
+
+    private static List<String> grammesRequete(String mot) {
+        if (mot.length() < 3) {
+            return List.of(DEBUT + mot);
+        }
+        List<String> grammes = new ArrayList<>(mot.length() - 2);
+        for (int i = 0; i + 3 <= mot.length(); i++) {
+            grammes.add(mot.substring(i, i + 3));
+        }
+        return grammes;
+    }
+}
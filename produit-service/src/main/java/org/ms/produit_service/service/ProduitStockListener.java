@@ -0,0 +1,64 @@
+package org.ms.produit_service.service;
+
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.service.StockAlerteService.Niveau;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Reporte chaque écriture de produit, y compris via Spring Data REST, sur les compteurs
+ * de StockAlerteService ; dans une transaction, après le commit. Les rappels ne font
+ * que relever les niveaux : le calcul des états, qui peut lire les catégories, est différé.
+ */
+@Component
+public class ProduitStockListener {
+    private final ObjectProvider<StockAlerteService> stockAlerteService;
+
+    public ProduitStockListener(ObjectProvider<StockAlerteService> stockAlerteService) {
+        this.stockAlerteService = stockAlerteService;
+    }
+
+    @PostLoad
+    public void onLoad(Produit produit) {
+        produit.setNiveauInitial(Niveau.of(produit));
+    }
+
+    @PostPersist
+    public void onPersist(Produit produit) {
+        onChange(null, Niveau.of(produit));
+        produit.setNiveauInitial(Niveau.of(produit));
+    }
+
+    @PostUpdate
+    public void onUpdate(Produit produit) {
+        // Un produit fusionné sans avoir été chargé n'a pas de niveau initial : rien à comparer
+        if (produit.getNiveauInitial() != null) {
+            onChange(produit.getNiveauInitial(), Niveau.of(produit));
+        }
+        produit.setNiveauInitial(Niveau.of(produit));
+    }
+
+    @PostRemove
+    public void onRemove(Produit produit) {
+        onChange(produit.getNiveauInitial() != null ? produit.getNiveauInitial() : Niveau.of(produit), null);
+    }
+
+    private void onChange(Niveau avant, Niveau apres) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stockAlerteService.getObject().transition(avant, apres);
+                }
+            });
+        } else {
+            stockAlerteService.getObject().transition(avant, apres);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.ms.produit_service.service;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.entities.Produit;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Reporte les créations, renommages et suppressions de produits et de catégories,
+ * y compris via Spring Data REST, sur l'index de RechercheService ; dans une transaction,
+ * après le commit. Le nom est relevé au moment du rappel.
+ */
+@Component
+public class RechercheIndexListener {
+    private final ObjectProvider<RechercheService> rechercheService;
+
+    public RechercheIndexListener(ObjectProvider<RechercheService> rechercheService) {
+        this.rechercheService = rechercheService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Object entity) {
+        if (entity instanceof Produit produit) {
+            Long id = produit.getId();
+            String name = produit.getName();
+            apresCommit(() -> rechercheService.getObject().indexerProduit(id, name));
+        } else if (entity instanceof Categorie categorie) {
+            Long id = categorie.getId();
+            String name = categorie.getName();
+            apresCommit(() -> rechercheService.getObject().indexerCategorie(id, name));
+        }
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        if (entity instanceof Produit produit) {
+            Long id = produit.getId();
+            apresCommit(() -> rechercheService.getObject().supprimerProduit(id));
+        } else if (entity instanceof Categorie categorie) {
+            Long id = categorie.getId();
+            apresCommit(() -> rechercheService.getObject().supprimerCategorie(id));
+        }
+    }
+
+    private static void apresCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
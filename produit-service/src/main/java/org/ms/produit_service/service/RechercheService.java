@@ -0,0 +1,83 @@
+package org.ms.produit_service.service;
+
+import jakarta.annotation.PostConstruct;
+import org.ms.produit_service.dto.IdNom;
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.service.NgramIndex.Resultat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recherche et autocomplétion sur les noms de produits et de catégories, servies par
+ * deux NgramIndex en mémoire : construits au démarrage, puis tenus à jour à chaque
+ * écriture validée (voir RechercheIndexListener).
+ */
+@Service
+public class RechercheService {
+    private static final Logger logger = LoggerFactory.getLogger(RechercheService.class);
+
+    private final ProduitRepository produitRepository;
+    private final CategorieCache categorieCache;
+    private final NgramIndex produits = new NgramIndex();
+    private final NgramIndex categories = new NgramIndex();
+
+    public RechercheService(ProduitRepository produitRepository, CategorieCache categorieCache) {
+        this.produitRepository = produitRepository;
+        this.categorieCache = categorieCache;
+    }
+
+    @PostConstruct
+    public void reconstruire() {
+        long start = System.nanoTime();
+        Map<Long, String> nomsProduits = new HashMap<>();
+        for (IdNom produit : produitRepository.findAllIdNoms()) {
+            nomsProduits.put(produit.getId(), produit.getName());
+        }
+        Map<Long, String> nomsCategories = new HashMap<>();
+        for (Categorie categorie : categorieCache.findAll()) {
+            nomsCategories.put(categorie.getId(), categorie.getName());
+        }
+        produits.reconstruire(nomsProduits);
+        categories.reconstruire(nomsCategories);
+        logger.info("Index de recherche construit : {} produit(s), {} catégorie(s) en {} ms", produits.size(),
+                categories.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public List<Resultat> produits(String q, int limit) {
+        return produits.search(q, limit);
+    }
+
+    public List<Resultat> categories(String q, int limit) {
+        return categories.search(q, limit);
+    }
+
+    public NgramIndex.Recherche rechercherProduits(String q, int limit) {
+        return produits.rechercher(q, limit);
+    }
+
+    public NgramIndex.Recherche rechercherCategories(String q, int limit) {
+        return categories.rechercher(q, limit);
+    }
+
+    public void indexerProduit(Long id, String name) {
+        produits.put(id, name);
+    }
+
+    public void supprimerProduit(Long id) {
+        produits.remove(id);
+    }
+
+    public void indexerCategorie(Long id, String name) {
+        categories.put(id, name);
+    }
+
+    public void supprimerCategorie(Long id) {
+        categories.remove(id);
+    }
+}
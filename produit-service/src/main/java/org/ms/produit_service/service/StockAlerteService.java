@@ -0,0 +1,149 @@
+package org.ms.produit_service.service;
+
+import jakarta.annotation.PostConstruct;
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Seuils de réapprovisionnement et compteurs d'alerte de stock. Le seuil d'un produit
+ * est le sien, à défaut celui de sa catégorie, puis stock.seuil-critique. Les compteurs
+ * (produits en rupture, produits au seuil ou en dessous, ruptures comprises) sont
+ * recalculés au démarrage et à chaque changement de catégorie, puis ajustés à chaque
+ * écriture de produit validée (voir ProduitStockListener) et chaque mouvement de
+ * StockService : le tableau de bord les lit sans requête. Les écritures qui échappent
+ * aux deux (UPDATE en masse, SQL direct, autres instances du service) les font dériver :
+ * ils sont aussi recalculés périodiquement (stock.alertes.recompte).
+ * Chaque alerte est publiée en StockCritique : les notifications s'y abonnent
+ * par @EventListener.
+ */
+@Service
+public class StockAlerteService {
+    private static final Logger logger = LoggerFactory.getLogger(StockAlerteService.class);
+
+    public enum Etat { EN_STOCK, SOUS_SEUIL, RUPTURE }
+
+    // Champs d'un produit dont dépend son état de stock, relevés sans accès à la base
+    public record Niveau(long quantity, Long seuilReappro, Long categorieId) {
+        public static Niveau of(Produit produit) {
+            Categorie categorie = produit.getCategorie();
+            return new Niveau(produit.getQuantity(), produit.getSeuilReappro(),
+                    categorie != null ? categorie.getId() : null);
+        }
+    }
+
+    // Événement d'alerte, publié de façon synchrone dans le thread de l'appelant
+    public record StockCritique(String nom, long quantite, long seuil, Etat etat) {
+    }
+
+    private final ProduitRepository produitRepository;
+    private final CategorieCache categorieCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AtomicLong ruptures = new AtomicLong();
+    private final AtomicLong sousSeuil = new AtomicLong();
+
+    @Value("${stock.seuil-critique:5}")
+    private long seuilParDefaut;
+
+    public StockAlerteService(ProduitRepository produitRepository, CategorieCache categorieCache,
+                              ApplicationEventPublisher eventPublisher) {
+        this.produitRepository = produitRepository;
+        this.categorieCache = categorieCache;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Une transition validée pendant le recalcul peut y être comptée deux fois ou pas du tout :
+    // l'écart est corrigé au recalcul suivant
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${stock.alertes.recompte:10m}", initialDelayString = "${stock.alertes.recompte:10m}")
+    public synchronized void recompter() {
+        ruptures.set(produitRepository.countByQuantity(0));
+        sousSeuil.set(produitRepository.countSousSeuil(seuilMax(), seuilParDefaut));
+    }
+
+    public long ruptures() {
+        return ruptures.get();
+    }
+
+    public long sousSeuil() {
+        return sousSeuil.get();
+    }
+
+    public long seuilParDefaut() {
+        return seuilParDefaut;
+    }
+
+    public long seuil(Niveau niveau) {
+        if (niveau.seuilReappro() != null) {
+            return niveau.seuilReappro();
+        }
+        if (niveau.categorieId() != null) {
+            Long seuilCategorie = categorieCache.findById(niveau.categorieId())
+                    .map(Categorie::getSeuilReappro).orElse(null);
+            if (seuilCategorie != null) {
+                return seuilCategorie;
+            }
+        }
+        return seuilParDefaut;
+    }
+
+    public Etat etat(Niveau niveau) {
+        if (niveau.quantity() == 0) {
+            return Etat.RUPTURE;
+        }
+        return niveau.quantity() <= seuil(niveau) ? Etat.SOUS_SEUIL : Etat.EN_STOCK;
+    }
+
+    // Plus grand seuil en vigueur : borne la plage lue sur l'index de quantity
+    public long seuilMax() {
+        long max = seuilParDefaut;
+        for (Categorie categorie : categorieCache.findAll()) {
+            if (categorie.getSeuilReappro() != null) {
+                max = Math.max(max, categorie.getSeuilReappro());
+            }
+        }
+        Long maxProduit = produitRepository.findMaxSeuilReappro();
+        return maxProduit != null ? Math.max(max, maxProduit) : max;
+    }
+
+    // Niveau null : produit absent avant (création) ou après (suppression) l'écriture
+    public void transition(Niveau avant, Niveau apres) {
+        Etat etatAvant = avant != null ? etat(avant) : null;
+        Etat etatApres = apres != null ? etat(apres) : null;
+        if (etatAvant != etatApres) {
+            ajuster(etatAvant, -1);
+            ajuster(etatApres, 1);
+        }
+    }
+
+    public void alerter(Produit produit) {
+        alerter(produit.getName(), Niveau.of(produit));
+    }
+
+    public void alerter(String nom, Niveau niveau) {
+        Etat etat = etat(niveau);
+        if (etat != Etat.EN_STOCK) {
+            long seuil = seuil(niveau);
+            logger.warn("ALERTE : Stock critique pour le produit {}, quantité restante : {} (seuil {})",
+                    nom, niveau.quantity(), seuil);
+            eventPublisher.publishEvent(new StockCritique(nom, niveau.quantity(), seuil, etat));
+        }
+    }
+
+    private void ajuster(Etat etat, int delta) {
+        if (etat == Etat.RUPTURE) {
+            ruptures.addAndGet(delta);
+            sousSeuil.addAndGet(delta);
+        } else if (etat == Etat.SOUS_SEUIL) {
+            sousSeuil.addAndGet(delta);
+        }
+    }
+}
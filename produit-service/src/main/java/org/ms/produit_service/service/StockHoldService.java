@@ -0,0 +1,201 @@
+package org.ms.produit_service.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.ms.produit_service.concurrent.TimingWheel;
+import org.ms.produit_service.entities.StockHold;
+import org.ms.produit_service.entities.StockHoldLigne;
+import org.ms.produit_service.repository.StockHoldRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Réservations temporaires de stock. Une réservation retient les quantités
+ * (Produit.quantiteReservee) sans toucher au stock physique, puis est confirmée
+ * (sortie de stock), libérée, ou expire à la fin de son TTL. Les expirations sont
+ * portées par une roue temporelle en mémoire, rechargée depuis la base au démarrage,
+ * et soldées sur un thread dédié pour ne pas retarder les ticks suivants. Un balayage
+ * périodique de la base expire aussi les réservations échues que la roue ne connaît pas
+ * (créées par une instance arrêtée depuis). Chaque clôture est un UPDATE conditionnel
+ * sur le statut, de sorte qu'une réservation n'est soldée qu'une fois, même entre
+ * plusieurs instances.
+ */
+@Service
+public class StockHoldService {
+    private static final Logger logger = LoggerFactory.getLogger(StockHoldService.class);
+    private static final int LOT_EXPIRATION = 500;
+
+    private final StockHoldRepository stockHoldRepository;
+    private final StockService stockService;
+    private final TransactionTemplate transactionTemplate;
+    private final TimingWheel<Long> wheel;
+    private final ExecutorService expirations = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "stock-holds-expiration");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Long, TimingWheel<Long>.Timeout> timeouts = new ConcurrentHashMap<>();
+    private final Duration ttlMax;
+
+    public StockHoldService(StockHoldRepository stockHoldRepository, StockService stockService,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${stock.holds.tick:1s}") Duration tick,
+                            @Value("${stock.holds.wheel-size:512}") int wheelSize,
+                            @Value("${stock.holds.ttl-max:24h}") Duration ttlMax) {
+        this.stockHoldRepository = stockHoldRepository;
+        this.stockService = stockService;
+        this.transactionTemplate = transactionTemplate;
+        this.ttlMax = ttlMax;
+        // Le thread de la roue ne fait que remettre les échéances ; les écritures en base se font à côté
+        this.wheel = new TimingWheel<>("stock-holds", tick, wheelSize, ids -> expirations.execute(() -> expirer(ids)));
+    }
+
+    // Réservations ouvertes avant un redémarrage ; celles déjà échues expirent au premier tick
+    @PostConstruct
+    public void recharger() {
+        List<StockHold> actives = stockHoldRepository.findByStatut(StockHold.ACTIVE);
+        actives.forEach(hold -> planifier(hold.getId(), hold.getExpireLe()));
+        if (!actives.isEmpty()) {
+            logger.info("{} réservation(s) de stock active(s) rechargée(s)", actives.size());
+        }
+    }
+
+    // Réservations échues restées actives : roue perdue avec une instance, ou expiration en échec
+    @Scheduled(fixedDelayString = "${stock.holds.balayage:1m}", initialDelayString = "${stock.holds.balayage:1m}")
+    public void balayer() {
+        List<Long> echues = stockHoldRepository.findIdsEchues(new Date());
+        for (int debut = 0; debut < echues.size(); debut += LOT_EXPIRATION) {
+            expirer(echues.subList(debut, Math.min(debut + LOT_EXPIRATION, echues.size())));
+        }
+    }
+
+    @PreDestroy
+    public void arreter() {
+        wheel.close();
+        expirations.shutdown();
+    }
+
+    // Quantités par produit, triées par ID ; tout ou rien
+    public StockHold creer(Map<Long, Long> demandes, Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero() || ttl.compareTo(ttlMax) > 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "TTL invalide (maximum " + ttlMax + ")");
+        }
+        return transactionTemplate.execute(status -> {
+            StockHold hold = new StockHold();
+            hold.setStatut(StockHold.ACTIVE);
+            hold.setExpireLe(new Date(System.currentTimeMillis() + ttl.toMillis()));
+            for (Map.Entry<Long, Long> demande : demandes.entrySet()) {
+                if (!stockService.reserver(demande.getKey(), demande.getValue())) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                            "Stock disponible insuffisant pour le produit ID : " + demande.getKey());
+                }
+                hold.getLignes().add(new StockHoldLigne(demande.getKey(), demande.getValue()));
+            }
+            StockHold saved = stockHoldRepository.save(hold);
+            apresCommit(() -> planifier(saved.getId(), saved.getExpireLe()));
+            return saved;
+        });
+    }
+
+    public StockHold confirmer(Long id) {
+        return cloturer(id, StockHold.CONFIRMEE);
+    }
+
+    public StockHold liberer(Long id) {
+        return cloturer(id, StockHold.LIBEREE);
+    }
+
+    private StockHold cloturer(Long id, String statut) {
+        return transactionTemplate.execute(status -> {
+            StockHold hold = stockHoldRepository.findById(id).orElseThrow(() -> new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, "Réservation non trouvée pour l'ID : " + id));
+            // Échue mais pas encore traitée par la roue : elle ne peut plus être confirmée
+            if (StockHold.CONFIRMEE.equals(statut) && hold.getExpireLe().before(new Date())) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Réservation expirée");
+            }
+            if (stockHoldRepository.cloturer(id, statut) == 0) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Réservation déjà " + hold.getStatut());
+            }
+            solder(hold, statut);
+            hold.setStatut(statut);
+            apresCommit(() -> {
+                TimingWheel<Long>.Timeout timeout = timeouts.remove(id);
+                if (timeout != null) {
+                    timeout.annuler();
+                }
+            });
+            return hold;
+        });
+    }
+
+    // Réservations échues d'un tick de la roue ou d'un lot du balayage, en une transaction
+    private void expirer(List<Long> ids) {
+        for (Long id : ids) {
+            TimingWheel<Long>.Timeout timeout = timeouts.remove(id);
+            if (timeout != null) {
+                timeout.annuler();
+            }
+        }
+        try {
+            int expirees = transactionTemplate.execute(status -> {
+                int n = 0;
+                for (Long id : ids) {
+                    if (stockHoldRepository.cloturer(id, StockHold.EXPIREE) > 0) {
+                        stockHoldRepository.findById(id).ifPresent(hold -> solder(hold, StockHold.EXPIREE));
+                        n++;
+                    }
+                }
+                return n;
+            });
+            if (expirees > 0) {
+                logger.info("{} réservation(s) de stock expirée(s)", expirees);
+            }
+        } catch (RuntimeException e) {
+            // Nouvel essai au tick suivant plutôt qu'un stock retenu indéfiniment
+            logger.error("Échec de l'expiration de {} réservation(s), nouvel essai", ids.size(), e);
+            ids.forEach(id -> planifier(id, new Date()));
+        }
+    }
+
+    private void solder(StockHold hold, String statut) {
+        for (StockHoldLigne ligne : hold.getLignes()) {
+            boolean ok = StockHold.CONFIRMEE.equals(statut)
+                    ? stockService.confirmer(ligne.getProduitId(), ligne.getQuantity())
+                    : stockService.liberer(ligne.getProduitId(), ligne.getQuantity());
+            if (!ok) {
+                // Produit supprimé entre-temps : rien à rendre
+                logger.warn("Réservation {} : quantité réservée introuvable pour le produit {}", hold.getId(),
+                        ligne.getProduitId());
+            }
+        }
+    }
+
+    private void planifier(Long id, Date expireLe) {
+        timeouts.put(id, wheel.planifier(id, expireLe.getTime()));
+    }
+
+    private static void apresCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
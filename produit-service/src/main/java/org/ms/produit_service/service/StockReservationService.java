@@ -0,0 +1,152 @@
+package org.ms.produit_service.service;
+
+import org.ms.produit_service.dto.ReservationLigne;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.entities.StockReservation;
+import org.ms.produit_service.entities.StockReservationLigne;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.repository.StockReservationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Réservations de stock des factures, idempotentes par ID de réservation. Une réservation
+ * rejouée (nouvel essai après un délai dépassé) renvoie les prix enregistrés sans décrémenter
+ * à nouveau ; une libération rejouée ne rend rien de plus. Une libération qui précède sa
+ * réservation laisse une trace LIBEREE : la réservation arrivée en retard est refusée.
+ */
+@Service
+public class StockReservationService {
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+
+    private final StockReservationRepository stockReservationRepository;
+    private final ProduitRepository produitRepository;
+    private final StockService stockService;
+    private final StockAlerteService stockAlerteService;
+    private final TransactionTemplate transactionTemplate;
+
+    public StockReservationService(StockReservationRepository stockReservationRepository,
+                                   ProduitRepository produitRepository, StockService stockService,
+                                   StockAlerteService stockAlerteService, TransactionTemplate transactionTemplate) {
+        this.stockReservationRepository = stockReservationRepository;
+        this.produitRepository = produitRepository;
+        this.stockService = stockService;
+        this.stockAlerteService = stockAlerteService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // Toutes les lignes ou aucune ; demandes : quantités cumulées par produit, triées par ID
+    public List<ReservationLigne> reserver(String id, List<ReservationLigne> lignes, Map<Long, Long> demandes) {
+        try {
+            return transactionTemplate.execute(status -> {
+                Optional<StockReservation> existante = stockReservationRepository.findById(id);
+                if (existante.isPresent()) {
+                    return rejouer(existante.get(), lignes, demandes);
+                }
+                // Insérée avant tout mouvement : un doublon concurrent échoue ici, sans toucher au stock
+                StockReservation reservation = stockReservationRepository.saveAndFlush(
+                        new StockReservation(id, StockReservation.RESERVEE, new Date(), new ArrayList<>()));
+                decrementer(reservation, demandes);
+                return rejouer(reservation, lignes, demandes);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Même réservation traitée en parallèle : la première l'a emporté
+            return transactionTemplate.execute(status -> stockReservationRepository.findById(id)
+                    .map(reservation -> rejouer(reservation, lignes, demandes))
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT,
+                            "Réservation en cours de traitement : " + id)));
+        }
+    }
+
+    public void liberer(String id) {
+        try {
+            libererUneFois(id);
+        } catch (DataIntegrityViolationException e) {
+            // La réservation a été enregistrée pendant que la trace de libération était créée
+            libererUneFois(id);
+        }
+    }
+
+    private void libererUneFois(String id) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Optional<StockReservation> existante = stockReservationRepository.findByIdForUpdate(id);
+            if (existante.isEmpty()) {
+                stockReservationRepository.saveAndFlush(
+                        new StockReservation(id, StockReservation.LIBEREE, new Date(), new ArrayList<>()));
+                logger.info("Réservation {} libérée avant d'être reçue : elle sera refusée", id);
+                return;
+            }
+            StockReservation reservation = existante.get();
+            if (StockReservation.LIBEREE.equals(reservation.getStatut())) {
+                return;
+            }
+            for (StockReservationLigne ligne : reservation.getLignes()) {
+                if (!stockService.incrementer(ligne.getProduitId(), ligne.getQuantity())) {
+                    // Produit supprimé entre-temps : rien à rendre
+                    logger.warn("Réservation {} : produit {} introuvable à la libération", id, ligne.getProduitId());
+                }
+            }
+            reservation.setStatut(StockReservation.LIBEREE);
+        });
+    }
+
+    private void decrementer(StockReservation reservation, Map<Long, Long> demandes) {
+        Map<Long, Produit> produits = produitRepository.findAllByIdInForUpdate(demandes.keySet()).stream()
+                .collect(Collectors.toMap(Produit::getId, p -> p));
+        for (Map.Entry<Long, Long> demande : demandes.entrySet()) {
+            Produit produit = produits.get(demande.getKey());
+            if (produit == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Produit non trouvé pour l'ID : " + demande.getKey());
+            }
+            if (produit.getDisponible() < demande.getValue()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Stock insuffisant pour " + produit.getName()
+                        + ": disponible " + produit.getDisponible() + ", requis " + demande.getValue());
+            }
+        }
+        for (Map.Entry<Long, Long> demande : demandes.entrySet()) {
+            Produit produit = produits.get(demande.getKey());
+            produit.setQuantity(produit.getQuantity() - demande.getValue());
+            stockAlerteService.alerter(produit);
+            reservation.getLignes().add(new StockReservationLigne(produit.getId(), demande.getValue(), produit.getPrice()));
+        }
+        produitRepository.saveAll(produits.values());
+    }
+
+    // Prix enregistrés, dans l'ordre des lignes demandées
+    private static List<ReservationLigne> rejouer(StockReservation reservation, List<ReservationLigne> lignes,
+                                                  Map<Long, Long> demandes) {
+        if (StockReservation.LIBEREE.equals(reservation.getStatut())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Réservation déjà libérée : " + reservation.getId());
+        }
+        Map<Long, Long> quantites = new TreeMap<>();
+        Map<Long, Double> prix = new HashMap<>();
+        for (StockReservationLigne ligne : reservation.getLignes()) {
+            quantites.put(ligne.getProduitId(), ligne.getQuantity());
+            prix.put(ligne.getProduitId(), ligne.getPrice());
+        }
+        if (!quantites.equals(demandes)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Réservation " + reservation.getId() + " déjà enregistrée avec d'autres lignes");
+        }
+        List<ReservationLigne> reservees = new ArrayList<>();
+        for (ReservationLigne ligne : lignes) {
+            reservees.add(new ReservationLigne(ligne.getProduitId(), ligne.getQuantity(), prix.get(ligne.getProduitId())));
+        }
+        return reservees;
+    }
+}
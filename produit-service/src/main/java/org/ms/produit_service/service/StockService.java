@@ -0,0 +1,160 @@
+package org.ms.produit_service.service;
+
+import org.ms.produit_service.dto.NiveauStock;
+import org.ms.produit_service.entities.StockLease;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.repository.StockLeaseRepository;
+import org.ms.produit_service.service.StockAlerteService.Niveau;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Mouvements de stock par UPDATE conditionnel, sans lecture préalable de l'entité :
+ * des commandes concurrentes sur un même produit se sérialisent sur le verrou de ligne
+ * le temps d'une instruction au lieu d'échouer sur la version. Ces UPDATE contournent
+ * les rappels JPA : le niveau est relu dans la même transaction, sous le verrou de ligne,
+ * pour tenir à jour les compteurs d'alerte.
+ */
+@Service
+public class StockService {
+    private final ProduitRepository produitRepository;
+    private final StockAlerteService stockAlerteService;
+    private final StockLeaseRepository stockLeaseRepository;
+
+    public StockService(ProduitRepository produitRepository, StockAlerteService stockAlerteService,
+                        StockLeaseRepository stockLeaseRepository) {
+        this.produitRepository = produitRepository;
+        this.stockAlerteService = stockAlerteService;
+        this.stockLeaseRepository = stockLeaseRepository;
+    }
+
+    // false si le stock est insuffisant ou le produit inexistant
+    @Transactional
+    public boolean decrementer(Long id, long quantite) {
+        if (produitRepository.decrementerStock(id, quantite) == 0) {
+            return false;
+        }
+        apresMouvement(id, quantite);
+        return true;
+    }
+
+    @Transactional
+    public boolean incrementer(Long id, long quantite) {
+        if (produitRepository.incrementerStock(id, quantite) == 0) {
+            return false;
+        }
+        apresMouvement(id, -quantite);
+        return true;
+    }
+
+    // Met de côté sans toucher au stock physique ; false si le disponible est insuffisant
+    @Transactional
+    public boolean reserver(Long id, long quantite) {
+        return produitRepository.reserverQuantite(id, quantite) > 0;
+    }
+
+    @Transactional
+    public boolean liberer(Long id, long quantite) {
+        return produitRepository.libererQuantite(id, quantite) > 0;
+    }
+
+    // Transforme une quantité réservée en sortie de stock
+    @Transactional
+    public boolean confirmer(Long id, long quantite) {
+        if (produitRepository.confirmerQuantite(id, quantite) == 0) {
+            return false;
+        }
+        apresMouvement(id, quantite);
+        return true;
+    }
+
+    // --- Baux du stock en mémoire (voir HotStockEngine) ---
+
+    // Réserve jusqu'à quantite unités pour le stock en mémoire d'une instance, moins si le disponible
+    // ne suffit pas ; le bail en garde la trace pour les rendre si l'instance s'arrête net
+    @Transactional
+    public long louer(String instance, Long id, long quantite) {
+        long disponible = produitRepository.findDisponibleForUpdate(id).orElse(0L);
+        long loue = Math.min(disponible, quantite);
+        if (loue <= 0 || produitRepository.reserverQuantite(id, loue) == 0) {
+            return 0;
+        }
+        String bail = bail(instance, id);
+        Date maintenant = new Date();
+        if (stockLeaseRepository.ajouter(bail, loue, maintenant) == 0) {
+            stockLeaseRepository.save(new StockLease(bail, instance, id, loue, maintenant));
+        }
+        return loue;
+    }
+
+    // Solde une partie du bail : les unités vendues sortent du stock, les rendues redeviennent
+    // disponibles. false, sans aucune écriture, si le bail a été repris entre-temps
+    @Transactional
+    public boolean solder(String instance, Long id, long vendues, long rendues) {
+        String bail = bail(instance, id);
+        if (stockLeaseRepository.retirer(bail, vendues + rendues, new Date()) == 0) {
+            return false;
+        }
+        if (vendues > 0 && !confirmer(id, vendues)) {
+            throw new IllegalStateException("Quantité réservée insuffisante pour le bail " + bail);
+        }
+        if (rendues > 0 && !liberer(id, rendues)) {
+            throw new IllegalStateException("Quantité réservée insuffisante pour le bail " + bail);
+        }
+        stockLeaseRepository.supprimerSiVide(bail);
+        return true;
+    }
+
+    @Transactional
+    public boolean prolonger(String instance, Long id) {
+        return stockLeaseRepository.prolonger(bail(instance, id), new Date()) > 0;
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockLease> bauxEchus(Date limite) {
+        return stockLeaseRepository.findByMajLeBefore(limite);
+    }
+
+    // Rend les unités d'un bail non prolongé depuis limite ; false s'il a été prolongé ou repris entre-temps
+    @Transactional
+    public boolean reprendre(StockLease bail, Date limite) {
+        if (stockLeaseRepository.reprendre(bail.getId(), limite) == 0) {
+            return false;
+        }
+        if (bail.getQuantite() > 0 && !liberer(bail.getProduitId(), bail.getQuantite())) {
+            throw new IllegalStateException("Quantité réservée insuffisante pour le bail " + bail.getId());
+        }
+        return true;
+    }
+
+    private static String bail(String instance, Long id) {
+        return instance + ":" + id;
+    }
+
+    private void apresMouvement(Long id, long decrement) {
+        NiveauStock niveau = produitRepository.findNiveauStockById(id).orElseThrow();
+        Niveau apres = new Niveau(niveau.getQuantity(), niveau.getSeuilReappro(), niveau.getCategorieId());
+        Niveau avant = new Niveau(niveau.getQuantity() + decrement, niveau.getSeuilReappro(), niveau.getCategorieId());
+        Runnable suivi = () -> {
+            stockAlerteService.transition(avant, apres);
+            if (decrement > 0) {
+                stockAlerteService.alerter(niveau.getName(), apres);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    suivi.run();
+                }
+            });
+        } else {
+            suivi.run();
+        }
+    }
+}
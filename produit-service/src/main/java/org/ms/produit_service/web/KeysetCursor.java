@@ -0,0 +1,51 @@
+package org.ms.produit_service.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * Jeton opaque de pagination par clé (seek) : encode la clé de tri et l'ID
+ * du dernier élément renvoyé, pour reprendre la lecture juste après lui.
+ */
+final class KeysetCursor {
+    static final int MAX_SIZE = 1000;
+
+    private KeysetCursor() {
+    }
+
+    record Position<K>(K sortKey, Long id) {
+    }
+
+    static String encode(String sortKey, Long id) {
+        String raw = sortKey + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Un jeton vide désigne la première page ; la clé de tri est relue par sortKeyParser,
+    // de sorte qu'un jeton altéré donne toujours un 400
+    static <K> Position<K> decode(String token, Function<String, K> sortKeyParser) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new Position<>(sortKeyParser.apply(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Curseur de pagination invalide");
+        }
+    }
+
+    static int checkSize(int size) {
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "La taille de page doit être comprise entre 1 et " + MAX_SIZE);
+        }
+        return size;
+    }
+}
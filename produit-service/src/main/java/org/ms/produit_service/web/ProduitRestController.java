@@ -1,15 +1,27 @@
 package org.ms.produit_service.web;
 
+import org.ms.produit_service.dto.ReservationLigne;
 import org.ms.produit_service.entities.Categorie;
 import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.entities.StockHold;
 import org.ms.produit_service.feign.FactureServiceClient;
 import org.ms.produit_service.repository.CategorieRepository;
 import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.repository.StockHoldRepository;
+import org.ms.produit_service.service.CategorieCache;
+import org.ms.produit_service.service.HotStockEngine;
+import org.ms.produit_service.service.NgramIndex;
+import org.ms.produit_service.service.RechercheService;
+import org.ms.produit_service.service.StockAlerteService;
+import org.ms.produit_service.service.StockHoldService;
+import org.ms.produit_service.service.StockReservationService;
+import org.ms.produit_service.service.StockService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.hateoas.PagedModel;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -18,8 +30,14 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
 import jakarta.validation.Valid;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 //@CrossOrigin(origins = "http://localhost:4200")
@@ -29,8 +47,19 @@ import java.util.stream.Collectors;
 public class ProduitRestController {
 	private final ProduitRepository produitRepository;
 	private final CategorieRepository categorieRepository;
+	private final CategorieCache categorieCache;
+	private final StockAlerteService stockAlerteService;
+	private final StockService stockService;
+	private final HotStockEngine hotStockEngine;
+	private final StockHoldService stockHoldService;
+	private final StockHoldRepository stockHoldRepository;
+	private final StockReservationService stockReservationService;
+	private final RechercheService rechercheService;
 	private final FactureServiceClient factureServiceClient;
 
+	private static final int MAX_RECHERCHE = 200;
+	private static final int MAX_AUTOCOMPLETE = 50;
+
 	@Value("${globalParam:0}")
 	private int globalParam;
 	@Value("${monParam:0}")
@@ -39,9 +68,20 @@ public class ProduitRestController {
 	private String email;
 
 	public ProduitRestController(ProduitRepository produitRepository, CategorieRepository categorieRepository,
+			CategorieCache categorieCache, StockAlerteService stockAlerteService, StockService stockService,
+			HotStockEngine hotStockEngine, StockHoldService stockHoldService, StockHoldRepository stockHoldRepository,
+			StockReservationService stockReservationService, RechercheService rechercheService,
 			FactureServiceClient factureServiceClient) {
 		this.produitRepository = produitRepository;
 		this.categorieRepository = categorieRepository;
+		this.categorieCache = categorieCache;
+		this.stockAlerteService = stockAlerteService;
+		this.stockService = stockService;
+		this.hotStockEngine = hotStockEngine;
+		this.stockHoldService = stockHoldService;
+		this.stockHoldRepository = stockHoldRepository;
+		this.stockReservationService = stockReservationService;
+		this.rechercheService = rechercheService;
 		this.factureServiceClient = factureServiceClient;
 	}
 
@@ -52,23 +92,40 @@ public class ProduitRestController {
 	public ResponseEntity<Map<String, Object>> list(@RequestParam(defaultValue = "0") int page,
 			@RequestParam(defaultValue = "10") int size) {
 
-		Page<Produit> productPage = produitRepository.findAll(PageRequest.of(page, size));
-
-		List<Produit> produitsAvecCategories = productPage.getContent().stream().map(produit -> {
-			if (produit.getCategorie() != null) {
-				Categorie categorie = categorieRepository.findById(produit.getCategorie().getId()).orElse(null);
-				produit.setCategorie(categorie);
-			}
-			return produit;
-		}).collect(Collectors.toList());
+		// Catégories chargées par jointure : une requête pour la page, une pour le comptage
+		Page<Produit> productPage = produitRepository.findAllWithCategories(PageRequest.of(page, size));
 
-		Map<String, Object> response = Map.of("_embedded", Map.of("produits", produitsAvecCategories), "page",
+		Map<String, Object> response = Map.of("_embedded", Map.of("produits", productPage.getContent()), "page",
 				Map.of("size", productPage.getSize(), "totalElements", productPage.getTotalElements(), "totalPages",
 						productPage.getTotalPages(), "number", productPage.getNumber()));
 
 		return ResponseEntity.ok(response);
 	}
 
+	// Pagination par curseur (tri par nom) : un jeton vide (after=) demande la première page
+	@GetMapping(params = "after")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public ResponseEntity<Map<String, Object>> listAfter(@RequestParam String after,
+			@RequestParam(defaultValue = "10") int size, @RequestParam(defaultValue = "false") boolean withCount) {
+		KeysetCursor.checkSize(size);
+		KeysetCursor.Position<String> position = KeysetCursor.decode(after, Function.identity());
+		List<Produit> produits = produitRepository.findPageAfter(position != null ? position.sortKey() : null,
+				position != null ? position.id() : null, PageRequest.of(0, size + 1));
+		String next = null;
+		if (produits.size() > size) {
+			produits = produits.subList(0, size);
+			Produit last = produits.get(size - 1);
+			next = KeysetCursor.encode(last.getName(), last.getId());
+		}
+		Map<String, Object> response = new HashMap<>();
+		response.put("_embedded", Map.of("produits", produits));
+		response.put("next", next);
+		if (withCount) {
+			response.put("totalElements", produitRepository.count());
+		}
+		return ResponseEntity.ok(response);
+	}
+
 	@GetMapping("/{id}")
 	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
 	public Produit getOne(@PathVariable Long id) {
@@ -76,13 +133,23 @@ public class ProduitRestController {
 				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Produit non trouvé pour l'ID : " + id));
 	}
 
+	// Résolution en masse : un seul aller-retour pour toutes les lignes d'une page de factures
+	@PostMapping("/batch")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public List<Produit> getByIds(@RequestBody Set<Long> ids) {
+		if (ids == null || ids.isEmpty()) {
+			return List.of();
+		}
+		return produitRepository.findAllWithCategoriesByIdIn(ids);
+	}
+
 	@PostMapping
 	@PreAuthorize("hasAuthority('ADMIN')")
 	@ResponseStatus(HttpStatus.CREATED)
 	public Produit save(@Valid @RequestBody Produit produit) {
-		if (produit.getCategorie() != null && produit.getCategorie().getId() != null) {
-			categorieRepository.findById(produit.getCategorie().getId())
-					.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Catégorie non trouvée"));
+		if (produit.getCategorie() != null && produit.getCategorie().getId() != null
+				&& !categorieCache.existsById(produit.getCategorie().getId())) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Catégorie non trouvée");
 		}
 		return produitRepository.save(produit);
 	}
@@ -93,9 +160,9 @@ public class ProduitRestController {
 		if (!produitRepository.existsById(id)) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Produit non trouvé pour l'ID : " + id);
 		}
-		if (produit.getCategorie() != null && produit.getCategorie().getId() != null) {
-			categorieRepository.findById(produit.getCategorie().getId())
-					.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Catégorie non trouvée"));
+		if (produit.getCategorie() != null && produit.getCategorie().getId() != null
+				&& !categorieCache.existsById(produit.getCategorie().getId())) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Catégorie non trouvée");
 		}
 		produit.setId(id);
 		return produitRepository.save(produit);
@@ -111,32 +178,60 @@ public class ProduitRestController {
 		produitRepository.deleteById(id);
 	}
 
+	// Le total vient du compteur d'alertes : une seule requête, pour la page
 	@GetMapping("/rupture")
 	public ResponseEntity<PagedModel<Produit>> getProduitsEnRupture(@RequestParam(defaultValue = "0") int page,
 			@RequestParam(defaultValue = "10") int size) {
-		List<Produit> outOfStockProducts = produitRepository.findAll().stream().filter(p -> p.getQuantity() == 0)
-				.collect(Collectors.toList());
-		int start = Math.min(page * size, outOfStockProducts.size());
-		int end = Math.min(start + size, outOfStockProducts.size());
-		List<Produit> pagedProducts = outOfStockProducts.subList(start, end);
-		Page<Produit> productPage = new PageImpl<>(pagedProducts, PageRequest.of(page, size),
-				outOfStockProducts.size());
-		PagedModel<Produit> pagedModel = PagedModel.of(productPage.getContent(),
-				new PagedModel.PageMetadata(productPage.getSize(), productPage.getNumber(),
-						productPage.getTotalElements(), productPage.getTotalPages()));
-		return ResponseEntity.ok(pagedModel);
+		List<Produit> produits = produitRepository.findRuptures(PageRequest.of(page, size));
+		return ResponseEntity.ok(pagedModel(produits, page, size, stockAlerteService.ruptures()));
+	}
+
+	// Produits au seuil de réapprovisionnement ou en dessous, ruptures comprises, les plus bas d'abord
+	@GetMapping("/sous-seuil")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public ResponseEntity<PagedModel<Produit>> getProduitsSousSeuil(@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "10") int size) {
+		List<Produit> produits = produitRepository.findSousSeuil(stockAlerteService.seuilMax(),
+				stockAlerteService.seuilParDefaut(), PageRequest.of(page, size));
+		return ResponseEntity.ok(pagedModel(produits, page, size, stockAlerteService.sousSeuil()));
+	}
+
+	@GetMapping("/stock/alertes")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public Map<String, Long> getAlertesStock() {
+		return Map.of("ruptures", stockAlerteService.ruptures(), "sousSeuil", stockAlerteService.sousSeuil());
+	}
+
+	private static PagedModel<Produit> pagedModel(List<Produit> produits, int page, int size, long total) {
+		return PagedModel.of(produits,
+				new PagedModel.PageMetadata(size, page, total, size > 0 ? (total + size - 1) / size : 0));
 	}
 
 	@GetMapping("/top-vendus")
 	public ResponseEntity<PagedModel<Produit>> getTopVendus(@RequestParam(defaultValue = "10") int limit,
 			@RequestParam(required = false) Integer annee, @RequestParam(defaultValue = "0") int page,
 			@RequestParam(defaultValue = "10") int size) {
-		List<Produit> produits = produitRepository.findAll();
-		Map<Long, Long> quantites = produits.stream().collect(Collectors.toMap(Produit::getId,
-				p -> factureServiceClient.getQuantiteVendueByProduit(p.getId(), annee)));
-		List<Produit> sortedProduits = produits.stream().sorted(
-				(p1, p2) -> quantites.getOrDefault(p2.getId(), 0L).compareTo(quantites.getOrDefault(p1.getId(), 0L)))
-				.limit(limit).collect(Collectors.toList());
+		// Un seul appel à facture-service pour les quantités de tous les produits
+		Map<Long, Long> quantites = factureServiceClient.getQuantitesVenduesParProduit(annee);
+		List<Long> topIds = quantites.entrySet().stream()
+				.sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+				.limit(limit).map(Map.Entry::getKey).collect(Collectors.toList());
+		Map<Long, Produit> produitsById = topIds.isEmpty() ? Map.of()
+				: produitRepository.findAllWithCategoriesByIdIn(topIds).stream()
+						.collect(Collectors.toMap(Produit::getId, p -> p));
+		List<Produit> sortedProduits = topIds.stream().map(produitsById::get).filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		// Compléter avec des produits non vendus si le classement est plus court que la limite
+		if (sortedProduits.size() < limit) {
+			for (Produit produit : produitRepository.findAll(PageRequest.of(0, limit + topIds.size(), Sort.by("id")))) {
+				if (sortedProduits.size() >= limit) {
+					break;
+				}
+				if (!produitsById.containsKey(produit.getId())) {
+					sortedProduits.add(produit);
+				}
+			}
+		}
 		int start = Math.min(page * size, sortedProduits.size());
 		int end = Math.min(start + size, sortedProduits.size());
 		List<Produit> pagedProducts = sortedProduits.subList(start, end);
@@ -153,7 +248,11 @@ public class ProduitRestController {
 	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
 	public ResponseEntity<PagedModel<Categorie>> listCategories(@RequestParam(defaultValue = "0") int page,
 			@RequestParam(defaultValue = "10") int size) {
-		Page<Categorie> categoriePage = categorieRepository.findAll(PageRequest.of(page, size));
+		List<Categorie> categories = categorieCache.findAll();
+		int start = Math.min(page * size, categories.size());
+		int end = Math.min(start + size, categories.size());
+		Page<Categorie> categoriePage = new PageImpl<>(categories.subList(start, end), PageRequest.of(page, size),
+				categories.size());
 		PagedModel<Categorie> pagedModel = PagedModel.of(categoriePage.getContent(),
 				new PagedModel.PageMetadata(categoriePage.getSize(), categoriePage.getNumber(),
 						categoriePage.getTotalElements(), categoriePage.getTotalPages()));
@@ -163,10 +262,16 @@ public class ProduitRestController {
 	@GetMapping("/categories/{id}")
 	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
 	public Categorie getCategorie(@PathVariable Long id) {
-		return categorieRepository.findById(id).orElseThrow(
+		return categorieCache.findById(id).orElseThrow(
 				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Catégorie non trouvée pour l'ID : " + id));
 	}
 
+	@GetMapping("/categories/{id}/produits/ids")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public List<Long> getProduitIdsByCategorie(@PathVariable Long id) {
+		return produitRepository.findIdsByCategorieId(id);
+	}
+
 	@PostMapping("/categories")
 	@PreAuthorize("hasAuthority('ADMIN')")
 	@ResponseStatus(HttpStatus.CREATED)
@@ -177,7 +282,7 @@ public class ProduitRestController {
 	@PutMapping("/categories/{id}")
 	@PreAuthorize("hasAuthority('ADMIN')")
 	public Categorie updateCategorie(@PathVariable Long id, @Valid @RequestBody Categorie categorie) {
-		if (!categorieRepository.existsById(id)) {
+		if (!categorieCache.existsById(id)) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Catégorie non trouvée pour l'ID : " + id);
 		}
 		categorie.setId(id);
@@ -188,7 +293,7 @@ public class ProduitRestController {
 	@PreAuthorize("hasAuthority('ADMIN')")
 	@ResponseStatus(HttpStatus.NO_CONTENT)
 	public void deleteCategorie(@PathVariable Long id) {
-		if (!categorieRepository.existsById(id)) {
+		if (!categorieCache.existsById(id)) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Catégorie non trouvée pour l'ID : " + id);
 		}
 		if (produitRepository.existsByCategorieId(id)) {
@@ -204,41 +309,176 @@ public class ProduitRestController {
 				Thread.currentThread().toString());
 	}
 
+	// Servie par l'index de recherche, sans accents ni casse, les meilleurs résultats d'abord ; toutes
+	// les correspondances sans limit. Si l'index s'arrête à son budget, ou pour un mot d'une ou deux
+	// lettres qu'il ne cherche qu'en début de mot, la requête en base prend le relais
 	@GetMapping("/search/byName")
-	public List<Produit> searchProduitsByName(@RequestParam String name) {
-		return produitRepository.findByNameContainingIgnoreCase(name);
+	public List<Produit> searchProduitsByName(@RequestParam String name,
+			@RequestParam(required = false) Integer limit) {
+		int borne = limit == null ? Integer.MAX_VALUE : borner(limit, MAX_RECHERCHE);
+		NgramIndex.Recherche recherche = rechercheService.rechercherProduits(name, borne);
+		if (!recherche.complete()) {
+			return produitRepository.findByNameContainingIgnoreCase(name).stream().limit(borne)
+					.collect(Collectors.toList());
+		}
+		List<Long> ids = recherche.resultats().stream().map(NgramIndex.Resultat::id).collect(Collectors.toList());
+		if (ids.isEmpty()) {
+			return List.of();
+		}
+		Map<Long, Produit> produitsById = produitRepository.findAllWithCategoriesByIdIn(ids).stream()
+				.collect(Collectors.toMap(Produit::getId, p -> p));
+		return ids.stream().map(produitsById::get).filter(Objects::nonNull).collect(Collectors.toList());
 	}
 
 	@GetMapping("/categories/search/byName")
-	public List<Categorie> searchCategoriesByName(@RequestParam String name) {
-		return categorieRepository.findByNameContainingIgnoreCase(name);
+	public List<Categorie> searchCategoriesByName(@RequestParam String name,
+			@RequestParam(required = false) Integer limit) {
+		int borne = limit == null ? Integer.MAX_VALUE : borner(limit, MAX_RECHERCHE);
+		NgramIndex.Recherche recherche = rechercheService.rechercherCategories(name, borne);
+		if (!recherche.complete()) {
+			return categorieRepository.findByNameContainingIgnoreCase(name).stream().limit(borne)
+					.collect(Collectors.toList());
+		}
+		return recherche.resultats().stream()
+				.map(resultat -> categorieCache.findById(resultat.id()).orElse(null)).filter(Objects::nonNull)
+				.collect(Collectors.toList());
+	}
+
+	// Suggestions pour la saisie : ID et nom seulement, sans accès à la base
+	@GetMapping("/autocomplete")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public Map<String, List<NgramIndex.Resultat>> autocomplete(@RequestParam String q,
+			@RequestParam(defaultValue = "10") int limit) {
+		int borne = borner(limit, MAX_AUTOCOMPLETE);
+		return Map.of("produits", rechercheService.produits(q, borne),
+				"categories", rechercheService.categories(q, borne));
+	}
+
+	private static int borner(int limit, int max) {
+		return Math.max(1, Math.min(limit, max));
 	}
 //http://localhost:8082/produits/search/byName?name=HP
 	// GET http://localhost:8082/produits/search/byName?name=dell
 
+	// UPDATE conditionnel, ou stock en mémoire pour les produits très demandés : pas de conflit de version
 	@PutMapping("/{id}/decreaseStock")
     public ResponseEntity<Produit> decreaseStock(@PathVariable Long id, @RequestParam int quantity) {
+        if (quantity <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La quantité doit être positive");
+        }
+        boolean decremente = hotStockEngine.estActif(id) ? hotStockEngine.decrementer(id, quantity)
+                : stockService.decrementer(id, quantity);
         Produit produit = produitRepository.findById(id)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Produit non trouvé"));
-
-        if (produit.getQuantity() < quantity) {
+        if (!decremente) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantité en stock insuffisante");
         }
+        return ResponseEntity.ok(produit);
+    }
+//http://localhost:8082/produits/1/decreaseStock?quantity=5
 
-        produit.setQuantity(produit.getQuantity() - quantity);
-        Produit updatedProduit = produitRepository.save(produit);
+	// --- Hot SKU Endpoints ---
 
-        // Vérifier seuil critique (exemple seuil = 5)
-        int seuilCritique = 5;
-        if (updatedProduit.getQuantity() <= seuilCritique) {
-            // Log de l’alerte
-            System.out.println("ALERTE : Stock critique pour le produit " + updatedProduit.getName() + ", quantité restante : " + updatedProduit.getQuantity());
-            // TODO : envoyer notification (email, message, event Kafka/RabbitMQ)
-        }
+	@GetMapping("/stock/hot")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public Map<Long, Long> getProduitsHot() {
+		Map<Long, Long> enMemoire = new TreeMap<>();
+		hotStockEngine.produitsActifs().forEach(id -> enMemoire.put(id, hotStockEngine.enMemoire(id)));
+		return enMemoire;
+	}
+
+	@PutMapping("/{id}/stock/hot")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public void activerStockHot(@PathVariable Long id) {
+		if (!produitRepository.existsById(id)) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Produit non trouvé pour l'ID : " + id);
+		}
+		hotStockEngine.activer(id);
+	}
+
+	// Rend à la base le stock prélevé et non vendu
+	@DeleteMapping("/{id}/stock/hot")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public void desactiverStockHot(@PathVariable Long id) {
+		hotStockEngine.desactiver(id);
+	}
+
+	// --- Stock Reservation Endpoints ---
+
+	// Vérifie et décrémente le stock de toutes les lignes d'une commande dans une seule transaction :
+	// si une ligne échoue, aucune quantité n'est retirée. Rejouée avec le même reservationId,
+	// elle renvoie la réservation enregistrée sans décrémenter à nouveau.
+	@PostMapping("/reservations")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public List<ReservationLigne> reserverStock(@RequestParam String reservationId,
+			@RequestBody List<ReservationLigne> lignes) {
+		return stockReservationService.reserver(verifierReservationId(reservationId), lignes,
+				regrouperParProduit(lignes));
+	}
+
+	// Compensation : remet en stock les quantités d'une réservation abandonnée, une seule fois
+	@PostMapping("/reservations/release")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public ResponseEntity<Void> libererStock(@RequestParam String reservationId) {
+		stockReservationService.liberer(verifierReservationId(reservationId));
+		return ResponseEntity.ok().build();
+	}
+
+	private static String verifierReservationId(String reservationId) {
+		if (reservationId.isBlank() || reservationId.length() > 64) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ID de réservation invalide");
+		}
+		return reservationId;
+	}
+
+	// --- Stock Hold Endpoints ---
+
+	// Met le stock de côté pour une commande en attente ; libéré automatiquement après ttl secondes
+	@PostMapping("/holds")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	@ResponseStatus(HttpStatus.CREATED)
+	public StockHold creerHold(@RequestBody List<ReservationLigne> lignes,
+			@RequestParam(defaultValue = "900") long ttl) {
+		return stockHoldService.creer(regrouperParProduit(lignes), Duration.ofSeconds(ttl));
+	}
+
+	@GetMapping("/holds/{id}")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public StockHold getHold(@PathVariable Long id) {
+		return stockHoldRepository.findById(id).orElseThrow(
+				() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Réservation non trouvée pour l'ID : " + id));
+	}
+
+	@PostMapping("/holds/{id}/confirm")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public StockHold confirmerHold(@PathVariable Long id) {
+		return stockHoldService.confirmer(id);
+	}
+
+	@DeleteMapping("/holds/{id}")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public StockHold libererHold(@PathVariable Long id) {
+		return stockHoldService.liberer(id);
+	}
+
+	// Quantités cumulées par produit, triées par ID pour verrouiller toujours dans le même ordre
+	private Map<Long, Long> regrouperParProduit(List<ReservationLigne> lignes) {
+		if (lignes == null || lignes.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La réservation doit contenir au moins une ligne");
+		}
+		Map<Long, Long> demandes = new TreeMap<>();
+		for (ReservationLigne ligne : lignes) {
+			if (ligne.getProduitId() == null || ligne.getQuantity() <= 0) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+						"Ligne invalide pour le produit ID : " + ligne.getProduitId());
+			}
+			demandes.merge(ligne.getProduitId(), ligne.getQuantity(), Long::sum);
+		}
+		return demandes;
+	}
 
-        return ResponseEntity.ok(updatedProduit);
-    }
-//http://localhost:8082/produits/1/decreaseStock?quantity=5
 
 	
 
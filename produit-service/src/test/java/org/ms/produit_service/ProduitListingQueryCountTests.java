@@ -0,0 +1,131 @@
+package org.ms.produit_service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.repository.CategorieRepository;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.service.CategorieCache;
+import org.ms.produit_service.service.CategorieCacheListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Nombre de requêtes SQL de la liste paginée des produits, et comparaison de sa latence
+ * avec l'ancienne liste (findAll puis findById de la catégorie pour chaque produit).
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+@Import({ CategorieCache.class, CategorieCacheListener.class })
+class ProduitListingQueryCountTests {
+	private static final Logger logger = LoggerFactory.getLogger(ProduitListingQueryCountTests.class);
+	private static final int PAGE_SIZE = 20;
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private ProduitRepository produitRepository;
+
+	@Autowired
+	private CategorieRepository categorieRepository;
+
+	@Autowired
+	private CategorieCache categorieCache;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		List<Categorie> categories = new ArrayList<>();
+		for (int c = 0; c < 10; c++) {
+			categories.add(entityManager.persist(new Categorie(null, "Categorie " + c, null, null)));
+		}
+		for (int p = 0; p < 200; p++) {
+			entityManager.persist(new Produit(null, "Produit " + p, 10.0, 5, 0, categories.get(p % categories.size()),
+					null, null, null));
+		}
+		entityManager.flush();
+		entityManager.clear();
+		statistics = entityManager.getEntityManager().getEntityManagerFactory()
+				.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	void pageChargeLesCategoriesParJointure() {
+		Page<Produit> page = produitRepository.findAllWithCategories(PageRequest.of(1, PAGE_SIZE));
+		page.forEach(p -> p.getCategorie().getName());
+		assertEquals(PAGE_SIZE, page.getNumberOfElements());
+		assertEquals(200, page.getTotalElements());
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void categoriesServiesSansRequeteEtInvalideesALecriture() {
+		assertEquals(10, categorieCache.findAll().size());
+		statistics.clear();
+		for (Categorie categorie : categorieCache.findAll()) {
+			assertTrue(categorieCache.existsById(categorie.getId()));
+		}
+		assertEquals(0, statistics.getPrepareStatementCount());
+
+		categorieRepository.saveAndFlush(new Categorie(null, "Nouvelle", null, null));
+		assertEquals(11, categorieCache.findAll().size());
+	}
+
+	@Test
+	void latenceParPageAvantApres() {
+		int pages = 200 / PAGE_SIZE;
+		int iterations = 20;
+
+		long avantStatements = 0;
+		long avantNanos = 0;
+		long apresStatements = 0;
+		long apresNanos = 0;
+		for (int i = 0; i < iterations; i++) {
+			for (int page = 0; page < pages; page++) {
+				// Chaque page dans un contexte de persistance vide, comme une requête HTTP
+				entityManager.clear();
+				statistics.clear();
+				long start = System.nanoTime();
+				Page<Produit> avant = produitRepository.findAll(PageRequest.of(page, PAGE_SIZE));
+				for (Produit produit : avant.getContent()) {
+					categorieRepository.findById(produit.getCategorie().getId());
+				}
+				avantNanos += System.nanoTime() - start;
+				avantStatements += statistics.getPrepareStatementCount();
+
+				entityManager.clear();
+				statistics.clear();
+				start = System.nanoTime();
+				produitRepository.findAllWithCategories(PageRequest.of(page, PAGE_SIZE))
+						.forEach(p -> p.getCategorie().getName());
+				apresNanos += System.nanoTime() - start;
+				apresStatements += statistics.getPrepareStatementCount();
+			}
+		}
+		int total = iterations * pages;
+		logger.info("Liste des produits, page de {} : avant {} µs et {} requête(s) par page, après {} µs et {} requête(s)",
+				PAGE_SIZE, avantNanos / total / 1000, (double) avantStatements / total, apresNanos / total / 1000,
+				(double) apresStatements / total);
+		assertEquals(2L * total, apresStatements);
+		assertTrue(avantStatements > apresStatements);
+	}
+}
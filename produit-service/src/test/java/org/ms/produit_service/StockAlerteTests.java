@@ -0,0 +1,152 @@
+package org.ms.produit_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.repository.CategorieRepository;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.service.CategorieCache;
+import org.ms.produit_service.service.CategorieCacheListener;
+import org.ms.produit_service.service.ProduitStockListener;
+import org.ms.produit_service.service.RechercheIndexListener;
+import org.ms.produit_service.service.RechercheService;
+import org.ms.produit_service.service.StockAlerteService;
+import org.ms.produit_service.service.StockAlerteService.Etat;
+import org.ms.produit_service.service.StockAlerteService.Niveau;
+import org.ms.produit_service.service.StockAlerteService.StockCritique;
+import org.ms.produit_service.service.StockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Seuils (produit, puis catégorie, puis défaut), requêtes sous seuil et compteurs
+ * d'alerte tenus à jour par ProduitStockListener et StockService.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RecordApplicationEvents
+@Import({ StockService.class, StockAlerteService.class, CategorieCache.class, CategorieCacheListener.class,
+		ProduitStockListener.class, RechercheService.class, RechercheIndexListener.class })
+class StockAlerteTests {
+
+	@Autowired
+	private StockAlerteService stockAlerteService;
+
+	@Autowired
+	private StockService stockService;
+
+	@Autowired
+	private ProduitRepository produitRepository;
+
+	@Autowired
+	private CategorieRepository categorieRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private ApplicationEvents events;
+
+	private Produit seuilPropre;
+	private Produit seuilCategorie;
+	private Produit seuilDefaut;
+	private Produit enStock;
+	private Produit rupture;
+
+	@BeforeEach
+	void setUp() {
+		stockAlerteService.recompter();
+		Categorie categorie = categorieRepository.save(new Categorie(null, "Accessoires", null, 10L));
+		// Seuil propre (3) prioritaire sur celui de la catégorie (10)
+		seuilPropre = produitRepository.save(new Produit(null, "Souris", 10, 4, 0, categorie, 3L, null, null));
+		seuilCategorie = produitRepository.save(new Produit(null, "Clavier", 10, 8, 0, categorie, null, null, null));
+		seuilDefaut = produitRepository.save(new Produit(null, "Câble", 10, 5, 0, null, null, null, null));
+		enStock = produitRepository.save(new Produit(null, "Écran", 10, 6, 0, null, null, null, null));
+		rupture = produitRepository.save(new Produit(null, "Casque", 10, 0, 0, categorie, null, null, null));
+	}
+
+	@AfterEach
+	void tearDown() {
+		produitRepository.deleteAll();
+		categorieRepository.deleteAll();
+	}
+
+	@Test
+	void seuilDuProduitPuisDeLaCategoriePuisParDefaut() {
+		assertEquals(3, stockAlerteService.seuil(Niveau.of(seuilPropre)));
+		assertEquals(Etat.EN_STOCK, stockAlerteService.etat(Niveau.of(seuilPropre)));
+		assertEquals(10, stockAlerteService.seuil(Niveau.of(seuilCategorie)));
+		assertEquals(Etat.SOUS_SEUIL, stockAlerteService.etat(Niveau.of(seuilCategorie)));
+		assertEquals(stockAlerteService.seuilParDefaut(), stockAlerteService.seuil(Niveau.of(seuilDefaut)));
+		assertEquals(Etat.SOUS_SEUIL, stockAlerteService.etat(Niveau.of(seuilDefaut)));
+		assertEquals(Etat.EN_STOCK, stockAlerteService.etat(Niveau.of(enStock)));
+		assertEquals(Etat.RUPTURE, stockAlerteService.etat(Niveau.of(rupture)));
+	}
+
+	@Test
+	void requetesSousSeuil() {
+		long seuilMax = stockAlerteService.seuilMax();
+		long seuilDefaut = stockAlerteService.seuilParDefaut();
+		assertEquals(10, seuilMax);
+		assertEquals(3, produitRepository.countSousSeuil(seuilMax, seuilDefaut));
+		List<Long> ids = produitRepository.findSousSeuil(seuilMax, seuilDefaut, PageRequest.of(0, 10)).stream()
+				.map(Produit::getId).toList();
+		assertEquals(List.of(rupture.getId(), this.seuilDefaut.getId(), seuilCategorie.getId()), ids);
+		assertEquals(1, produitRepository.countByQuantity(0));
+	}
+
+	@Test
+	void compteursSuiventLesFranchissementsDeSeuil() {
+		assertEquals(1, stockAlerteService.ruptures());
+		assertEquals(3, stockAlerteService.sousSeuil());
+
+		// Mouvement de StockService (UPDATE conditionnel) : passe sous le seuil par défaut
+		assertTrue(stockService.decrementer(enStock.getId(), 1));
+		assertEquals(4, stockAlerteService.sousSeuil());
+		assertEquals(1, events.stream(StockCritique.class)
+				.filter(e -> e.nom().equals("Écran") && e.etat() == Etat.SOUS_SEUIL).count());
+
+		// Écritures JPA (ProduitStockListener) : remonte au-dessus du seuil, puis rupture
+		Produit clavier = produitRepository.findById(seuilCategorie.getId()).orElseThrow();
+		clavier.setQuantity(50);
+		produitRepository.save(clavier);
+		assertEquals(3, stockAlerteService.sousSeuil());
+		Produit cable = produitRepository.findById(seuilDefaut.getId()).orElseThrow();
+		cable.setQuantity(0);
+		produitRepository.save(cable);
+		assertEquals(2, stockAlerteService.ruptures());
+		assertEquals(3, stockAlerteService.sousSeuil());
+
+		// Le recalcul complet retrouve les mêmes valeurs
+		stockAlerteService.recompter();
+		assertEquals(2, stockAlerteService.ruptures());
+		assertEquals(3, stockAlerteService.sousSeuil());
+	}
+
+	@Test
+	void recalculRattrapeUneEcritureHorsJpa() {
+		// UPDATE direct, sans StockService ni rappel JPA : les compteurs ne le voient pas
+		transactionTemplate.executeWithoutResult(status -> produitRepository.incrementerStock(rupture.getId(), 100));
+		assertEquals(1, stockAlerteService.ruptures());
+
+		stockAlerteService.recompter();
+		assertEquals(0, stockAlerteService.ruptures());
+		assertEquals(2, stockAlerteService.sousSeuil());
+	}
+}
@@ -0,0 +1,212 @@
+package org.ms.produit_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.entities.StockLease;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.repository.StockLeaseRepository;
+import org.ms.produit_service.service.CategorieCache;
+import org.ms.produit_service.service.CategorieCacheListener;
+import org.ms.produit_service.service.HotStockEngine;
+import org.ms.produit_service.service.ProduitStockListener;
+import org.ms.produit_service.service.RechercheIndexListener;
+import org.ms.produit_service.service.RechercheService;
+import org.ms.produit_service.service.StockAlerteService;
+import org.ms.produit_service.service.StockService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Décréments concurrents sur un seul produit, deux fois plus de demandes que de stock :
+ * exactement le stock initial doit être vendu, sans survente ni échec de version.
+ * Le stock en mémoire réserve ses lots sans toucher au stock physique, solde toutes ses
+ * ventes quand il est désactivé en pleine charge et rend les lots d'une instance arrêtée net.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ StockService.class, HotStockEngine.class, StockAlerteService.class, CategorieCache.class,
+		CategorieCacheListener.class, ProduitStockListener.class, RechercheService.class, RechercheIndexListener.class })
+class StockConcurrencyTests {
+	private static final Logger logger = LoggerFactory.getLogger(StockConcurrencyTests.class);
+	private static final int THREADS = 16;
+	private static final int STOCK = 5_000;
+
+	@Autowired
+	private ProduitRepository produitRepository;
+
+	@Autowired
+	private StockService stockService;
+
+	@Autowired
+	private HotStockEngine hotStockEngine;
+
+	@Autowired
+	private StockAlerteService stockAlerteService;
+
+	@Autowired
+	private StockLeaseRepository stockLeaseRepository;
+
+	private Long produitId;
+
+	@BeforeEach
+	void setUp() {
+		produitId = produitRepository.save(new Produit(null, "Vente flash", 10.0, STOCK, 0, null, null, null, null))
+				.getId();
+	}
+
+	@AfterEach
+	void tearDown() {
+		hotStockEngine.desactiver(produitId);
+		stockLeaseRepository.deleteAll();
+		produitRepository.deleteAll();
+	}
+
+	@Test
+	void updateConditionnelSansSurvente() throws Exception {
+		long ruptures = stockAlerteService.ruptures();
+		decrementerEnConcurrence("UPDATE conditionnel", () -> stockService.decrementer(produitId, 1));
+		assertEquals(0, produitRepository.findById(produitId).orElseThrow().getQuantity());
+		assertEquals(ruptures + 1, stockAlerteService.ruptures());
+	}
+
+	@Test
+	void stockEnMemoireSansSurvente() throws Exception {
+		long ruptures = stockAlerteService.ruptures();
+		hotStockEngine.activer(produitId);
+		decrementerEnConcurrence("stock en mémoire", () -> hotStockEngine.decrementer(produitId, 1));
+		hotStockEngine.desactiver(produitId);
+		Produit produit = produitRepository.findById(produitId).orElseThrow();
+		assertEquals(0, produit.getQuantity());
+		assertEquals(0, produit.getQuantiteReservee());
+		assertEquals(0, stockLeaseRepository.count());
+		assertEquals(ruptures + 1, stockAlerteService.ruptures());
+	}
+
+	@Test
+	void lotReserveSansToucherAuStockPhysique() {
+		hotStockEngine.activer(produitId);
+		assertTrue(hotStockEngine.decrementer(produitId, 3));
+		Produit produit = produitRepository.findById(produitId).orElseThrow();
+		assertEquals(STOCK, produit.getQuantity());
+		assertEquals(100, produit.getQuantiteReservee());
+
+		// Report des ventes : sortie de stock, le reste du lot demeure réservé
+		hotStockEngine.reporter();
+		produit = produitRepository.findById(produitId).orElseThrow();
+		assertEquals(STOCK - 3, produit.getQuantity());
+		assertEquals(97, produit.getQuantiteReservee());
+		assertEquals(97, stockLeaseRepository.findAll().get(0).getQuantite());
+
+		hotStockEngine.desactiver(produitId);
+		produit = produitRepository.findById(produitId).orElseThrow();
+		assertEquals(STOCK - 3, produit.getQuantity());
+		assertEquals(0, produit.getQuantiteReservee());
+		assertEquals(0, stockLeaseRepository.count());
+	}
+
+	@Test
+	void desactivationPendantLesVentes() throws Exception {
+		// Chaque vente réussie sort du stock une fois, qu'elle ait été servie en mémoire avant la
+		// fermeture ou par la base après : aucune unité ne reste réservée
+		AtomicLong vendus = new AtomicLong();
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int tour = 0; tour < 10; tour++) {
+				hotStockEngine.activer(produitId);
+				CountDownLatch depart = new CountDownLatch(1);
+				List<Future<?>> taches = new ArrayList<>();
+				for (int t = 0; t < THREADS; t++) {
+					taches.add(pool.submit(() -> {
+						depart.await();
+						for (int i = 0; i < 20; i++) {
+							if (hotStockEngine.decrementer(produitId, 1)) {
+								vendus.incrementAndGet();
+							}
+						}
+						return null;
+					}));
+				}
+				depart.countDown();
+				hotStockEngine.desactiver(produitId);
+				for (Future<?> tache : taches) {
+					tache.get();
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		Produit produit = produitRepository.findById(produitId).orElseThrow();
+		assertEquals(STOCK - vendus.get(), produit.getQuantity());
+		assertEquals(0, produit.getQuantiteReservee());
+		assertEquals(0, stockLeaseRepository.count());
+	}
+
+	@Test
+	void bailEchuRenduAuDisponible() {
+		// Instance arrêtée net avec 40 unités réservées et un bail qui n'est plus prolongé
+		assertEquals(40, stockService.louer("arretee", produitId, 40));
+		StockLease bail = stockLeaseRepository.findAll().get(0);
+		bail.setMajLe(new Date(0));
+		stockLeaseRepository.save(bail);
+
+		hotStockEngine.reprendreBauxEchus();
+		Produit produit = produitRepository.findById(produitId).orElseThrow();
+		assertEquals(STOCK, produit.getQuantity());
+		assertEquals(0, produit.getQuantiteReservee());
+		assertEquals(0, stockLeaseRepository.count());
+	}
+
+	private void decrementerEnConcurrence(String mode, BooleanSupplier decrement) throws Exception {
+		int demandesParThread = 2 * STOCK / THREADS;
+		AtomicLong vendus = new AtomicLong();
+		CountDownLatch depart = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> taches = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				taches.add(pool.submit(() -> {
+					depart.await();
+					for (int i = 0; i < demandesParThread; i++) {
+						if (decrement.getAsBoolean()) {
+							vendus.incrementAndGet();
+						}
+					}
+					return null;
+				}));
+			}
+			long start = System.nanoTime();
+			depart.countDown();
+			for (Future<?> tache : taches) {
+				tache.get();
+			}
+			long duree = System.nanoTime() - start;
+			logger.info("{} : {} demandes sur un produit, {} threads, {} décréments/s", mode,
+					demandesParThread * THREADS, THREADS, (long) (demandesParThread * THREADS / (duree / 1e9)));
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(STOCK, vendus.get());
+	}
+}
@@ -0,0 +1,156 @@
+package org.ms.produit_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.entities.StockHold;
+import org.ms.produit_service.entities.StockHoldLigne;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.repository.StockHoldRepository;
+import org.ms.produit_service.service.CategorieCache;
+import org.ms.produit_service.service.CategorieCacheListener;
+import org.ms.produit_service.service.ProduitStockListener;
+import org.ms.produit_service.service.RechercheIndexListener;
+import org.ms.produit_service.service.RechercheService;
+import org.ms.produit_service.service.StockAlerteService;
+import org.ms.produit_service.service.StockHoldService;
+import org.ms.produit_service.service.StockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Réservations temporaires : les quantités sont retenues sans toucher au stock physique,
+ * puis sorties à la confirmation ou rendues à la libération et à l'expiration, par la roue
+ * comme par le balayage de la base. Une réservation n'est soldée qu'une fois.
+ */
+@DataJpaTest(properties = "stock.holds.tick=50ms")
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ StockHoldService.class, StockService.class, StockAlerteService.class, CategorieCache.class,
+		CategorieCacheListener.class, ProduitStockListener.class, RechercheService.class, RechercheIndexListener.class })
+class StockHoldTests {
+	private static final int STOCK = 100;
+
+	@Autowired
+	private StockHoldService stockHoldService;
+
+	@Autowired
+	private StockService stockService;
+
+	@Autowired
+	private ProduitRepository produitRepository;
+
+	@Autowired
+	private StockHoldRepository stockHoldRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	private Long produitId;
+
+	@BeforeEach
+	void setUp() {
+		produitId = produitRepository.save(new Produit(null, "Souris", 15.0, STOCK, 0, null, null, null, null))
+				.getId();
+	}
+
+	@AfterEach
+	void tearDown() {
+		stockHoldRepository.deleteAll();
+		produitRepository.deleteAll();
+	}
+
+	@Test
+	void reservationPuisConfirmation() {
+		StockHold hold = stockHoldService.creer(Map.of(produitId, 3L), Duration.ofMinutes(5));
+		assertEquals(STOCK, produit().getQuantity());
+		assertEquals(3, produit().getQuantiteReservee());
+
+		assertEquals(StockHold.CONFIRMEE, stockHoldService.confirmer(hold.getId()).getStatut());
+		assertEquals(STOCK - 3, produit().getQuantity());
+		assertEquals(0, produit().getQuantiteReservee());
+
+		// Déjà soldée : ni seconde sortie de stock ni libération
+		assertStatut(HttpStatus.CONFLICT, () -> stockHoldService.confirmer(hold.getId()));
+		assertStatut(HttpStatus.CONFLICT, () -> stockHoldService.liberer(hold.getId()));
+		assertEquals(STOCK - 3, produit().getQuantity());
+		assertEquals(0, produit().getQuantiteReservee());
+	}
+
+	@Test
+	void liberationRendLeDisponible() {
+		StockHold hold = stockHoldService.creer(Map.of(produitId, 7L), Duration.ofMinutes(5));
+		stockHoldService.liberer(hold.getId());
+		assertEquals(STOCK, produit().getQuantity());
+		assertEquals(0, produit().getQuantiteReservee());
+		assertEquals(StockHold.LIBEREE, stockHoldRepository.findById(hold.getId()).orElseThrow().getStatut());
+	}
+
+	@Test
+	void stockInsuffisantToutOuRien() {
+		assertStatut(HttpStatus.BAD_REQUEST, () -> stockHoldService.creer(Map.of(produitId, STOCK + 1L),
+				Duration.ofMinutes(5)));
+		assertEquals(0, produit().getQuantiteReservee());
+		assertEquals(0, stockHoldRepository.count());
+	}
+
+	@Test
+	void expirationParLaRoue() throws InterruptedException {
+		StockHold hold = stockHoldService.creer(Map.of(produitId, 5L), Duration.ofMillis(100));
+		long limite = System.currentTimeMillis() + 5_000;
+		while (!StockHold.EXPIREE.equals(stockHoldRepository.findById(hold.getId()).orElseThrow().getStatut())) {
+			assertTrue(System.currentTimeMillis() < limite, "Réservation non expirée");
+			Thread.sleep(20);
+		}
+		assertEquals(STOCK, produit().getQuantity());
+		assertEquals(0, produit().getQuantiteReservee());
+		assertStatut(HttpStatus.CONFLICT, () -> stockHoldService.confirmer(hold.getId()));
+	}
+
+	@Test
+	void balayageExpireLesReservationsInconnuesDeLaRoue() {
+		// Réservation créée par une instance arrêtée depuis : aucune échéance en mémoire
+		Long id = transactionTemplate.execute(status -> {
+			stockService.reserver(produitId, 4);
+			StockHold hold = new StockHold();
+			hold.setStatut(StockHold.ACTIVE);
+			hold.setExpireLe(new Date(System.currentTimeMillis() - 1_000));
+			hold.getLignes().add(new StockHoldLigne(produitId, 4));
+			return stockHoldRepository.save(hold).getId();
+		});
+		assertEquals(4, produit().getQuantiteReservee());
+
+		stockHoldService.balayer();
+		assertEquals(StockHold.EXPIREE, stockHoldRepository.findById(id).orElseThrow().getStatut());
+		assertEquals(STOCK, produit().getQuantity());
+		assertEquals(0, produit().getQuantiteReservee());
+
+		// Un second passage ne rend rien de plus
+		stockHoldService.balayer();
+		assertEquals(0, produit().getQuantiteReservee());
+	}
+
+	private Produit produit() {
+		return produitRepository.findById(produitId).orElseThrow();
+	}
+
+	private static void assertStatut(HttpStatus attendu, Runnable appel) {
+		assertEquals(attendu, assertThrows(ResponseStatusException.class, appel::run).getStatusCode());
+	}
+}
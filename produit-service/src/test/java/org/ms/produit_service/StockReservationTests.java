@@ -0,0 +1,141 @@
+package org.ms.produit_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ms.produit_service.dto.ReservationLigne;
+import org.ms.produit_service.entities.Produit;
+import org.ms.produit_service.repository.ProduitRepository;
+import org.ms.produit_service.repository.StockReservationRepository;
+import org.ms.produit_service.service.CategorieCache;
+import org.ms.produit_service.service.CategorieCacheListener;
+import org.ms.produit_service.service.ProduitStockListener;
+import org.ms.produit_service.service.RechercheIndexListener;
+import org.ms.produit_service.service.RechercheService;
+import org.ms.produit_service.service.StockAlerteService;
+import org.ms.produit_service.service.StockReservationService;
+import org.ms.produit_service.service.StockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Réservations rejouées par facture-service (nouvel essai, compensation répétée) :
+ * le stock n'est décrémenté et rendu qu'une fois par ID de réservation.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ StockReservationService.class, StockService.class, StockAlerteService.class, CategorieCache.class,
+		CategorieCacheListener.class, ProduitStockListener.class, RechercheService.class, RechercheIndexListener.class })
+class StockReservationTests {
+	private static final int STOCK = 100;
+
+	@Autowired
+	private StockReservationService stockReservationService;
+
+	@Autowired
+	private ProduitRepository produitRepository;
+
+	@Autowired
+	private StockReservationRepository stockReservationRepository;
+
+	private Long produitId;
+
+	@BeforeEach
+	void setUp() {
+		produitId = produitRepository.save(new Produit(null, "Clavier", 25.0, STOCK, 0, null, null, null, null))
+				.getId();
+	}
+
+	@AfterEach
+	void tearDown() {
+		stockReservationRepository.deleteAll();
+		produitRepository.deleteAll();
+	}
+
+	@Test
+	void reservationEtLiberationRejouees() {
+		List<ReservationLigne> lignes = List.of(new ReservationLigne(produitId, 3, null));
+		Map<Long, Long> demandes = Map.of(produitId, 3L);
+
+		assertEquals(25.0, stockReservationService.reserver("r1", lignes, demandes).get(0).getPrice());
+		assertEquals(25.0, stockReservationService.reserver("r1", lignes, demandes).get(0).getPrice());
+		assertEquals(STOCK - 3, quantite());
+
+		stockReservationService.liberer("r1");
+		stockReservationService.liberer("r1");
+		assertEquals(STOCK, quantite());
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> stockReservationService.reserver("r1", lignes, demandes));
+		assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+	}
+
+	@Test
+	void liberationAvantReservation() {
+		stockReservationService.liberer("r2");
+		assertThrows(ResponseStatusException.class, () -> stockReservationService
+				.reserver("r2", List.of(new ReservationLigne(produitId, 5, null)), Map.of(produitId, 5L)));
+		assertEquals(STOCK, quantite());
+	}
+
+	@Test
+	void reservationEchoueeRejouable() {
+		List<ReservationLigne> trop = List.of(new ReservationLigne(produitId, STOCK + 1, null));
+		assertThrows(ResponseStatusException.class,
+				() -> stockReservationService.reserver("r3", trop, Map.of(produitId, STOCK + 1L)));
+		List<ReservationLigne> lignes = List.of(new ReservationLigne(produitId, 1, null));
+		stockReservationService.reserver("r3", lignes, Map.of(produitId, 1L));
+		assertEquals(STOCK - 1, quantite());
+	}
+
+	@Test
+	void memeReservationEnParallele() throws Exception {
+		List<ReservationLigne> lignes = List.of(new ReservationLigne(produitId, 2, null));
+		CountDownLatch depart = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> taches = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				taches.add(pool.submit(() -> {
+					depart.await();
+					try {
+						stockReservationService.reserver("r4", lignes, Map.of(produitId, 2L));
+					} catch (ResponseStatusException e) {
+						// Doublon encore en cours de traitement : refusé sans mouvement de stock
+						assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+					}
+					return null;
+				}));
+			}
+			depart.countDown();
+			for (Future<?> tache : taches) {
+				tache.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(STOCK - 2, quantite());
+	}
+
+	private long quantite() {
+		return produitRepository.findById(produitId).orElseThrow().getQuantity();
+	}
+}
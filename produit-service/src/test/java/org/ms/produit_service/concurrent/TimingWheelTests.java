@@ -0,0 +1,58 @@
+package org.ms.produit_service.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTests {
+
+	@Test
+	void echeancesDeclencheesUneFoisEtJamaisAvantTerme() throws Exception {
+		int nombre = 100_000;
+		Map<Integer, Long> declenchees = new ConcurrentHashMap<>();
+		CountDownLatch restantes = new CountDownLatch(nombre / 2);
+		long debut = System.currentTimeMillis();
+		Map<Integer, Long> echeances = new ConcurrentHashMap<>();
+		// Petite roue : la plupart des échéances font plusieurs tours ; toutes sont annulées ou non avant terme
+		try (TimingWheel<Integer> wheel = new TimingWheel<>("test", Duration.ofMillis(5), 16, ids -> {
+			long maintenant = System.currentTimeMillis();
+			ids.forEach(id -> {
+				assertTrue(declenchees.put(id, maintenant) == null);
+				restantes.countDown();
+			});
+		})) {
+			for (int i = 0; i < nombre; i++) {
+				long echeance = debut + 200 + (i % 400);
+				echeances.put(i, echeance);
+				TimingWheel<Integer>.Timeout timeout = wheel.planifier(i, echeance);
+				if (i % 2 == 1) {
+					timeout.annuler();
+				}
+			}
+			assertTrue(restantes.await(10, TimeUnit.SECONDS));
+			Thread.sleep(50);
+		}
+		assertEquals(nombre / 2, declenchees.size());
+		for (Map.Entry<Integer, Long> declenchee : declenchees.entrySet()) {
+			assertEquals(0, declenchee.getKey() % 2);
+			assertTrue(declenchee.getValue() >= echeances.get(declenchee.getKey()));
+		}
+	}
+
+	@Test
+	void echeancePasseeDeclencheeAuTickSuivant() throws Exception {
+		CountDownLatch declenchee = new CountDownLatch(1);
+		try (TimingWheel<String> wheel = new TimingWheel<>("test", Duration.ofMillis(10), 8,
+				ids -> declenchee.countDown())) {
+			wheel.planifier("hold", System.currentTimeMillis() - 60_000);
+			assertTrue(declenchee.await(1, TimeUnit.SECONDS));
+		}
+	}
+}
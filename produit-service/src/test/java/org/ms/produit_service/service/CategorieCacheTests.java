@@ -0,0 +1,48 @@
+package org.ms.produit_service.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.ms.produit_service.entities.Categorie;
+import org.ms.produit_service.repository.CategorieRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CategorieCacheTests {
+
+	@Test
+	void chargementConcurrentDUneInvalidationNonPublie() {
+		CategorieRepository categorieRepository = Mockito.mock(CategorieRepository.class);
+		CategorieCache cache = new CategorieCache(categorieRepository);
+		// L'écriture est validée et le cache invalidé pendant la lecture, qui a vu l'ancienne table
+		when(categorieRepository.findAll())
+				.thenAnswer(invocation -> {
+					cache.invalidate();
+					return List.of(new Categorie(1L, "Ancien nom", null, null));
+				})
+				.thenReturn(List.of(new Categorie(1L, "Nouveau nom", null, null)));
+
+		assertEquals("Ancien nom", cache.findById(1L).orElseThrow().getName());
+		assertEquals("Nouveau nom", cache.findById(1L).orElseThrow().getName());
+		assertEquals("Nouveau nom", cache.findById(1L).orElseThrow().getName());
+		verify(categorieRepository, times(2)).findAll();
+	}
+
+	@Test
+	void invalidationRelitLaTable() {
+		CategorieRepository categorieRepository = Mockito.mock(CategorieRepository.class);
+		CategorieCache cache = new CategorieCache(categorieRepository);
+		when(categorieRepository.findAll())
+				.thenReturn(List.of(new Categorie(2L, "B", null, null), new Categorie(1L, "A", null, null)))
+				.thenReturn(List.of(new Categorie(1L, "A", null, null)));
+
+		assertEquals(List.of(1L, 2L), cache.findAll().stream().map(Categorie::getId).toList());
+		cache.invalidate();
+		assertEquals(List.of(1L), cache.findAll().stream().map(Categorie::getId).toList());
+		verify(categorieRepository, times(2)).findAll();
+	}
+}
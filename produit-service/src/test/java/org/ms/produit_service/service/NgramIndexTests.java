@@ -0,0 +1,104 @@
+package org.ms.produit_service.service;
+
+import org.junit.jupiter.api.Test;
+import org.ms.produit_service.service.NgramIndex.Resultat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NgramIndexTests {
+	private static final Logger logger = LoggerFactory.getLogger(NgramIndexTests.class);
+
+	@Test
+	void sansAccentsNiCasseEtClasse() {
+		NgramIndex index = new NgramIndex();
+		index.reconstruire(Map.of(1L, "Écran HP 24 pouces", 2L, "Écran", 3L, "Support d'écran",
+				4L, "Cœur de réseau", 5L, "Souris sans fil"));
+
+		List<Resultat> resultats = index.search("ECRAN", 10);
+		assertEquals(List.of(2L, 1L, 3L), resultats.stream().map(Resultat::id).toList());
+		assertEquals(List.of(4, 3, 2), resultats.stream().map(Resultat::score).toList());
+		assertEquals(4L, index.search("coeur res", 10).get(0).id());
+		assertEquals(1, index.search("e", 1).size());
+		// Deux lettres : début de mot seulement
+		assertTrue(index.search("an", 10).isEmpty());
+		assertTrue(index.search("xyz", 10).isEmpty());
+
+		index.put(5L, "Souris ergonomique");
+		assertTrue(index.search("sans fil", 10).isEmpty());
+		assertEquals(5L, index.search("ergo", 10).get(0).id());
+		index.remove(2L);
+		assertEquals(List.of(1L, 3L), index.search("écran", 10).stream().map(Resultat::id).toList());
+	}
+
+	@Test
+	void grandCatalogue() {
+		String[] types = { "Écran", "Clavier", "Souris", "Imprimante", "Ordinateur portable", "Câble", "Casque",
+				"Chargeur", "Cœur de réseau", "Téléphone" };
+		String[] marques = { "Dell", "HP", "Canon", "Samsung", "Logitech", "Apple", "Lenovo", "Asus", "Epson",
+				"Brother" };
+		Random random = new Random(1);
+		Map<Long, String> noms = new HashMap<>();
+		for (long id = 0; id < 200_000; id++) {
+			noms.put(id, types[random.nextInt(types.length)] + " " + marques[random.nextInt(marques.length)] + " "
+					+ Integer.toString(random.nextInt(100_000), 36).toUpperCase() + "-" + id);
+		}
+		NgramIndex index = new NgramIndex();
+		index.reconstruire(noms);
+
+		String[] requetes = { "e", "ecr", "ecran", "coeur res", "epson cab", "imprimante canon 1a", "zzz" };
+		for (int i = 0; i < 1_000; i++) {
+			for (String requete : requetes) {
+				index.search(requete, 10);
+			}
+		}
+		int iterations = 1_000;
+		for (String requete : requetes) {
+			long start = System.nanoTime();
+			List<Resultat> resultats = List.of();
+			for (int i = 0; i < iterations; i++) {
+				resultats = index.search(requete, 10);
+			}
+			logger.info("Recherche \"{}\" sur {} noms : {} µs, {} résultat(s)", requete, noms.size(),
+					(System.nanoTime() - start) / iterations / 1000, resultats.size());
+			for (Resultat resultat : resultats) {
+				assertTrue(NgramIndex.normaliser(resultat.name()).contains(requete.split(" ")[0]));
+			}
+		}
+		assertEquals(10, index.search("imprimante canon 1a", 10).size());
+	}
+
+	@Test
+	void rechercheIncompleteAuDelaDuBudget() {
+		Map<Long, String> noms = new HashMap<>();
+		for (long id = 0; id < 200_000; id++) {
+			noms.put(id, (id % 2 == 0 ? "Câble " : "Clavier ") + id);
+		}
+		NgramIndex index = new NgramIndex();
+		index.reconstruire(noms);
+
+		assertTrue(index.rechercher("cable 4242", 10).complete());
+		assertEquals(4242L, index.rechercher("cable 4242", 10).resultats().get(0).id());
+		// Trop de correspondances vérifiées
+		NgramIndex.Recherche cables = index.rechercher("cable", Integer.MAX_VALUE);
+		assertFalse(cables.complete());
+		assertEquals(10, index.search("cable", 10).size());
+		// Aucune correspondance, mais des listes trop longues pour être parcourues en entier
+		NgramIndex.Recherche croisee = index.rechercher("cable clavier", 10);
+		assertFalse(croisee.complete());
+		assertTrue(croisee.resultats().isEmpty());
+		assertTrue(index.rechercher("xyz", 10).complete());
+		assertFalse(index.rechercher("--", 10).complete());
+		// Mot court : débuts de mots seulement, la sous-chaîne reste à chercher ailleurs
+		assertFalse(index.rechercher("ab", 10).complete());
+		assertFalse(index.rechercher("cable 42", 10).complete());
+	}
+}
@@ -1,30 +1,25 @@
 package org.ms.reglement_service;
 
-import org.ms.reglement_service.entities.Reglement;
 import org.ms.reglement_service.feign.FactureServiceClient;
 import org.ms.reglement_service.feign.DeviseServiceClient;
 import org.ms.reglement_service.model.Facture;
+import org.ms.reglement_service.model.FactureSummary;
+import org.ms.reglement_service.model.TauxAsOf;
 import org.ms.reglement_service.model.Devise;
-import org.ms.reglement_service.repository.ReglementRepository;
-import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
-import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.cloud.openfeign.FallbackFactory;
-import org.springframework.context.annotation.Bean;
-import org.springframework.data.rest.core.config.RepositoryRestConfiguration;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
+// Clients Feign et données de démarrage : voir config.FeignConfig et config.InitialisationConfig
 @SpringBootApplication
 @EnableDiscoveryClient
-@EnableFeignClients
 public class ReglementServiceApplication {
     private static final Logger LOGGER = Logger.getLogger(ReglementServiceApplication.class.getName());
 
@@ -32,29 +27,6 @@ public class ReglementServiceApplication {
         SpringApplication.run(ReglementServiceApplication.class, args);
     }
 
-    @Bean
-    CommandLineRunner init(ReglementRepository reglementRepository,
-                           FactureServiceClient factureServiceClient,
-                           RepositoryRestConfiguration restConfiguration) {
-        restConfiguration.exposeIdsFor(Reglement.class);
-        return args -> {
-            try {
-                Facture testFacture = factureServiceClient.findFactureById(1L);
-                if (testFacture != null) {
-                    Reglement r1 = new Reglement(null, 1L, 500.0, new Date(), "MAD", "PAY-123", "COMPLET");
-                    Reglement r2 = new Reglement(null, 1L, 300.0, new Date(), "EUR", "PAY-456", "PARTIEL");
-                    reglementRepository.saveAll(Arrays.asList(r1, r2));
-                    LOGGER.info("=== Initial Reglements Created ===");
-                    reglementRepository.findAll().forEach(r -> LOGGER.info(r.toString()));
-                } else {
-                    LOGGER.warning("Facture with ID 1 not found. Skipping reglement initialization.");
-                }
-            } catch (Exception e) {
-                LOGGER.severe("Failed to initialize reglements: " + e.getMessage());
-            }
-        };
-    }
-
     @Component
     class FactureServiceClientFallbackFactory implements FallbackFactory<FactureServiceClient> {
         @Override
@@ -66,6 +38,15 @@ public class ReglementServiceApplication {
                     return null;
                 }
                 @Override
+                public List<FactureSummary> findFactureSummaries(Set<Long> ids) {
+                    LOGGER.warning("Fallback: Facture service unavailable: " + cause.getMessage());
+                    return Collections.emptyList();
+                }
+                @Override
+                public List<FactureSummary> findFacturesOuvertes(Long afterId, int size) {
+                    return Collections.emptyList();
+                }
+                @Override
                 public void updateFactureStatus(Long id, String status) {}
                 @Override
                 public List<Long> getFactureIdsByClient(Long clientId) {
@@ -77,6 +58,8 @@ public class ReglementServiceApplication {
                 }
                 @Override
                 public void updateFactureMontantPaye(Long id, Double montantPaye) {}
+                @Override
+                public void updateFacturePaiement(Long id, Double montantPaye, String status) {}
             };
         }
     }
@@ -91,6 +74,12 @@ public class ReglementServiceApplication {
                     LOGGER.warning("Fallback: Devise service unavailable: " + cause.getMessage());
                     return new Devise(null, code, "Unknown", 1.0, false);
                 }
+                // Taux inconnus plutôt qu'un taux par défaut : un montant MAD faux serait figé
+                @Override
+                public List<TauxAsOf> findTauxAsOf(List<TauxAsOf> demandes) {
+                    LOGGER.warning("Fallback: Devise service unavailable: " + cause.getMessage());
+                    return demandes.stream().map(d -> new TauxAsOf(d.getCode(), d.getDate(), null)).toList();
+                }
             };
         }
     }
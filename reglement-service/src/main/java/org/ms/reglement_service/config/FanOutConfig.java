@@ -0,0 +1,29 @@
+package org.ms.reglement_service.config;
+
+import org.ms.reglement_service.concurrent.FanOut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class FanOutConfig {
+    @Value("${fanout.pool-size:32}")
+    private int poolSize;
+    @Value("${fanout.call-timeout:2s}")
+    private Duration callTimeout;
+    @Value("${fanout.overall-timeout:3s}")
+    private Duration overallTimeout;
+
+    // Java 17 : pool borné de threads plateforme (pas de threads virtuels). Le pool n'est pas
+    // exposé comme bean : l'applicationTaskExecutor de Boot reste celui de MVC async et @Async
+    @Bean(destroyMethod = "shutdown")
+    public FanOut fanOut() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("fanout-");
+        threadFactory.setDaemon(true);
+        return new FanOut(Executors.newFixedThreadPool(poolSize, threadFactory), callTimeout, overallTimeout);
+    }
+}
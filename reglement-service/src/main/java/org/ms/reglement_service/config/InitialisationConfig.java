@@ -0,0 +1,60 @@
+package org.ms.reglement_service.config;
+
+import org.ms.reglement_service.entities.Reglement;
+import org.ms.reglement_service.feign.FactureServiceClient;
+import org.ms.reglement_service.model.Facture;
+import org.ms.reglement_service.repository.ReglementRepository;
+import org.ms.reglement_service.service.FactureSoldeService;
+import org.ms.reglement_service.service.ReglementClientBackfill;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.rest.core.config.RepositoryRestConfiguration;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.logging.Logger;
+
+// Données de démarrage, reprise des clients et des soldes, exposition des IDs par Spring Data REST ;
+// hors profil test, où les tranches JPA n'ont ni clients Feign ni RepositoryRestConfiguration
+@Configuration
+@Profile("!test")
+public class InitialisationConfig {
+    private static final Logger LOGGER = Logger.getLogger(InitialisationConfig.class.getName());
+
+    @Bean
+    CommandLineRunner init(ReglementRepository reglementRepository,
+                           FactureServiceClient factureServiceClient,
+                           FactureSoldeService factureSoldeService,
+                           ReglementClientBackfill reglementClientBackfill,
+                           RepositoryRestConfiguration restConfiguration) {
+        restConfiguration.exposeIdsFor(Reglement.class);
+        return args -> {
+            try {
+                Facture testFacture = factureServiceClient.findFactureById(1L);
+                if (testFacture != null) {
+                    Reglement r1 = new Reglement(null, 1L, 500.0, new Date(), "MAD", "PAY-123", "COMPLET", 500.0, null);
+                    Reglement r2 = new Reglement(null, 1L, 300.0, new Date(), "EUR", "PAY-456", "PARTIEL", null, null);
+                    reglementRepository.saveAll(Arrays.asList(r1, r2));
+                    LOGGER.info("=== Initial Reglements Created ===");
+                    reglementRepository.findAll().forEach(r -> LOGGER.info(r.toString()));
+                } else {
+                    LOGGER.warning("Facture with ID 1 not found. Skipping reglement initialization.");
+                }
+            } catch (Exception e) {
+                LOGGER.severe("Failed to initialize reglements: " + e.getMessage());
+            }
+            try {
+                reglementClientBackfill.backfill();
+            } catch (Exception e) {
+                LOGGER.severe("Failed to backfill reglement client ids: " + e.getMessage());
+            }
+            try {
+                factureSoldeService.rebuild();
+            } catch (Exception e) {
+                LOGGER.severe("Failed to rebuild facture balances: " + e.getMessage());
+            }
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package org.ms.reglement_service.dto;
+
+/**
+ * Colonnes d'un règlement sans facture utiles au rapprochement ; une projection
+ * évite de garder des milliers d'entités gérées dans le contexte de persistance.
+ */
+public interface ReglementNonRapproche {
+    Long getId();
+
+    String getReference();
+
+    Double getMontantMad();
+
+    Long getClientId();
+}
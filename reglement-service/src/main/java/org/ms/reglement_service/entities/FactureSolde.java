@@ -0,0 +1,23 @@
+package org.ms.reglement_service.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.*;
+
+/**
+ * Montant payé d'une facture en MAD, maintenu dans la même transaction
+ * que les écritures sur Reglement (voir FactureSoldeService).
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class FactureSolde {
+    @Id
+    private Long factureId;
+
+    private double montantPayeMad;
+
+    private long nombreReglements; // règlements non annulés
+}
@@ -9,6 +9,11 @@ import lombok.*;
 import java.util.Date;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_reglement_date_id", columnList = "dateReglement, id"),
+        @Index(name = "idx_reglement_client_statut_mode_date", columnList = "clientId, statut, modePaiement, dateReglement"),
+        @Index(name = "ux_reglement_reference", columnList = "reference", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -18,7 +23,7 @@ public class Reglement {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @NotNull(message = "Facture ID cannot be null")
+    // Null tant qu'un règlement importé n'est pas rapproché (voir ReconciliationEngine)
     private Long factureId;
 
     @Positive(message = "Montant must be positive")
@@ -31,9 +36,15 @@ public class Reglement {
     @NotBlank(message = "Mode de paiement cannot be empty")
     private String modePaiement;
 
-    @NotBlank(message = "Reference cannot be empty")
+    // Générée avant l'enregistrement si absente (voir ReferenceGenerator)
     private String reference;
 
     @NotBlank(message = "Statut cannot be empty")
     private String statut; // COMPLET, PARTIEL, ANNULE
+
+    // Montant converti en MAD au taux du jour de la saisie (voir FactureSoldeService)
+    private Double montantMad;
+
+    // Client de la facture, copié à la saisie pour filtrer sans appeler facture-service
+    private Long clientId;
 }
@@ -1,12 +1,21 @@
 package org.ms.reglement_service.feign;
 
 import org.ms.reglement_service.model.Devise;
+import org.ms.reglement_service.model.TauxAsOf;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.util.List;
 
 @FeignClient(name = "devise-service")
 public interface DeviseServiceClient {
     @GetMapping("/devises/{code}")
     Devise findDeviseByCode(@PathVariable("code") String code);
+
+    // Taux en vigueur pour chaque couple (code, date), dans l'ordre de la demande
+    @PostMapping("/devises/taux/asof")
+    List<TauxAsOf> findTauxAsOf(@RequestBody List<TauxAsOf> demandes);
 }
@@ -1,17 +1,25 @@
 package org.ms.reglement_service.feign;
 
 import org.ms.reglement_service.model.Facture;
+import org.ms.reglement_service.model.FactureSummary;
 import org.ms.reglement_service.security.FeignClientConfig;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Set;
 
 @FeignClient(name = "facture-service", configuration = FeignClientConfig.class)
 public interface FactureServiceClient {
     @GetMapping("/factures/full-facture/{id}")
     Facture findFactureById(@PathVariable("id") Long id);
 
+    @PostMapping("/factures/summaries")
+    List<FactureSummary> findFactureSummaries(@RequestBody Set<Long> ids);
+
+    @GetMapping("/factures/ouvertes")
+    List<FactureSummary> findFacturesOuvertes(@RequestParam("afterId") Long afterId, @RequestParam("size") int size);
+
     @PutMapping("/factures/{id}/status")
     void updateFactureStatus(@PathVariable("id") Long id, @RequestParam("status") String status);
 //http://localhost:8083/factures/1/status?status=PAYEE
@@ -23,4 +31,8 @@ public interface FactureServiceClient {
 
     @PutMapping("/factures/{id}/montant-paye")
     void updateFactureMontantPaye(@PathVariable("id") Long id, @RequestParam("montantPaye") Double montantPaye);
+
+    @PutMapping("/factures/{id}/paiement")
+    void updateFacturePaiement(@PathVariable("id") Long id, @RequestParam("montantPaye") Double montantPaye,
+                               @RequestParam("status") String status);
 }
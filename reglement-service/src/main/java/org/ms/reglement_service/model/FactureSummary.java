@@ -0,0 +1,14 @@
+package org.ms.reglement_service.model;
+
+import lombok.Data;
+
+// Vue allégée d'une facture renvoyée par POST /factures/summaries
+@Data
+public class FactureSummary {
+    private Long id;
+    private Double total;
+    private String status;
+    private Long clientId;
+    private String clientName;
+    private Double resteAPayer; // renseigné par GET /factures/ouvertes
+}
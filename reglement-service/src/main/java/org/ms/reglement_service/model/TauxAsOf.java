@@ -0,0 +1,21 @@
+package org.ms.reglement_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+// Taux d'une devise en vigueur à une date ; tauxChange est null si devise-service n'en connaît pas
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TauxAsOf {
+    private String code;
+    private Date date;
+    private Double tauxChange;
+
+    public static String cle(String code, Date date) {
+        return code + "@" + date.getTime();
+    }
+}
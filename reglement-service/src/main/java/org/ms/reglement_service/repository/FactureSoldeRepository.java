@@ -0,0 +1,21 @@
+package org.ms.reglement_service.repository;
+
+import org.ms.reglement_service.entities.FactureSolde;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+@RepositoryRestResource(exported = false)
+public interface FactureSoldeRepository extends JpaRepository<FactureSolde, Long> {
+    @Modifying
+    @Query("UPDATE FactureSolde s SET s.montantPayeMad = s.montantPayeMad + :montant, " +
+            "s.nombreReglements = s.nombreReglements + :nombre WHERE s.factureId = :factureId")
+    int increment(@Param("factureId") Long factureId, @Param("montant") double montant, @Param("nombre") long nombre);
+
+    // Insertion simple : un merge relirait la ligne et pourrait écraser celle d'une transaction concurrente
+    @Modifying
+    @Query("INSERT INTO FactureSolde (factureId, montantPayeMad, nombreReglements) VALUES (:factureId, 0.0, 0)")
+    void creer(@Param("factureId") Long factureId);
+}
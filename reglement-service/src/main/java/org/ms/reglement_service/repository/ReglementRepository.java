@@ -1,5 +1,6 @@
 package org.ms.reglement_service.repository;
 
+import org.ms.reglement_service.dto.ReglementNonRapproche;
 import org.ms.reglement_service.entities.Reglement;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -8,20 +9,51 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.webmvc.RepositoryRestController;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @RepositoryRestController
 public interface ReglementRepository extends JpaRepository<Reglement, Long> {
     List<Reglement> findByFactureId(Long factureId);
 
-    @Query("SELECT SUM(r.montant) FROM Reglement r WHERE r.factureId = :factureId AND r.statut != 'ANNULE'")
+    @Query("SELECT COALESCE(SUM(r.montantMad), 0) FROM Reglement r WHERE r.factureId = :factureId AND r.statut != 'ANNULE'")
     Double sumByFactureId(@Param("factureId") Long factureId);
 
+    // factureId, montant payé en MAD, nombre de règlements non annulés
+    @Query("SELECT r.factureId, SUM(r.montantMad), COUNT(r) FROM Reglement r WHERE r.factureId IS NOT NULL AND r.statut != 'ANNULE' GROUP BY r.factureId")
+    List<Object[]> aggregateMontantMadByFacture();
+
+    List<Reglement> findByMontantMadIsNull();
+
     Page<Reglement> findByFactureIdIn(List<Long> factureIds, Pageable pageable);
 
     @Query("SELECT r FROM Reglement r WHERE (:statut IS NULL OR r.statut = :statut) AND (:modePaiement IS NULL OR r.modePaiement = :modePaiement)")
     Page<Reglement> findByStatutAndModePaiement(@Param("statut") String statut, @Param("modePaiement") String modePaiement, Pageable pageable);
 
-    Page<Reglement> findByFactureIdInAndStatutContainingIgnoreCaseAndModePaiementContainingIgnoreCase(
-            List<Long> factureIds, String statut, String modePaiement, Pageable pageable);
+    // Pagination par clé (dateReglement, id) décroissante, sans OFFSET
+    @Query("SELECT r FROM Reglement r WHERE (:statut IS NULL OR r.statut = :statut) AND (:modePaiement IS NULL OR r.modePaiement = :modePaiement) "
+            + "AND (:date IS NULL OR r.dateReglement < :date OR (r.dateReglement = :date AND r.id < :id)) "
+            + "ORDER BY r.dateReglement DESC, r.id DESC")
+    List<Reglement> findPageAfter(@Param("statut") String statut, @Param("modePaiement") String modePaiement,
+            @Param("date") Date date, @Param("id") Long id, Pageable pageable);
+
+    @Query("SELECT COUNT(r) FROM Reglement r WHERE (:statut IS NULL OR r.statut = :statut) AND (:modePaiement IS NULL OR r.modePaiement = :modePaiement)")
+    long countByStatutAndModePaiement(@Param("statut") String statut, @Param("modePaiement") String modePaiement);
+
+    // Filtres exacts sur l'index (clientId, statut, modePaiement, dateReglement)
+    @Query("SELECT r FROM Reglement r WHERE r.clientId = :clientId AND (:statut IS NULL OR r.statut = :statut) "
+            + "AND (:modePaiement IS NULL OR r.modePaiement = :modePaiement)")
+    Page<Reglement> findByClient(@Param("clientId") Long clientId, @Param("statut") String statut,
+            @Param("modePaiement") String modePaiement, Pageable pageable);
+
+    List<Reglement> findByClientIdIsNull();
+
+    @Query("SELECT r.reference FROM Reglement r WHERE r.reference IN :references")
+    List<String> findExistingReferences(@Param("references") Collection<String> references);
+
+    // Règlements non rapprochés, par pages de clé id croissante
+    @Query("SELECT r.id AS id, r.reference AS reference, r.montantMad AS montantMad, r.clientId AS clientId "
+            + "FROM Reglement r WHERE r.factureId IS NULL AND r.statut <> 'ANNULE' AND r.id > :afterId ORDER BY r.id")
+    List<ReglementNonRapproche> findNonRapprochesAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package org.ms.reglement_service.service;
+
+import org.ms.reglement_service.feign.FactureServiceClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Recalcul du montant payé d'une facture, sérialisé par factureId.
+ * Un seul recalcul est en cours par facture ; les demandes qui arrivent pendant
+ * ce temps sont fusionnées en un unique recalcul suivant, qui relit le solde courant
+ * (FactureSoldeService). Chaque recalcul envoie une seule écriture (montant payé + statut)
+ * à facture-service.
+ */
+@Component
+public class FacturePaiementQueue {
+    private static final Logger logger = LoggerFactory.getLogger(FacturePaiementQueue.class);
+
+    // Présence = recalcul en cours ; dirty = au moins une demande reçue depuis son démarrage
+    private record Pending(boolean dirty, SecurityContext securityContext) {
+    }
+
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final FactureSoldeService factureSoldeService;
+    private final FactureServiceClient factureServiceClient;
+    private final ExecutorService executor;
+
+    public FacturePaiementQueue(FactureSoldeService factureSoldeService, FactureServiceClient factureServiceClient,
+                                @Value("${facture-paiement.pool-size:4}") int poolSize) {
+        this.factureSoldeService = factureSoldeService;
+        this.factureServiceClient = factureServiceClient;
+        // Pool propre à la file, pas un bean : l'applicationTaskExecutor de Boot reste en place
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("facture-paiement-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(poolSize, threadFactory);
+    }
+
+    @PreDestroy
+    public void arreter() {
+        executor.shutdown();
+    }
+
+    // Dans une transaction, la demande part après le commit pour que le recalcul lise le solde à jour
+    public void submit(Long factureId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(factureId);
+                }
+            });
+        } else {
+            enqueue(factureId);
+        }
+    }
+
+    private void enqueue(Long factureId) {
+        // Le JWT de la dernière demande sert au recalcul fusionné
+        Pending submitted = new Pending(false, SecurityContextHolder.getContext());
+        Pending result = pending.merge(factureId, submitted, (running, ignored) -> new Pending(true, submitted.securityContext()));
+        if (result == submitted) {
+            executor.execute(() -> drain(factureId));
+        }
+    }
+
+    private void drain(Long factureId) {
+        Pending current = pending.get(factureId);
+        while (current != null) {
+            apply(factureId, current.securityContext());
+            current = pending.computeIfPresent(factureId,
+                    (id, p) -> p.dirty() ? new Pending(false, p.securityContext()) : null);
+        }
+    }
+
+    private void apply(Long factureId, SecurityContext securityContext) {
+        SecurityContextHolder.setContext(securityContext);
+        try {
+            Double total = factureServiceClient.getFactureTotal(factureId);
+            if (total == null || total <= 0) {
+                logger.warn("Facture introuvable ou total invalide pour factureId={}", factureId);
+                return;
+            }
+            double totalPaid = factureSoldeService.montantPaye(factureId);
+
+            String newStatus;
+            if (totalPaid < 0.005) // le solde incrémental peut garder un reste d'arrondi
+                newStatus = "NON_PAYEE";
+            else if (totalPaid < total)
+                newStatus = "PARTIELLEMENT_PAYEE";
+            else
+                newStatus = "PAYEE";
+
+            factureServiceClient.updateFacturePaiement(factureId, totalPaid, newStatus);
+            logger.info("Mise à jour du statut facture {} : montant payé = {}, statut = {}", factureId, totalPaid,
+                    newStatus);
+        } catch (Exception e) {
+            logger.error("Erreur lors de la mise à jour du statut de la facture {} : {}", factureId, e.getMessage(), e);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.ms.reglement_service.service;
+
+import org.ms.reglement_service.entities.FactureSolde;
+import org.ms.reglement_service.entities.Reglement;
+import org.ms.reglement_service.feign.DeviseServiceClient;
+import org.ms.reglement_service.model.TauxAsOf;
+import org.ms.reglement_service.repository.FactureSoldeRepository;
+import org.ms.reglement_service.repository.ReglementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Maintient le montant payé en MAD de chaque facture. Chaque écriture sur un règlement
+ * retire son ancienne contribution et ajoute la nouvelle, de sorte que le montant payé
+ * se lit en une ligne. Le montant en MAD est figé sur le règlement au taux en vigueur
+ * de la saisie, ce qui permet de reconstruire le solde à l'identique.
+ * Les mises à jour sont des incréments atomiques : deux premiers règlements concurrents
+ * sur une même facture créent la ligne une seule fois et s'ajoutent tous les deux.
+ */
+@Service
+public class FactureSoldeService {
+    private static final Logger logger = LoggerFactory.getLogger(FactureSoldeService.class);
+
+    private final FactureSoldeRepository factureSoldeRepository;
+    private final ReglementRepository reglementRepository;
+    private final DeviseServiceClient deviseServiceClient;
+    private final TransactionTemplate creation;
+
+    public FactureSoldeService(FactureSoldeRepository factureSoldeRepository, ReglementRepository reglementRepository,
+                               DeviseServiceClient deviseServiceClient, PlatformTransactionManager transactionManager) {
+        this.factureSoldeRepository = factureSoldeRepository;
+        this.reglementRepository = reglementRepository;
+        this.deviseServiceClient = deviseServiceClient;
+        this.creation = new TransactionTemplate(transactionManager);
+        this.creation.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /** Contribution d'un règlement au solde de sa facture, capturée avant modification. */
+    public record Contribution(Long factureId, double montantMad, long nombre) {
+        public static Contribution of(Reglement reglement) {
+            if ("ANNULE".equals(reglement.getStatut()) || reglement.getMontantMad() == null) {
+                return new Contribution(reglement.getFactureId(), 0.0, 0);
+            }
+            return new Contribution(reglement.getFactureId(), reglement.getMontantMad(), 1);
+        }
+    }
+
+    /** Écart entre le solde enregistré et celui recalculé depuis les règlements. */
+    public record Ecart(Long factureId, double montantEnregistre, double montantAttendu) {
+    }
+
+    @Transactional
+    public void add(Reglement reglement) {
+        apply(Contribution.of(reglement), 1);
+    }
+
+    // Import en masse : une mise à jour par facture, pas par règlement
+    @Transactional
+    public void addAll(Collection<Reglement> reglements) {
+        addContributions(reglements.stream().map(Contribution::of).collect(Collectors.toList()));
+    }
+
+    @Transactional
+    public void addContributions(Collection<Contribution> contributions) {
+        Map<Long, List<Contribution>> parFacture = contributions.stream()
+                .filter(c -> c.factureId() != null)
+                .collect(Collectors.groupingBy(Contribution::factureId, TreeMap::new, Collectors.toList()));
+        parFacture.forEach((factureId, contributions) -> apply(new Contribution(factureId,
+                contributions.stream().mapToDouble(Contribution::montantMad).sum(),
+                contributions.stream().mapToLong(Contribution::nombre).sum()), 1));
+    }
+
+    @Transactional
+    public void remove(Contribution contribution) {
+        apply(contribution, -1);
+    }
+
+    @Transactional
+    public void replace(Contribution before, Reglement after) {
+        Contribution now = Contribution.of(after);
+        if (now.equals(before)) {
+            return;
+        }
+        apply(before, -1);
+        apply(now, 1);
+    }
+
+    @Transactional(readOnly = true)
+    public double montantPaye(Long factureId) {
+        return factureSoldeRepository.findById(factureId).map(FactureSolde::getMontantPayeMad).orElse(0.0);
+    }
+
+    // Compare chaque solde au recalcul depuis les règlements (aucune écriture)
+    @Transactional(readOnly = true)
+    public List<Ecart> check() {
+        Map<Long, Double> attendus = new HashMap<>();
+        for (Object[] row : reglementRepository.aggregateMontantMadByFacture()) {
+            attendus.put((Long) row[0], row[1] != null ? ((Number) row[1]).doubleValue() : 0.0);
+        }
+        Map<Long, FactureSolde> soldes = factureSoldeRepository.findAll().stream()
+                .collect(Collectors.toMap(FactureSolde::getFactureId, Function.identity()));
+
+        Set<Long> factureIds = new TreeSet<>(attendus.keySet());
+        factureIds.addAll(soldes.keySet());
+        List<Ecart> ecarts = new ArrayList<>();
+        for (Long factureId : factureIds) {
+            double attendu = attendus.getOrDefault(factureId, 0.0);
+            FactureSolde solde = soldes.get(factureId);
+            double enregistre = solde != null ? solde.getMontantPayeMad() : 0.0;
+            if (Math.abs(attendu - enregistre) > 0.005) {
+                ecarts.add(new Ecart(factureId, enregistre, attendu));
+            }
+        }
+        return ecarts;
+    }
+
+    // Régénère les soldes à partir des règlements ; renvoie les écarts corrigés
+    @Transactional
+    public List<Ecart> rebuild() {
+        convertirReglementsSansMontantMad();
+        List<Ecart> ecarts = check();
+        factureSoldeRepository.deleteAllInBatch();
+        for (Object[] row : reglementRepository.aggregateMontantMadByFacture()) {
+            double montant = row[1] != null ? ((Number) row[1]).doubleValue() : 0.0;
+            factureSoldeRepository.save(new FactureSolde((Long) row[0], montant, ((Number) row[2]).longValue()));
+        }
+        if (!ecarts.isEmpty()) {
+            logger.warn("{} solde(s) de facture corrigé(s) lors de la reconstruction", ecarts.size());
+        }
+        return ecarts;
+    }
+
+    // Règlements antérieurs au solde : convertis au taux en vigueur à leur date, en un seul appel
+    private void convertirReglementsSansMontantMad() {
+        List<Reglement> reglements = reglementRepository.findByMontantMadIsNull();
+        Date maintenant = new Date();
+        Map<String, TauxAsOf> demandes = new LinkedHashMap<>();
+        for (Reglement reglement : reglements) {
+            if (!estMad(reglement)) {
+                Date date = reglement.getDateReglement() != null ? reglement.getDateReglement() : maintenant;
+                demandes.putIfAbsent(TauxAsOf.cle(reglement.getModePaiement(), date),
+                        new TauxAsOf(reglement.getModePaiement(), date, null));
+            }
+        }
+        Map<String, Double> taux = new HashMap<>();
+        if (!demandes.isEmpty()) {
+            for (TauxAsOf t : deviseServiceClient.findTauxAsOf(new ArrayList<>(demandes.values()))) {
+                if (t.getTauxChange() == null) {
+                    throw new IllegalStateException("Aucun taux pour " + t.getCode() + " au " + t.getDate());
+                }
+                taux.put(TauxAsOf.cle(t.getCode(), t.getDate()), t.getTauxChange());
+            }
+        }
+        for (Reglement reglement : reglements) {
+            Date date = reglement.getDateReglement() != null ? reglement.getDateReglement() : maintenant;
+            double tauxChange = estMad(reglement) ? 1.0 : taux.get(TauxAsOf.cle(reglement.getModePaiement(), date));
+            reglement.setMontantMad(reglement.getMontant() * tauxChange);
+        }
+        reglementRepository.saveAll(reglements);
+    }
+
+    private static boolean estMad(Reglement reglement) {
+        return reglement.getModePaiement() == null || "MAD".equals(reglement.getModePaiement());
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        if (contribution.factureId() == null || contribution.nombre() == 0) {
+            return;
+        }
+        if (increment(contribution, sign) > 0) {
+            return;
+        }
+        // Premier règlement de la facture : la ligne est créée à zéro dans sa propre transaction,
+        // pour qu'une création concurrente (clé primaire) n'annule pas celle de l'appelant
+        try {
+            creation.executeWithoutResult(status -> factureSoldeRepository.creer(contribution.factureId()));
+        } catch (DataIntegrityViolationException e) {
+            // Créée entre-temps par une autre transaction
+        }
+        if (increment(contribution, sign) == 0) {
+            throw new IllegalStateException("Solde introuvable après création : facture " + contribution.factureId());
+        }
+    }
+
+    private int increment(Contribution contribution, int sign) {
+        return factureSoldeRepository.increment(contribution.factureId(), sign * contribution.montantMad(),
+                sign * contribution.nombre());
+    }
+}
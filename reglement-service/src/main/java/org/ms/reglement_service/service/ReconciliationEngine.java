@@ -0,0 +1,313 @@
+package org.ms.reglement_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.ms.reglement_service.dto.ReglementNonRapproche;
+import org.ms.reglement_service.feign.FactureServiceClient;
+import org.ms.reglement_service.model.FactureSummary;
+import org.ms.reglement_service.repository.ReglementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rapproche les règlements sans facture des factures non soldées.
+ * Les factures ouvertes sont chargées une fois dans trois index en mémoire
+ * (numéro de facture cité dans la référence, reste à payer exact en centimes MAD,
+ * client) ; chaque règlement n'examine que les candidats de ces index (pour l'index
+ * client, les factures dont le reste couvre le montant), note chacun et n'est affecté
+ * que si le meilleur score atteint le seuil sans ex aequo.
+ * Un règlement est ambigu quand plusieurs candidats partagent le meilleur score et que l'un
+ * d'eux, seul, aurait atteint le seuil ; sinon, faute d'affectation, il est sans candidat.
+ * En mode dryRun, rien n'est écrit.
+ */
+@Service
+public class ReconciliationEngine {
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationEngine.class);
+    private static final int FACTURES_PAGE_SIZE = 5000;
+    private static final int REGLEMENTS_PAGE_SIZE = 1000;
+    private static final int APERCU_MAX = 1000;
+    private static final Pattern REFERENCE_FACTURE = Pattern.compile("(?i)FAC(?:TURE)?[\\s_#-]*(\\d+)");
+
+    static final int SCORE_REFERENCE = 60;
+    static final int SCORE_MONTANT = 30;
+    static final int SCORE_CLIENT = 20;
+    static final int SCORE_MONTANT_UNIQUE = 20;
+
+    private final ReglementRepository reglementRepository;
+    private final FactureServiceClient factureServiceClient;
+    private final FactureSoldeService factureSoldeService;
+    private final FacturePaiementQueue facturePaiementQueue;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${reconciliation.seuil:70}")
+    private int seuil;
+
+    public ReconciliationEngine(ReglementRepository reglementRepository, FactureServiceClient factureServiceClient,
+                                FactureSoldeService factureSoldeService, FacturePaiementQueue facturePaiementQueue,
+                                JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry) {
+        this.reglementRepository = reglementRepository;
+        this.factureServiceClient = factureServiceClient;
+        this.factureSoldeService = factureSoldeService;
+        this.facturePaiementQueue = facturePaiementQueue;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public record Rapprochement(Long reglementId, Long factureId, int score) {
+    }
+
+    // Affectation retenue, avant écriture
+    record Affectation(Long reglementId, Long factureId, Long clientId, double montantMad, int score) {
+    }
+
+    public record ReconciliationReport(boolean dryRun, long facturesOuvertes, long reglements, long rapproches,
+                                       long ambigus, long sansCandidat, long chargementMs, long rapprochementMs,
+                                       double reglementsParSeconde, List<Rapprochement> apercu) {
+    }
+
+    // Facture ouverte ; le reste diminue au fil des affectations de la passe
+    static final class FactureOuverte {
+        final Long id;
+        final Long clientId;
+        long resteCentimes;
+
+        FactureOuverte(Long id, Long clientId, long resteCentimes) {
+            this.id = id;
+            this.clientId = clientId;
+            this.resteCentimes = resteCentimes;
+        }
+    }
+
+    /** Index en mémoire des factures ouvertes. */
+    static final class Index {
+        final Map<Long, FactureOuverte> parReference = new HashMap<>();
+        final Map<Long, List<FactureOuverte>> parMontant = new HashMap<>();
+        final Map<Long, List<FactureOuverte>> parClient = new HashMap<>();
+
+        void add(FactureOuverte facture) {
+            parReference.put(facture.id, facture);
+            parMontant.computeIfAbsent(facture.resteCentimes, k -> new ArrayList<>(1)).add(facture);
+            if (facture.clientId != null) {
+                parClient.computeIfAbsent(facture.clientId, k -> new ArrayList<>(1)).add(facture);
+            }
+        }
+
+        int size() {
+            return parReference.size();
+        }
+
+        // Le reste change de clé dans l'index par montant ; une facture soldée n'est plus candidate
+        void imputer(FactureOuverte facture, long centimes) {
+            List<FactureOuverte> bucket = parMontant.get(facture.resteCentimes);
+            if (bucket != null) {
+                bucket.remove(facture);
+                if (bucket.isEmpty()) {
+                    parMontant.remove(facture.resteCentimes);
+                }
+            }
+            facture.resteCentimes -= centimes;
+            if (facture.resteCentimes > 0) {
+                parMontant.computeIfAbsent(facture.resteCentimes, k -> new ArrayList<>(1)).add(facture);
+            }
+        }
+    }
+
+    public ReconciliationReport run(boolean dryRun) {
+        long start = System.nanoTime();
+        Index index = chargerFacturesOuvertes();
+        long chargement = System.nanoTime();
+
+        long reglements = 0;
+        long ambigus = 0;
+        long sansCandidat = 0;
+        long rapproches = 0;
+        List<Rapprochement> apercu = new ArrayList<>();
+        Set<Long> facturesTouchees = new HashSet<>();
+
+        Long afterId = 0L;
+        List<ReglementNonRapproche> page;
+        do {
+            page = reglementRepository.findNonRapprochesAfter(afterId, PageRequest.of(0, REGLEMENTS_PAGE_SIZE));
+            List<Affectation> affectations = new ArrayList<>();
+            for (ReglementNonRapproche reglement : page) {
+                reglements++;
+                Affectation affectation = rapprocher(reglement, index);
+                if (affectation == null) {
+                    sansCandidat++;
+                } else if (affectation.factureId() == null) {
+                    ambigus++;
+                } else {
+                    affectations.add(affectation);
+                }
+            }
+            if (!affectations.isEmpty()) {
+                rapproches += dryRun ? affectations.size() : enregistrer(affectations, facturesTouchees);
+                for (Affectation a : affectations) {
+                    if (apercu.size() < APERCU_MAX) {
+                        apercu.add(new Rapprochement(a.reglementId(), a.factureId(), a.score()));
+                    }
+                }
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == REGLEMENTS_PAGE_SIZE);
+
+        facturesTouchees.forEach(facturePaiementQueue::submit);
+
+        long fin = System.nanoTime();
+        long rapprochementMs = TimeUnit.NANOSECONDS.toMillis(fin - chargement);
+        double parSeconde = reglements == 0 ? 0 : reglements * 1_000_000_000.0 / Math.max(1, fin - chargement);
+        String mode = String.valueOf(dryRun);
+        Timer.builder("reconciliation.duration").tag("dryRun", mode).register(meterRegistry)
+                .record(fin - start, TimeUnit.NANOSECONDS);
+        compteur("rapproche", mode).increment(rapproches);
+        compteur("ambigu", mode).increment(ambigus);
+        compteur("sans_candidat", mode).increment(sansCandidat);
+        logger.info("Rapprochement (dryRun={}) : {} règlement(s), {} rapproché(s), {} ambigu(s) en {} ms",
+                dryRun, reglements, rapproches, ambigus, TimeUnit.NANOSECONDS.toMillis(fin - start));
+
+        return new ReconciliationReport(dryRun, index.size(), reglements, rapproches, ambigus, sansCandidat,
+                TimeUnit.NANOSECONDS.toMillis(chargement - start), rapprochementMs, parSeconde, apercu);
+    }
+
+    private Counter compteur(String resultat, String dryRun) {
+        return Counter.builder("reconciliation.reglements").tag("resultat", resultat).tag("dryRun", dryRun)
+                .register(meterRegistry);
+    }
+
+    private Index chargerFacturesOuvertes() {
+        Index index = new Index();
+        Long afterId = 0L;
+        List<FactureSummary> page;
+        do {
+            page = factureServiceClient.findFacturesOuvertes(afterId, FACTURES_PAGE_SIZE);
+            for (FactureSummary facture : page) {
+                long reste = centimes(facture.getResteAPayer() != null ? facture.getResteAPayer() : 0.0);
+                if (reste > 0) {
+                    index.add(new FactureOuverte(facture.getId(), facture.getClientId(), reste));
+                }
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == FACTURES_PAGE_SIZE);
+        return index;
+    }
+
+    /**
+     * Meilleur candidat pour un règlement : null si aucun candidat n'atteint le seuil,
+     * factureId null si le meilleur score est partagé (ambigu).
+     */
+    Affectation rapprocher(ReglementNonRapproche reglement, Index index) {
+        if (reglement.getMontantMad() == null) {
+            return null;
+        }
+        long montant = centimes(reglement.getMontantMad());
+        Map<FactureOuverte, Integer> scores = new HashMap<>();
+
+        Long numero = numeroFacture(reglement.getReference());
+        if (numero != null) {
+            FactureOuverte facture = index.parReference.get(numero);
+            if (facture != null && facture.resteCentimes > 0) {
+                scores.merge(facture, SCORE_REFERENCE, Integer::sum);
+            }
+        }
+        List<FactureOuverte> memeMontant = index.parMontant.getOrDefault(montant, List.of());
+        for (FactureOuverte facture : memeMontant) {
+            scores.merge(facture, memeMontant.size() == 1 ? SCORE_MONTANT + SCORE_MONTANT_UNIQUE : SCORE_MONTANT,
+                    Integer::sum);
+        }
+        if (reglement.getClientId() != null) {
+            for (FactureOuverte facture : index.parClient.getOrDefault(reglement.getClientId(), List.of())) {
+                if (scores.containsKey(facture) || (facture.resteCentimes > 0 && facture.resteCentimes >= montant)) {
+                    scores.merge(facture, SCORE_CLIENT, Integer::sum);
+                }
+            }
+        }
+        if (scores.isEmpty()) {
+            return null;
+        }
+
+        FactureOuverte meilleure = null;
+        int meilleurScore = -1;
+        boolean exAequo = false;
+        for (Map.Entry<FactureOuverte, Integer> entry : scores.entrySet()) {
+            if (entry.getValue() > meilleurScore) {
+                meilleure = entry.getKey();
+                meilleurScore = entry.getValue();
+                exAequo = false;
+            } else if (entry.getValue() == meilleurScore) {
+                exAequo = true;
+            }
+        }
+        // À égalité, aucun candidat n'a le bonus de montant unique : l'ambiguïté seule bloque
+        // l'affectation si ce bonus l'aurait portée au seuil
+        if (exAequo && meilleurScore + SCORE_MONTANT_UNIQUE >= seuil) {
+            return new Affectation(reglement.getId(), null, null, reglement.getMontantMad(), meilleurScore);
+        }
+        if (meilleurScore < seuil || exAequo) {
+            return null;
+        }
+        index.imputer(meilleure, montant);
+        Long clientId = reglement.getClientId() != null ? reglement.getClientId() : meilleure.clientId;
+        return new Affectation(reglement.getId(), meilleure.id, clientId, reglement.getMontantMad(), meilleurScore);
+    }
+
+    // Seuls les règlements encore non rapprochés sont mis à jour, puis reportés dans les soldes
+    private int enregistrer(List<Affectation> affectations, Set<Long> facturesTouchees) {
+        Integer count = transactionTemplate.execute(status -> {
+            List<Object[]> args = new ArrayList<>(affectations.size());
+            for (Affectation a : affectations) {
+                args.add(new Object[]{a.factureId(), a.clientId(), a.reglementId()});
+            }
+            int[] updated = jdbcTemplate.batchUpdate(
+                    "UPDATE reglement SET facture_id = ?, client_id = ? WHERE id = ? AND facture_id IS NULL", args);
+            List<FactureSoldeService.Contribution> contributions = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] != 0) {
+                    Affectation a = affectations.get(i);
+                    contributions.add(new FactureSoldeService.Contribution(a.factureId(), a.montantMad(), 1));
+                    facturesTouchees.add(a.factureId());
+                }
+            }
+            factureSoldeService.addContributions(contributions);
+            return contributions.size();
+        });
+        return count != null ? count : 0;
+    }
+
+    static Long numeroFacture(String reference) {
+        if (reference == null) {
+            return null;
+        }
+        Matcher matcher = REFERENCE_FACTURE.matcher(reference);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long centimes(double montant) {
+        return Math.round(montant * 100);
+    }
+}
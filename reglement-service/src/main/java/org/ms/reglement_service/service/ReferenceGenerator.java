@@ -0,0 +1,82 @@
+package org.ms.reglement_service.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Références de règlement uniques et triables, sans aller-retour en base.
+ * Identifiant sur 63 bits à la Snowflake : 41 bits de millisecondes depuis EPOCH,
+ * 10 bits de nœud (dérivé de l'instance Eureka) et 12 bits de séquence.
+ * L'horodatage et la séquence sont avancés ensemble par CAS ; quand la séquence
+ * déborde, ou si l'horloge recule, l'horodatage logique avance d'une milliseconde
+ * au lieu de bloquer.
+ */
+@Component
+public class ReferenceGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceGenerator.class);
+
+    static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final String PREFIX = "PAY-";
+    private static final int WIDTH = 13; // Long.MAX_VALUE en base 36
+
+    private final long nodeId;
+    // (millisecondes depuis EPOCH << SEQUENCE_BITS) | séquence
+    private final AtomicLong state = new AtomicLong();
+
+    public ReferenceGenerator(@Value("${reference.node-id:-1}") long configuredNodeId,
+                              ObjectProvider<EurekaInstanceConfigBean> eurekaInstance) {
+        if (configuredNodeId >= 0) {
+            this.nodeId = configuredNodeId & MAX_NODE;
+        } else {
+            EurekaInstanceConfigBean instance = eurekaInstance.getIfAvailable();
+            String instanceId = instance != null ? instance.getInstanceId() : null;
+            this.nodeId = nodeIdOf(instanceId != null ? instanceId : String.valueOf(ProcessHandle.current().pid()));
+            logger.info("Générateur de références : nœud {} (instance {})", nodeId, instanceId);
+        }
+    }
+
+    ReferenceGenerator(long nodeId) {
+        this.nodeId = nodeId & MAX_NODE;
+    }
+
+    public String next() {
+        String id = Long.toString(nextId(), 36).toUpperCase();
+        StringBuilder reference = new StringBuilder(PREFIX.length() + WIDTH).append(PREFIX);
+        for (int i = id.length(); i < WIDTH; i++) {
+            reference.append('0');
+        }
+        return reference.append(id).toString();
+    }
+
+    long nextId() {
+        while (true) {
+            long last = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long candidate = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            if (state.compareAndSet(last, candidate)) {
+                long timestamp = candidate >>> SEQUENCE_BITS;
+                long sequence = candidate & ((1L << SEQUENCE_BITS) - 1);
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    static long nodeIdOf(String instanceId) {
+        // Mélange de bits pour répartir des identifiants proches (hôte:port, valeurs aléatoires)
+        long h = instanceId.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x45d9f3bL;
+        h ^= (h >>> 16);
+        return h & MAX_NODE;
+    }
+}
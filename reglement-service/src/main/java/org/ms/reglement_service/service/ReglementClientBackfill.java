@@ -0,0 +1,57 @@
+package org.ms.reglement_service.service;
+
+import org.ms.reglement_service.entities.Reglement;
+import org.ms.reglement_service.feign.FactureServiceClient;
+import org.ms.reglement_service.model.FactureSummary;
+import org.ms.reglement_service.repository.ReglementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Renseigne le clientId des règlements saisis avant sa dénormalisation,
+ * à partir des factures, par lots de factures distinctes.
+ */
+@Service
+public class ReglementClientBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(ReglementClientBackfill.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final ReglementRepository reglementRepository;
+    private final FactureServiceClient factureServiceClient;
+
+    public ReglementClientBackfill(ReglementRepository reglementRepository, FactureServiceClient factureServiceClient) {
+        this.reglementRepository = reglementRepository;
+        this.factureServiceClient = factureServiceClient;
+    }
+
+    // Renvoie le nombre de règlements complétés
+    @Transactional
+    public int backfill() {
+        Map<Long, List<Reglement>> parFacture = reglementRepository.findByClientIdIsNull().stream()
+                .filter(r -> r.getFactureId() != null)
+                .collect(Collectors.groupingBy(Reglement::getFactureId));
+        List<Long> factureIds = new ArrayList<>(parFacture.keySet());
+        int count = 0;
+        for (int from = 0; from < factureIds.size(); from += BATCH_SIZE) {
+            Set<Long> lot = new HashSet<>(factureIds.subList(from, Math.min(from + BATCH_SIZE, factureIds.size())));
+            for (FactureSummary facture : factureServiceClient.findFactureSummaries(lot)) {
+                if (facture.getClientId() == null) {
+                    continue;
+                }
+                for (Reglement reglement : parFacture.getOrDefault(facture.getId(), List.of())) {
+                    reglement.setClientId(facture.getClientId());
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            logger.info("clientId renseigné pour {} règlement(s)", count);
+        }
+        return count;
+    }
+}
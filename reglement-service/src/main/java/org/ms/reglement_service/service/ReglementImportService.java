@@ -0,0 +1,297 @@
+package org.ms.reglement_service.service;
+
+import feign.FeignException;
+import org.ms.reglement_service.entities.Reglement;
+import org.ms.reglement_service.feign.DeviseServiceClient;
+import org.ms.reglement_service.feign.FactureServiceClient;
+import org.ms.reglement_service.model.FactureSummary;
+import org.ms.reglement_service.model.TauxAsOf;
+import org.ms.reglement_service.repository.ReglementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Import d'un relevé bancaire CSV en règlements. Le fichier est lu par blocs
+ * de BATCH_SIZE lignes ; chaque bloc est validé avec un appel groupé à
+ * facture-service et un appel groupé à devise-service pour les taux en vigueur
+ * aux dates des règlements, inséré par lot JDBC
+ * et reporté dans les soldes de factures dans une même transaction.
+ * Les factures touchées par un bloc sont recalculées dès son commit (la file fusionne
+ * les demandes répétées) ; un bloc refusé par la base est rejeté en entier, ligne par ligne,
+ * sans interrompre les blocs suivants.
+ *
+ * Format attendu (séparateur ',' ou ';', en-tête obligatoire) :
+ * factureId,montant,dateReglement(yyyy-MM-dd),modePaiement,reference,statut
+ * Un factureId vide importe un règlement non rapproché (voir ReconciliationEngine).
+ */
+@Service
+public class ReglementImportService {
+    private static final Logger logger = LoggerFactory.getLogger(ReglementImportService.class);
+    private static final int BATCH_SIZE = 500;
+    private static final List<String> STATUTS_VALIDES = List.of("COMPLET", "PARTIEL", "ANNULE");
+    private static final String INSERT_SQL = "INSERT INTO reglement "
+            + "(facture_id, montant, date_reglement, mode_paiement, reference, statut, montant_mad, client_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FactureServiceClient factureServiceClient;
+    private final DeviseServiceClient deviseServiceClient;
+    private final FactureSoldeService factureSoldeService;
+    private final FacturePaiementQueue facturePaiementQueue;
+    private final ReglementRepository reglementRepository;
+    private final ReferenceGenerator referenceGenerator;
+
+    public ReglementImportService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                  FactureServiceClient factureServiceClient, DeviseServiceClient deviseServiceClient,
+                                  FactureSoldeService factureSoldeService, FacturePaiementQueue facturePaiementQueue,
+                                  ReglementRepository reglementRepository, ReferenceGenerator referenceGenerator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.factureServiceClient = factureServiceClient;
+        this.deviseServiceClient = deviseServiceClient;
+        this.factureSoldeService = factureSoldeService;
+        this.facturePaiementQueue = facturePaiementQueue;
+        this.reglementRepository = reglementRepository;
+        this.referenceGenerator = referenceGenerator;
+    }
+
+    public record LigneResultat(long ligne, boolean importe, String reference, String message) {
+    }
+
+    public record ImportReport(long lignes, long importees, long rejetees, long dureeMs, List<LigneResultat> resultats) {
+    }
+
+    private record Ligne(long numero, String[] champs) {
+    }
+
+    public ImportReport importer(InputStream csv) throws IOException {
+        long start = System.currentTimeMillis();
+        List<LigneResultat> resultats = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8), 1 << 16)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return new ImportReport(0, 0, 0, 0, resultats);
+            }
+            String separateur = header.contains(";") ? ";" : ",";
+            List<Ligne> bloc = new ArrayList<>(BATCH_SIZE);
+            long numero = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                numero++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                bloc.add(new Ligne(numero, line.split(separateur, -1)));
+                if (bloc.size() == BATCH_SIZE) {
+                    traiterBloc(bloc, resultats);
+                    bloc.clear();
+                }
+            }
+            if (!bloc.isEmpty()) {
+                traiterBloc(bloc, resultats);
+            }
+        }
+
+        long importees = resultats.stream().filter(LigneResultat::importe).count();
+        long duree = System.currentTimeMillis() - start;
+        logger.info("Import de relevé : {} ligne(s), {} importée(s) en {} ms", resultats.size(), importees, duree);
+        return new ImportReport(resultats.size(), importees, resultats.size() - importees, duree, resultats);
+    }
+
+    private void traiterBloc(List<Ligne> bloc, List<LigneResultat> resultats) {
+        Date maintenant = new Date();
+        Map<Long, FactureSummary> factures;
+        try {
+            Set<Long> factureIds = bloc.stream().map(l -> parseLong(champ(l, 0))).filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            factures = factureIds.isEmpty() ? Map.of() : factureServiceClient.findFactureSummaries(factureIds).stream()
+                    .collect(Collectors.toMap(FactureSummary::getId, f -> f, (a, b) -> a));
+        } catch (FeignException e) {
+            bloc.forEach(l -> resultats.add(new LigneResultat(l.numero(), false, champ(l, 4),
+                    "Facture service unavailable")));
+            return;
+        }
+        Map<String, Double> taux = resoudreTaux(bloc, maintenant);
+
+        // Références déjà en base ou répétées dans le bloc (les blocs précédents sont déjà en base)
+        Set<String> referencesFournies = bloc.stream().map(l -> champ(l, 4)).filter(r -> !r.isEmpty())
+                .collect(Collectors.toSet());
+        Set<String> references = referencesFournies.isEmpty() ? new HashSet<>()
+                : new HashSet<>(reglementRepository.findExistingReferences(referencesFournies));
+
+        List<Reglement> valides = new ArrayList<>();
+        List<LigneResultat> resultatsBloc = new ArrayList<>();
+        for (Ligne ligne : bloc) {
+            try {
+                Reglement reglement = valider(ligne, factures, taux, maintenant);
+                if (!references.add(reglement.getReference())) {
+                    throw new IllegalArgumentException("Reference already used: " + reglement.getReference());
+                }
+                valides.add(reglement);
+                resultatsBloc.add(new LigneResultat(ligne.numero(), true, reglement.getReference(), null));
+            } catch (IllegalArgumentException e) {
+                resultatsBloc.add(new LigneResultat(ligne.numero(), false, champ(ligne, 4), e.getMessage()));
+            }
+        }
+
+        if (!valides.isEmpty()) {
+            try {
+                inserer(valides);
+            } catch (DataAccessException e) {
+                logger.warn("Bloc de {} règlement(s) refusé par la base : {}", valides.size(), e.getMessage());
+                resultatsBloc.replaceAll(r -> r.importe()
+                        ? new LigneResultat(r.ligne(), false, r.reference(), "Block rejected by the database") : r);
+                resultats.addAll(resultatsBloc);
+                return;
+            }
+            // Bloc commité : recalcul de ses factures, fusionné par la file
+            valides.stream().map(Reglement::getFactureId).filter(Objects::nonNull).distinct()
+                    .forEach(facturePaiementQueue::submit);
+        }
+        resultats.addAll(resultatsBloc);
+    }
+
+    private void inserer(List<Reglement> valides) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_SQL, valides, valides.size(), (ps, r) -> {
+                ps.setObject(1, r.getFactureId());
+                ps.setDouble(2, r.getMontant());
+                ps.setTimestamp(3, new Timestamp(r.getDateReglement().getTime()));
+                ps.setString(4, r.getModePaiement());
+                ps.setString(5, r.getReference());
+                ps.setString(6, r.getStatut());
+                ps.setDouble(7, r.getMontantMad());
+                ps.setObject(8, r.getClientId());
+            });
+            factureSoldeService.addAll(valides);
+        });
+    }
+
+    private Reglement valider(Ligne ligne, Map<Long, FactureSummary> factures, Map<String, Double> taux,
+                              Date maintenant) {
+        if (ligne.champs().length < 6) {
+            throw new IllegalArgumentException("6 colonnes attendues");
+        }
+        Long factureId = parseLong(champ(ligne, 0));
+        if (factureId == null && !champ(ligne, 0).isEmpty()) {
+            throw new IllegalArgumentException("factureId invalide");
+        }
+        FactureSummary facture = factureId != null ? factures.get(factureId) : null;
+        if (factureId != null && facture == null) {
+            throw new IllegalArgumentException("Facture not found for ID: " + factureId);
+        }
+        double montant;
+        try {
+            montant = Double.parseDouble(champ(ligne, 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Montant invalide");
+        }
+        if (montant <= 0) {
+            throw new IllegalArgumentException("Montant must be positive and not null");
+        }
+        Date date = parseDate(champ(ligne, 2), maintenant);
+        if (date == null) {
+            throw new IllegalArgumentException("dateReglement invalide (yyyy-MM-dd attendu)");
+        }
+        String modePaiement = champ(ligne, 3).isEmpty() ? "MAD" : champ(ligne, 3);
+        String statut = champ(ligne, 5);
+        if (!STATUTS_VALIDES.contains(statut)) {
+            throw new IllegalArgumentException("Invalid or missing statut: must be COMPLET, PARTIEL, or ANNULE");
+        }
+        String reference = champ(ligne, 4).isEmpty() ? referenceGenerator.next() : champ(ligne, 4);
+
+        Reglement reglement = new Reglement();
+        reglement.setFactureId(factureId);
+        reglement.setMontant(montant);
+        reglement.setDateReglement(date);
+        reglement.setModePaiement(modePaiement);
+        reglement.setReference(reference);
+        reglement.setStatut(statut);
+        reglement.setMontantMad(montant * tauxVersMad(modePaiement, date, taux));
+        reglement.setClientId(facture != null ? facture.getClientId() : null);
+        return reglement;
+    }
+
+    // Taux en vigueur pour chaque couple (devise, date) distinct du bloc, en un seul appel ;
+    // null si devise-service est indisponible
+    private Map<String, Double> resoudreTaux(List<Ligne> bloc, Date maintenant) {
+        Map<String, TauxAsOf> demandes = new LinkedHashMap<>();
+        for (Ligne ligne : bloc) {
+            String code = champ(ligne, 3);
+            Date date = parseDate(champ(ligne, 2), maintenant);
+            if (!code.isEmpty() && !"MAD".equals(code) && date != null) {
+                demandes.putIfAbsent(TauxAsOf.cle(code, date), new TauxAsOf(code, date, null));
+            }
+        }
+        Map<String, Double> taux = new HashMap<>();
+        if (demandes.isEmpty()) {
+            return taux;
+        }
+        try {
+            for (TauxAsOf t : deviseServiceClient.findTauxAsOf(new ArrayList<>(demandes.values()))) {
+                if (t.getTauxChange() != null) {
+                    taux.put(TauxAsOf.cle(t.getCode(), t.getDate()), t.getTauxChange());
+                }
+            }
+        } catch (FeignException e) {
+            return null;
+        }
+        return taux;
+    }
+
+    private static double tauxVersMad(String code, Date date, Map<String, Double> taux) {
+        if ("MAD".equals(code)) {
+            return 1.0;
+        }
+        if (taux == null) {
+            throw new IllegalArgumentException("Devise service unavailable");
+        }
+        Double valeur = taux.get(TauxAsOf.cle(code, date));
+        if (valeur == null) {
+            throw new IllegalArgumentException("Invalid currency in modePaiement: " + code);
+        }
+        return valeur;
+    }
+
+    private static Date parseDate(String value, Date maintenant) {
+        if (value.isEmpty()) {
+            return maintenant;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setLenient(false); // "2024-02-30" est rejetée, pas reportée au 1er mars
+        try {
+            return format.parse(value);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static String champ(Ligne ligne, int index) {
+        return index < ligne.champs().length ? ligne.champs()[index].trim() : "";
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,20 +1,36 @@
 package org.ms.reglement_service.web;
 
 import jakarta.validation.Valid;
+import org.ms.reglement_service.concurrent.FanOut;
 import org.ms.reglement_service.entities.Reglement;
 import org.ms.reglement_service.feign.FactureServiceClient;
 import org.ms.reglement_service.feign.DeviseServiceClient;
 import org.ms.reglement_service.model.Facture;
-import org.ms.reglement_service.model.Devise;
+import org.ms.reglement_service.model.FactureSummary;
+import org.ms.reglement_service.model.TauxAsOf;
 import org.ms.reglement_service.repository.ReglementRepository;
+import org.ms.reglement_service.service.FacturePaiementQueue;
+import org.ms.reglement_service.service.FactureSoldeService;
+import org.ms.reglement_service.service.ReglementClientBackfill;
+import org.ms.reglement_service.service.ReglementImportService;
+import org.ms.reglement_service.service.ReconciliationEngine;
+import org.ms.reglement_service.service.ReferenceGenerator;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 import feign.FeignException;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
@@ -29,14 +45,33 @@ public class ReglementRestController {
 	private final ReglementRepository reglementRepository;
 	private final FactureServiceClient factureServiceClient;
 	private final DeviseServiceClient deviseServiceClient;
+	private final FanOut fanOut;
+	private final FacturePaiementQueue facturePaiementQueue;
+	private final FactureSoldeService factureSoldeService;
+	private final ReglementClientBackfill reglementClientBackfill;
+	private final ReglementImportService reglementImportService;
+	private final ReconciliationEngine reconciliationEngine;
+	private final ReferenceGenerator referenceGenerator;
+	private final TransactionTemplate transactionTemplate;
 	private static final Logger logger = LoggerFactory.getLogger(ReglementRestController.class);
 	private static final List<String> STATUTS_VALIDES = List.of("COMPLET", "PARTIEL", "ANNULE");
 
 	public ReglementRestController(ReglementRepository reglementRepository, FactureServiceClient factureServiceClient,
-			DeviseServiceClient deviseServiceClient) {
+			DeviseServiceClient deviseServiceClient, FanOut fanOut, FacturePaiementQueue facturePaiementQueue,
+			FactureSoldeService factureSoldeService, ReglementClientBackfill reglementClientBackfill,
+			ReglementImportService reglementImportService, ReconciliationEngine reconciliationEngine,
+			ReferenceGenerator referenceGenerator, PlatformTransactionManager transactionManager) {
 		this.reglementRepository = reglementRepository;
 		this.factureServiceClient = factureServiceClient;
 		this.deviseServiceClient = deviseServiceClient;
+		this.fanOut = fanOut;
+		this.facturePaiementQueue = facturePaiementQueue;
+		this.factureSoldeService = factureSoldeService;
+		this.reglementClientBackfill = reglementClientBackfill;
+		this.reglementImportService = reglementImportService;
+		this.reconciliationEngine = reconciliationEngine;
+		this.referenceGenerator = referenceGenerator;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
 	}
 
 	@GetMapping
@@ -46,8 +81,8 @@ public class ReglementRestController {
 			@RequestParam(required = false) String modePaiement) {
 		Page<Reglement> pageReglements = reglementRepository.findByStatutAndModePaiement(statut, modePaiement,
 				PageRequest.of(page, size));
-		List<Map<String, Object>> enrichedReglements = pageReglements.getContent().stream()
-				.map(this::enrichReglementWithFactureDetails).collect(Collectors.toList());
+		List<Map<String, Object>> enrichedReglements = enrichReglementsWithFactureDetails(
+				pageReglements.getContent());
 		Map<String, Object> response = new HashMap<>();
 		response.put("reglements", enrichedReglements);
 		response.put("totalPages", pageReglements.getTotalPages());
@@ -55,6 +90,34 @@ public class ReglementRestController {
 		return response;
 	}
 
+	// Pagination par curseur : un jeton vide (after=) demande la première page
+	@GetMapping(params = "after")
+	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
+	public Map<String, Object> getAllReglementsAfter(@RequestParam String after,
+			@RequestParam(defaultValue = "5") int size, @RequestParam(required = false) String statut,
+			@RequestParam(required = false) String modePaiement,
+			@RequestParam(defaultValue = "false") boolean withCount) {
+		KeysetCursor.checkSize(size);
+		KeysetCursor.Position<Date> position = KeysetCursor.decode(after, sortKey -> new Date(Long.parseLong(sortKey)));
+		Date date = position != null ? position.sortKey() : null;
+		Long id = position != null ? position.id() : null;
+		List<Reglement> reglements = reglementRepository.findPageAfter(statut, modePaiement, date, id,
+				PageRequest.of(0, size + 1));
+		String next = null;
+		if (reglements.size() > size) {
+			reglements = reglements.subList(0, size);
+			Reglement last = reglements.get(size - 1);
+			next = KeysetCursor.encode(String.valueOf(last.getDateReglement().getTime()), last.getId());
+		}
+		Map<String, Object> response = new HashMap<>();
+		response.put("reglements", enrichReglementsWithFactureDetails(reglements));
+		response.put("next", next);
+		if (withCount) {
+			response.put("totalElements", reglementRepository.countByStatutAndModePaiement(statut, modePaiement));
+		}
+		return response;
+	}
+
 	// Récupérer un règlement par son ID
 
 	@GetMapping("/{id}")
@@ -71,29 +134,49 @@ public class ReglementRestController {
 	@ResponseStatus(HttpStatus.CREATED)
 	@PreAuthorize("hasAuthority('ADMIN')")
 	public Reglement createReglement(@Valid @RequestBody Reglement reglement) {
+		// Appels à facture-service et devise-service avant la transaction : pas de connexion tenue pendant
 		validateReglement(reglement);
-		Reglement saved = reglementRepository.save(reglement);
-		updateFactureStatus(saved.getFactureId());
-		return saved;
+		return transactionTemplate.execute(status -> {
+			Reglement saved = saveReglement(reglement);
+			factureSoldeService.add(saved);
+			updateFactureStatus(saved.getFactureId());
+			return saved;
+		});
 	}
 
 	// Mettre à jour un règlement existant
 	@PutMapping("/{id}")
 	@PreAuthorize("hasAuthority('ADMIN')")
 	public Reglement updateReglement(@PathVariable Long id, @Valid @RequestBody Reglement reglement) {
-		Reglement existing = reglementRepository.findById(id)
-				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Règlement non trouvé"));
+		// Sans référence dans la requête, le règlement garde la sienne
+		if (reglement.getReference() == null || reglement.getReference().isBlank()) {
+			reglement.setReference(reglementRepository.findById(id)
+					.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Règlement non trouvé"))
+					.getReference());
+		}
+		// Appels distants hors transaction ; le règlement est relu dans la transaction pour le solde
 		validateReglement(reglement);
-		// Met à jour les champs
-		existing.setMontant(reglement.getMontant());
-		existing.setDateReglement(reglement.getDateReglement());
-		existing.setModePaiement(reglement.getModePaiement());
-		existing.setReference(reglement.getReference());
-		existing.setStatut(reglement.getStatut());
-		existing.setFactureId(reglement.getFactureId());
-		Reglement updated = reglementRepository.save(existing);
-		updateFactureStatus(updated.getFactureId());
-		return updated;
+		return transactionTemplate.execute(status -> {
+			Reglement existing = reglementRepository.findById(id)
+					.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Règlement non trouvé"));
+			FactureSoldeService.Contribution before = FactureSoldeService.Contribution.of(existing);
+			// Met à jour les champs
+			existing.setMontant(reglement.getMontant());
+			existing.setDateReglement(reglement.getDateReglement());
+			existing.setModePaiement(reglement.getModePaiement());
+			existing.setReference(reglement.getReference());
+			existing.setStatut(reglement.getStatut());
+			existing.setFactureId(reglement.getFactureId());
+			existing.setMontantMad(reglement.getMontantMad());
+			existing.setClientId(reglement.getClientId());
+			Reglement updated = saveReglement(existing);
+			factureSoldeService.replace(before, updated);
+			if (!Objects.equals(before.factureId(), updated.getFactureId())) {
+				updateFactureStatus(before.factureId());
+			}
+			updateFactureStatus(updated.getFactureId());
+			return updated;
+		});
 	}
 
 	// Supprimer un règlement
@@ -101,13 +184,41 @@ public class ReglementRestController {
 	@DeleteMapping("/{id}")
 	@ResponseStatus(HttpStatus.NO_CONTENT)
 	@PreAuthorize("hasAuthority('ADMIN')")
+	@Transactional
 	public void deleteReglement(@PathVariable Long id) {
 		Reglement reglement = reglementRepository.findById(id)
 				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Règlement non trouvé"));
 		reglementRepository.deleteById(id);
+		factureSoldeService.remove(FactureSoldeService.Contribution.of(reglement));
 		updateFactureStatus(reglement.getFactureId());
 	}
 
+	// Import d'un relevé bancaire CSV (voir ReglementImportService pour le format)
+	@PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public ReglementImportService.ImportReport importReglements(@RequestParam("file") MultipartFile file) {
+		if (file.isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Fichier vide");
+		}
+		try {
+			return reglementImportService.importer(file.getInputStream());
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Lecture du fichier impossible: " + e.getMessage());
+		}
+	}
+
+	// Rapprochement automatique des règlements sans facture ; dryRun par défaut
+	@PostMapping("/rapprochement")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public ReconciliationEngine.ReconciliationReport rapprocher(@RequestParam(defaultValue = "true") boolean dryRun) {
+		try {
+			return reconciliationEngine.run(dryRun);
+		} catch (FeignException e) {
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+					"Facture service unavailable: " + e.getMessage());
+		}
+	}
+
 	// Récupérer les règlements d’une facture
 	@GetMapping("/facture/{factureId}")
 	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
@@ -121,34 +232,12 @@ public class ReglementRestController {
 			@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "5") int size,
 			@RequestParam(required = false) String statut, @RequestParam(required = false) String modePaiement) {
 
-		List<Long> factureIds;
-		try {
-			factureIds = factureServiceClient.getFactureIdsByClient(clientId);
-		} catch (FeignException e) {
-			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
-					"Facture service unavailable: " + e.getMessage());
-		}
-
-		if (factureIds.isEmpty()) {
-			// Pas de factures, donc pas de règlements
-			Map<String, Object> emptyResponse = new HashMap<>();
-			emptyResponse.put("reglements", Collections.emptyList());
-			emptyResponse.put("totalPages", 0);
-			emptyResponse.put("totalElements", 0);
-			return emptyResponse;
-		}
-
-		// Pour gérer les filtres optionnels, on remplace null par "" pour utiliser
-		// ContainingIgnoreCase
-		String statutFilter = (statut != null) ? statut : "";
-		String modePaiementFilter = (modePaiement != null) ? modePaiement : "";
-
-		Page<Reglement> pageReglements = reglementRepository
-				.findByFactureIdInAndStatutContainingIgnoreCaseAndModePaiementContainingIgnoreCase(factureIds,
-						statutFilter, modePaiementFilter, PageRequest.of(page, size));
+		// clientId est porté par le règlement : ni appel à facture-service ni liste IN
+		Page<Reglement> pageReglements = reglementRepository.findByClient(clientId, statut, modePaiement,
+				PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "dateReglement")));
 
-		List<Map<String, Object>> enrichedReglements = pageReglements.getContent().stream()
-				.map(this::enrichReglementWithFactureDetails).collect(Collectors.toList());
+		List<Map<String, Object>> enrichedReglements = enrichReglementsWithFactureDetails(
+				pageReglements.getContent());
 
 		Map<String, Object> response = new HashMap<>();
 		response.put("reglements", enrichedReglements);
@@ -160,6 +249,21 @@ public class ReglementRestController {
 
 	// --- Validation et mise à jour du statut de la facture ---
 
+	// La contrainte unique sur reference est vérifiée au flush, dans la requête ;
+	// les autres violations d'intégrité ne sont pas des conflits de référence
+	private Reglement saveReglement(Reglement reglement) {
+		try {
+			return reglementRepository.saveAndFlush(reglement);
+		} catch (DataIntegrityViolationException e) {
+			String message = e.getMostSpecificCause().getMessage();
+			if (message != null && message.toLowerCase(Locale.ROOT).contains("ux_reglement_reference")) {
+				throw new ResponseStatusException(HttpStatus.CONFLICT,
+						"Reference already used: " + reglement.getReference());
+			}
+			throw e;
+		}
+	}
+
 	private void validateReglement(Reglement reglement) {
 		if (reglement.getFactureId() == null) {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Facture ID is required");
@@ -179,6 +283,7 @@ public class ReglementRestController {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
 					"Facture not found for ID: " + reglement.getFactureId());
 		}
+		reglement.setClientId(facture.getClient() != null ? facture.getClient().getId() : null);
 
 		if (reglement.getDateReglement() == null) {
 			reglement.setDateReglement(new Date());
@@ -191,63 +296,66 @@ public class ReglementRestController {
 
 		if (reglement.getModePaiement() == null) {
 			reglement.setModePaiement("MAD");
+			reglement.setMontantMad(reglement.getMontant());
+		} else if ("MAD".equals(reglement.getModePaiement())) {
+			reglement.setMontantMad(reglement.getMontant());
 		} else {
 			try {
-				Devise devise = deviseServiceClient.findDeviseByCode(reglement.getModePaiement());
-				if (devise == null || devise.getCode() == null) {
+				// Taux en vigueur à la date du règlement, figé : le solde reste reconstructible à l'identique
+				List<TauxAsOf> taux = deviseServiceClient.findTauxAsOf(
+						List.of(new TauxAsOf(reglement.getModePaiement(), reglement.getDateReglement(), null)));
+				if (taux.isEmpty() || taux.get(0).getTauxChange() == null) {
 					throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
 							"Invalid currency in modePaiement: " + reglement.getModePaiement());
 				}
+				reglement.setMontantMad(reglement.getMontant() * taux.get(0).getTauxChange());
 			} catch (FeignException e) {
 				throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
 						"Devise service unavailable: " + e.getMessage());
 			}
 		}
 
-		if (reglement.getReference() == null) {
-			reglement.setReference("PAY-" + System.currentTimeMillis());
+		if (reglement.getReference() == null || reglement.getReference().isBlank()) {
+			reglement.setReference(referenceGenerator.next());
 		}
 	}
 
+	// Recalcul asynchrone et fusionné par facture (voir FacturePaiementQueue)
 	private void updateFactureStatus(Long factureId) {
-		try {
-			Facture facture = factureServiceClient.findFactureById(factureId);
-			if (facture == null || facture.getTotal() == null || facture.getTotal() <= 0) {
-				logger.warn("Facture introuvable ou total invalide pour factureId={}", factureId);
-				return;
-			}
-			List<Reglement> reglements = reglementRepository.findByFactureId(factureId);
-			double totalPaid = reglements.stream().filter(r -> !"ANNULE".equals(r.getStatut())).mapToDouble(r -> {
-				if (!"MAD".equals(r.getModePaiement())) {
-					Devise devise = deviseServiceClient.findDeviseByCode(r.getModePaiement());
-					if (devise == null) {
-						logger.warn("Devise inconnue pour code {}", r.getModePaiement());
-						return 0.0;
-					}
-					return r.getMontant() * devise.getTauxChange();
+		facturePaiementQueue.submit(factureId);
+	}
+
+	private Map<String, Object> enrichReglementWithFactureDetails(Reglement reglement) {
+		return enrichReglementsWithFactureDetails(List.of(reglement)).get(0);
+	}
+
+	// Les factures distinctes de la page sont résolues en un seul appel à POST /factures/summaries
+	private List<Map<String, Object>> enrichReglementsWithFactureDetails(List<Reglement> reglements) {
+		Set<Long> factureIds = reglements.stream().map(Reglement::getFactureId).filter(Objects::nonNull)
+				.collect(Collectors.toSet());
+		Map<Long, FactureSummary> factures = new HashMap<>();
+		boolean indisponible = false;
+		if (!factureIds.isEmpty()) {
+			try (FanOut.Scope scope = fanOut.open()) {
+				FanOut.Call<List<FactureSummary>> call = scope
+						.fork(() -> factureServiceClient.findFactureSummaries(factureIds), List.of());
+				scope.join();
+				if (call.failed()) {
+					logger.error("Erreur lors de la récupération des factures {} : {}", factureIds,
+							call.failure().toString());
+					indisponible = true;
 				}
-				return r.getMontant();
-			}).sum();
-
-			String newStatus;
-			if (totalPaid == 0)
-				newStatus = "NON_PAYEE";
-			else if (totalPaid < facture.getTotal())
-				newStatus = "PARTIELLEMENT_PAYEE";
-			else
-				newStatus = "PAYEE";
-
-			factureServiceClient.updateFactureMontantPaye(factureId, totalPaid);
-			factureServiceClient.updateFactureStatus(factureId, newStatus);
-
-			logger.info("Mise à jour du statut facture {} : montant payé = {}, statut = {}", factureId, totalPaid,
-					newStatus);
-		} catch (Exception e) {
-			logger.error("Erreur lors de la mise à jour du statut de la facture {} : {}", factureId, e.getMessage(), e);
+				call.get().forEach(summary -> factures.put(summary.getId(), summary));
+			}
 		}
+		boolean serviceIndisponible = indisponible;
+		return reglements.stream()
+				.map(reglement -> toReglementMap(reglement, factures.get(reglement.getFactureId()), serviceIndisponible))
+				.collect(Collectors.toList());
 	}
 
-	private Map<String, Object> enrichReglementWithFactureDetails(Reglement reglement) {
+	private Map<String, Object> toReglementMap(Reglement reglement, FactureSummary facture,
+			boolean serviceIndisponible) {
 		Map<String, Object> reglementMap = new HashMap<>();
 		reglementMap.put("id", reglement.getId());
 		reglementMap.put("factureId", reglement.getFactureId());
@@ -257,24 +365,19 @@ public class ReglementRestController {
 		reglementMap.put("reference", reglement.getReference());
 		reglementMap.put("statut", reglement.getStatut());
 
-		try {
-			Facture facture = factureServiceClient.findFactureById(reglement.getFactureId());
-			if (facture != null) {
-				Map<String, Object> factureDetails = new HashMap<>();
-				factureDetails.put("total", facture.getTotal());
-				factureDetails.put("status", facture.getStatus());
-				if (facture.getClient() != null) {
-					factureDetails.put("clientName", facture.getClient().getName());
-					factureDetails.put("clientId", facture.getClient().getId());
-				}
-				reglementMap.put("factureDetails", factureDetails);
-			} else {
-				reglementMap.put("factureDetails", "Facture not found");
-			}
-		} catch (FeignException e) {
-			logger.error("Erreur lors de la récupération de la facture {} : {}", reglement.getFactureId(),
-					e.getMessage());
+		if (serviceIndisponible) {
 			reglementMap.put("factureDetails", "Facture service unavailable");
+		} else if (facture != null) {
+			Map<String, Object> factureDetails = new HashMap<>();
+			factureDetails.put("total", facture.getTotal());
+			factureDetails.put("status", facture.getStatus());
+			if (facture.getClientId() != null) {
+				factureDetails.put("clientName", facture.getClientName());
+				factureDetails.put("clientId", facture.getClientId());
+			}
+			reglementMap.put("factureDetails", factureDetails);
+		} else {
+			reglementMap.put("factureDetails", "Facture not found");
 		}
 		return reglementMap;
 	}
@@ -282,8 +385,27 @@ public class ReglementRestController {
 	@GetMapping("/facture/{factureId}/sum")
 	@PreAuthorize("hasAuthority('USER') or hasAuthority('ADMIN')")
 	public Double sumByFactureId(@PathVariable Long factureId) {
-		return reglementRepository.findByFactureId(factureId).stream().filter(r -> !"ANNULE".equals(r.getStatut()))
-				.mapToDouble(Reglement::getMontant).sum();
+		return factureSoldeService.montantPaye(factureId);
+	}
+
+	@PostMapping("/client-ids/backfill")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public Map<String, Object> backfillClientIds() {
+		return Map.of("reglementsCompletes", reglementClientBackfill.backfill());
+	}
+
+	// --- Cohérence des soldes par facture ---
+
+	@GetMapping("/soldes/check")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public List<FactureSoldeService.Ecart> checkSoldes() {
+		return factureSoldeService.check();
+	}
+
+	@PostMapping("/soldes/rebuild")
+	@PreAuthorize("hasAuthority('ADMIN')")
+	public List<FactureSoldeService.Ecart> rebuildSoldes() {
+		return factureSoldeService.rebuild();
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package org.ms.reglement_service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.ms.reglement_service.entities.FactureSolde;
+import org.ms.reglement_service.feign.DeviseServiceClient;
+import org.ms.reglement_service.repository.FactureSoldeRepository;
+import org.ms.reglement_service.service.FactureSoldeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Premiers règlements concurrents sur des factures sans solde : chaque ligne
+ * est créée une seule fois et aucun règlement n'est perdu ni rejeté.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({FactureSoldeService.class, FactureSoldeConcurrencyTests.Config.class})
+class FactureSoldeConcurrencyTests {
+	private static final int THREADS = 8;
+	private static final int FACTURES = 24;
+
+	@TestConfiguration
+	static class Config {
+		@Bean
+		DeviseServiceClient deviseServiceClient() {
+			return Mockito.mock(DeviseServiceClient.class);
+		}
+	}
+
+	@Autowired
+	private FactureSoldeService factureSoldeService;
+
+	@Autowired
+	private FactureSoldeRepository factureSoldeRepository;
+
+	@AfterEach
+	void tearDown() {
+		factureSoldeRepository.deleteAll();
+	}
+
+	@Test
+	void premiersReglementsConcurrentsDeLaFacture() throws Exception {
+		CountDownLatch depart = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> taches = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				taches.add(pool.submit(() -> {
+					depart.await();
+					for (long f = 1; f <= FACTURES; f++) {
+						factureSoldeService.addContributions(List.of(new FactureSoldeService.Contribution(f, 10.0, 1)));
+					}
+					return null;
+				}));
+			}
+			depart.countDown();
+			for (Future<?> tache : taches) {
+				tache.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		List<FactureSolde> soldes = factureSoldeRepository.findAll();
+		assertEquals(FACTURES, soldes.size());
+		for (FactureSolde solde : soldes) {
+			assertEquals(THREADS, solde.getNombreReglements());
+			assertEquals(THREADS * 10.0, solde.getMontantPayeMad(), 1e-9);
+			assertEquals(THREADS * 10.0, factureSoldeService.montantPaye(solde.getFactureId()), 1e-9);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.ms.reglement_service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ms.reglement_service.dto.ReglementNonRapproche;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReconciliationEngineTests {
+
+	private ReconciliationEngine engine;
+
+	private ReconciliationEngine.Index index;
+
+	@BeforeEach
+	void setUp() {
+		engine = new ReconciliationEngine(null, null, null, null, null, null, null);
+		ReflectionTestUtils.setField(engine, "seuil", 70);
+		index = new ReconciliationEngine.Index();
+		index.add(new ReconciliationEngine.FactureOuverte(10L, 1L, 50_000));
+		index.add(new ReconciliationEngine.FactureOuverte(11L, 2L, 50_000));
+		index.add(new ReconciliationEngine.FactureOuverte(12L, 2L, 12_345));
+	}
+
+	@Test
+	void referenceAndAmountIsConfident() {
+		ReconciliationEngine.Affectation a = engine.rapprocher(reglement(1L, "VIR FAC-10", 500.0, null), index);
+		assertEquals(10L, a.factureId());
+		assertEquals(1L, a.clientId());
+	}
+
+	@Test
+	void sharedAmountWithoutReferenceIsNoMatch() {
+		assertNull(engine.rapprocher(reglement(2L, "VIREMENT", 500.0, null), index));
+	}
+
+	@Test
+	void sharedAmountForKnownClientIsAmbiguous() {
+		index.add(new ReconciliationEngine.FactureOuverte(13L, 2L, 50_000));
+		ReconciliationEngine.Affectation a = engine.rapprocher(reglement(6L, "VIREMENT", 500.0, 2L), index);
+		assertNotNull(a);
+		assertNull(a.factureId());
+	}
+
+	@Test
+	void clientInvoiceWithEnoughBalanceIsCandidate() {
+		ReflectionTestUtils.setField(engine, "seuil", ReconciliationEngine.SCORE_CLIENT);
+		ReconciliationEngine.Affectation a = engine.rapprocher(reglement(7L, "VIREMENT", 200.0, 1L), index);
+		assertEquals(10L, a.factureId());
+		assertNull(engine.rapprocher(reglement(8L, "VIREMENT", 600.0, 1L), index));
+	}
+
+	@Test
+	void uniqueAmountForKnownClientIsConfident() {
+		ReconciliationEngine.Affectation a = engine.rapprocher(reglement(3L, "VIREMENT", 123.45, 2L), index);
+		assertEquals(12L, a.factureId());
+	}
+
+	@Test
+	void assignedAmountIsNoLongerCandidate() {
+		engine.rapprocher(reglement(4L, "FACTURE 12", 123.45, null), index);
+		assertNull(engine.rapprocher(reglement(5L, "VIREMENT", 123.45, 2L), index));
+	}
+
+	@Test
+	void extractsInvoiceNumberFromReference() {
+		assertEquals(42L, ReconciliationEngine.numeroFacture("Paiement facture #42 client X"));
+		assertNull(ReconciliationEngine.numeroFacture("PAY-1700000000"));
+	}
+
+	private static ReglementNonRapproche reglement(Long id, String reference, Double montantMad, Long clientId) {
+		return new ReglementNonRapproche() {
+			@Override
+			public Long getId() {
+				return id;
+			}
+
+			@Override
+			public String getReference() {
+				return reference;
+			}
+
+			@Override
+			public Double getMontantMad() {
+				return montantMad;
+			}
+
+			@Override
+			public Long getClientId() {
+				return clientId;
+			}
+		};
+	}
+}
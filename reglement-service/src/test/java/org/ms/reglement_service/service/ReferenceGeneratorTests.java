@@ -0,0 +1,46 @@
+package org.ms.reglement_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceGeneratorTests {
+
+	@Test
+	void referencesAreUniqueAcrossThreads() {
+		ReferenceGenerator generator = new ReferenceGenerator(7);
+		Set<String> references = ConcurrentHashMap.newKeySet();
+		IntStream.range(0, 200_000).parallel().forEach(i -> references.add(generator.next()));
+		assertEquals(200_000, references.size());
+	}
+
+	@Test
+	void referencesSortInGenerationOrder() {
+		ReferenceGenerator generator = new ReferenceGenerator(3);
+		List<String> references = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			references.add(generator.next());
+		}
+		List<String> sorted = new ArrayList<>(references);
+		sorted.sort(null);
+		assertEquals(references, sorted);
+		assertTrue(references.get(0).matches("PAY-[0-9A-Z]{13}"));
+	}
+
+	@Test
+	void differentNodesNeverCollide() {
+		ReferenceGenerator a = new ReferenceGenerator(1);
+		ReferenceGenerator b = new ReferenceGenerator(2);
+		Set<String> references = ConcurrentHashMap.newKeySet();
+		for (int i = 0; i < 50_000; i++) {
+			assertTrue(references.add(a.next()));
+			assertTrue(references.add(b.next()));
+		}
+	}
+}
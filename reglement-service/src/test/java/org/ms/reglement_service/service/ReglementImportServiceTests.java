@@ -0,0 +1,162 @@
+package org.ms.reglement_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.ms.reglement_service.entities.Reglement;
+import org.ms.reglement_service.feign.DeviseServiceClient;
+import org.ms.reglement_service.feign.FactureServiceClient;
+import org.ms.reglement_service.model.FactureSummary;
+import org.ms.reglement_service.repository.ReglementRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Import de relevé sur une base H2 réelle, clients Feign et soldes simulés.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReglementImportServiceTests {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private ReglementRepository reglementRepository;
+
+	private FactureServiceClient factureServiceClient;
+	private FactureSoldeService factureSoldeService;
+	private FacturePaiementQueue facturePaiementQueue;
+	private ReglementImportService importService;
+
+	@BeforeEach
+	void setUp() {
+		factureServiceClient = Mockito.mock(FactureServiceClient.class);
+		factureSoldeService = Mockito.mock(FactureSoldeService.class);
+		facturePaiementQueue = Mockito.mock(FacturePaiementQueue.class);
+		when(factureServiceClient.findFactureSummaries(any())).thenReturn(List.of(facture(1L, 100L), facture(2L, 200L)));
+		importService = new ReglementImportService(jdbcTemplate, transactionTemplate, factureServiceClient,
+				Mockito.mock(DeviseServiceClient.class), factureSoldeService, facturePaiementQueue,
+				reglementRepository, new ReferenceGenerator(1));
+	}
+
+	@AfterEach
+	void tearDown() {
+		reglementRepository.deleteAll();
+	}
+
+	@Test
+	void validatesEachLine() throws Exception {
+		ReglementImportService.ImportReport report = importer("""
+				factureId;montant;dateReglement;modePaiement;reference;statut
+				1;150.5;2024-03-01;MAD;REF-1;PARTIEL
+				;80;2024-03-02;;REF-2;COMPLET
+				1;150;2024-02-30;MAD;REF-3;PARTIEL
+				1;-5;2024-03-01;MAD;REF-4;PARTIEL
+				99;10;2024-03-01;MAD;REF-5;PARTIEL
+				1;10;2024-03-01;MAD;REF-6;PAYE
+				abc;10;2024-03-01;MAD;REF-7;PARTIEL
+				1;10;2024-03-01
+				""");
+
+		assertEquals(8, report.lignes());
+		assertEquals(2, report.importees());
+		assertEquals(6, report.rejetees());
+		Map<Long, ReglementImportService.LigneResultat> parLigne = report.resultats().stream()
+				.collect(Collectors.toMap(ReglementImportService.LigneResultat::ligne, Function.identity()));
+		assertTrue(parLigne.get(2L).importe());
+		assertTrue(parLigne.get(3L).importe());
+		assertEquals("dateReglement invalide (yyyy-MM-dd attendu)", parLigne.get(4L).message());
+		assertEquals("Montant must be positive and not null", parLigne.get(5L).message());
+		assertEquals("Facture not found for ID: 99", parLigne.get(6L).message());
+		assertTrue(parLigne.get(7L).message().startsWith("Invalid or missing statut"));
+		assertEquals("factureId invalide", parLigne.get(8L).message());
+		assertEquals("6 colonnes attendues", parLigne.get(9L).message());
+
+		Reglement rapproche = reglementRepository.findAll().stream()
+				.filter(r -> "REF-1".equals(r.getReference())).findFirst().orElseThrow();
+		assertEquals(100L, rapproche.getClientId());
+		assertEquals(150.5, rapproche.getMontantMad(), 1e-9);
+		Reglement nonRapproche = reglementRepository.findAll().stream()
+				.filter(r -> "REF-2".equals(r.getReference())).findFirst().orElseThrow();
+		assertNull(nonRapproche.getFactureId());
+		assertEquals("MAD", nonRapproche.getModePaiement());
+		verify(facturePaiementQueue).submit(1L);
+		verifyNoMoreInteractions(facturePaiementQueue);
+	}
+
+	@Test
+	void rejectsDuplicateReferences() throws Exception {
+		reglementRepository.save(new Reglement(null, 1L, 10.0, new Date(), "MAD", "REF-EXISTANTE", "PARTIEL", 10.0, 100L));
+
+		ReglementImportService.ImportReport report = importer("""
+				factureId,montant,dateReglement,modePaiement,reference,statut
+				1,10,2024-03-01,MAD,REF-EXISTANTE,PARTIEL
+				1,10,2024-03-01,MAD,REF-A,PARTIEL
+				2,20,2024-03-01,MAD,REF-A,PARTIEL
+				2,20,2024-03-01,MAD,,PARTIEL
+				""");
+
+		assertEquals(2, report.importees());
+		assertEquals("Reference already used: REF-EXISTANTE", report.resultats().get(0).message());
+		assertTrue(report.resultats().get(1).importe());
+		assertEquals("Reference already used: REF-A", report.resultats().get(2).message());
+		assertTrue(report.resultats().get(3).reference().startsWith("PAY-"));
+		assertEquals(3, reglementRepository.count());
+	}
+
+	@Test
+	void commitsEachBlockSeparately() throws Exception {
+		// Premier bloc (500 lignes) sur la facture 1, second sur la facture 2, refusé par la base
+		doNothing().doThrow(new DataIntegrityViolationException("refus")).when(factureSoldeService).addAll(anyCollection());
+		StringBuilder csv = new StringBuilder("factureId,montant,dateReglement,modePaiement,reference,statut\n");
+		for (int i = 0; i < 600; i++) {
+			csv.append(i < 500 ? 1 : 2).append(",10,2024-03-01,MAD,REF-").append(i).append(",PARTIEL\n");
+		}
+
+		ReglementImportService.ImportReport report = importer(csv.toString());
+
+		assertEquals(600, report.lignes());
+		assertEquals(500, report.importees());
+		assertEquals(100, report.rejetees());
+		assertEquals("Block rejected by the database", report.resultats().get(599).message());
+		assertEquals(500, reglementRepository.count());
+		verify(facturePaiementQueue).submit(1L);
+		verify(facturePaiementQueue, never()).submit(2L);
+	}
+
+	private ReglementImportService.ImportReport importer(String csv) throws Exception {
+		return importService.importer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static FactureSummary facture(Long id, Long clientId) {
+		FactureSummary facture = new FactureSummary();
+		facture.setId(id);
+		facture.setClientId(clientId);
+		return facture;
+	}
+}